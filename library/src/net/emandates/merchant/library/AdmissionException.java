@@ -0,0 +1,20 @@
+package net.emandates.merchant.library;
+
+/**
+ * Thrown when the AdmissionQueue does not let a request through; the error code ends up in the ErrorResponse of the
+ * request
+ */
+class AdmissionException extends CommunicatorException {
+    private static final long serialVersionUID = 1L;
+
+    private final String errorCode;
+
+    AdmissionException(String errorCode, String message) {
+        super(message);
+        this.errorCode = errorCode;
+    }
+
+    String getErrorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,406 @@
+package net.emandates.merchant.library;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds the work a request pipeline has accepted, so that the latency of the requests it accepts stays stable when
+ * more requests arrive than the acquirer can handle. A request is admitted when the operation is called, before its
+ * message is built, and counts against the bounds until its response has been parsed: at most maxRequests requests
+ * and maxBytes bytes (UTF-8) of request messages can be outstanding. The size of a message is only known once it has
+ * been built and signed, so it is reserved then; until that time an admitted request counts as 0 bytes, and no
+ * request is admitted while maxBytes is used up. A request that does not fit is not queued behind the others;
+ * depending on the Policy it is rejected at once, or a request of lower priority that has not been sent yet is
+ * dropped to make room for it.
+ *
+ * Rejected and dropped requests return the usual error response, with one of the ErrorCode constants of this class
+ * as ErrorResponse.getErrorCode(), so that callers can tell them apart from errors of the acquirer.
+ *
+ * The queue is optional; see RequestPipeline.setAdmissionQueue.
+ */
+public class AdmissionQueue implements AdmissionQueueMXBean {
+    /**
+     * What to do with a request that does not fit
+     */
+    public enum Policy {
+        /**
+         * Reject the new request
+         */
+        REJECT_NEWEST,
+
+        /**
+         * Drop the oldest outstanding requests that have not been sent yet and are of a lower RequestClass than the
+         * new request (BULK is the lowest, INTERACTIVE the highest), as many as are needed; room for bytes is only
+         * made by dropping requests whose message has been built. Reject the new request, without dropping any, if
+         * they would not make enough room
+         */
+        DROP_LOWEST_PRIORITY,
+
+        /**
+         * Reject the new request if it does not fit, and also if the time since the operation was called plus the
+         * current service time (the moving average of the time from admission to response) exceeds the deadline of
+         * its class; a request whose deadline passes before it is sent is not sent
+         */
+        DEADLINE
+    }
+
+    /**
+     * Error code of a request rejected because the queue was full
+     */
+    public static final String ErrorCodeQueueFull = "AD1000";
+
+    /**
+     * Error code of a request dropped to make room for a request of higher priority
+     */
+    public static final String ErrorCodeDropped = "AD2000";
+
+    /**
+     * Error code of a request rejected because its deadline cannot be met
+     */
+    public static final String ErrorCodeDeadline = "AD3000";
+
+    private static final double ServiceTimeWeight = 0.1;
+
+    private final Object lock = new Object();
+    private final Map<RequestClass, LinkedHashSet<RequestContext>> unsent = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, Long> deadlines = new EnumMap<>(RequestClass.class);
+    private int maxRequests;
+    private long maxBytes;
+    private Policy policy;
+    private int outstanding;
+    private long outstandingBytes;
+    private double serviceNanos;
+    private long admitted;
+    private long rejected;
+    private long dropped;
+    private long expired;
+
+    /**
+     * Creates a queue with the deadlines INTERACTIVE and RETURN_STATUS 10 seconds, POLLING 60 seconds and no
+     * deadline for BULK
+     * @param maxRequests number of requests that can be outstanding
+     * @param maxBytes number of bytes of request messages that can be outstanding; a request larger than this is
+     * admitted only when nothing else is outstanding
+     * @param policy what to do with a request that does not fit
+     */
+    public AdmissionQueue(int maxRequests, long maxBytes, Policy policy) {
+        for (RequestClass requestClass : RequestClass.values()) {
+            unsent.put(requestClass, new LinkedHashSet<>());
+        }
+        deadlines.put(RequestClass.INTERACTIVE, 10000L);
+        deadlines.put(RequestClass.RETURN_STATUS, 10000L);
+        deadlines.put(RequestClass.POLLING, 60000L);
+        deadlines.put(RequestClass.BULK, 0L);
+        setMaxRequests(maxRequests);
+        setMaxBytes(maxBytes);
+        setPolicy(policy);
+    }
+
+    /**
+     * @param maxRequests number of requests that can be outstanding; lowering it does not affect admitted requests
+     */
+    public void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxRequests = maxRequests;
+        }
+    }
+
+    /**
+     * @return Number of requests that can be outstanding
+     */
+    public int getMaxRequests() {
+        synchronized (lock) {
+            return maxRequests;
+        }
+    }
+
+    /**
+     * @param maxBytes number of bytes of request messages that can be outstanding
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * @return Number of bytes of request messages that can be outstanding
+     */
+    public long getMaxBytes() {
+        synchronized (lock) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * Changes both limits at once, so that no request is admitted against one new and one old limit
+     * @param maxRequests number of requests that can be outstanding
+     * @param maxBytes number of bytes of request messages that can be outstanding
+     */
+    public void setLimits(int maxRequests, long maxBytes) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests must be at least 1");
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        synchronized (lock) {
+            this.maxRequests = maxRequests;
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * @param policy what to do with a request that does not fit
+     */
+    public void setPolicy(Policy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        synchronized (lock) {
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * @return What is done with a request that does not fit
+     */
+    public Policy getPolicy() {
+        synchronized (lock) {
+            return policy;
+        }
+    }
+
+    /**
+     * @param requestClass a request class
+     * @param deadline time in milliseconds from the call of an operation within which its response is needed, or 0
+     * for no deadline; used by the DEADLINE policy
+     */
+    public void setDeadline(RequestClass requestClass, long deadline) {
+        synchronized (lock) {
+            deadlines.put(requestClass, Math.max(0, deadline));
+        }
+    }
+
+    /**
+     * @param requestClass a request class
+     * @return The deadline of the class in milliseconds, or 0 if it has none
+     */
+    public long getDeadline(RequestClass requestClass) {
+        synchronized (lock) {
+            return deadlines.get(requestClass);
+        }
+    }
+
+    /**
+     * @return Number of requests admitted and not yet completed
+     */
+    public int getOutstanding() {
+        synchronized (lock) {
+            return outstanding;
+        }
+    }
+
+    /**
+     * @return Number of bytes of the request messages of the outstanding requests
+     */
+    public long getOutstandingBytes() {
+        synchronized (lock) {
+            return outstandingBytes;
+        }
+    }
+
+    /**
+     * @return Moving average of the time in milliseconds from admission to response
+     */
+    public double getServiceTimeMillis() {
+        synchronized (lock) {
+            return serviceNanos / 1e6;
+        }
+    }
+
+    /**
+     * @return Number of requests admitted since the queue was created
+     */
+    public long getAdmitted() {
+        synchronized (lock) {
+            return admitted;
+        }
+    }
+
+    /**
+     * @return Number of requests rejected because the queue was full
+     */
+    public long getRejected() {
+        synchronized (lock) {
+            return rejected;
+        }
+    }
+
+    /**
+     * @return Number of admitted requests dropped for a request of higher priority
+     */
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    /**
+     * @return Number of requests rejected or not sent because their deadline could not be met
+     */
+    public long getExpired() {
+        synchronized (lock) {
+            return expired;
+        }
+    }
+
+    /**
+     * Admits a request whose message has not been built yet, or throws; checks the number of outstanding requests and
+     * the deadline, but not the size of the message
+     * @param context the request
+     */
+    void admit(RequestContext context) throws AdmissionException {
+        synchronized (lock) {
+            if (policy == Policy.DEADLINE) {
+                long deadline = deadlines.get(context.getRequestClass()) * 1000000;
+                if (deadline > 0 && System.nanoTime() - context.getStartNanos() + (long) serviceNanos > deadline) {
+                    expired++;
+                    throw new AdmissionException(ErrorCodeDeadline, "request rejected: its deadline cannot be met");
+                }
+            }
+
+            int requests = outstanding - maxRequests + 1;
+            long bytes = (outstanding > 0) ? outstandingBytes - maxBytes + 1 : 0;
+            if (requests > 0 || bytes > 0) {
+                makeRoom(context, requests, bytes);
+            }
+
+            context.bytes = 0;
+            context.admission = this;
+            context.admittedNanos = System.nanoTime();
+            outstanding++;
+            unsent.get(context.getRequestClass()).add(context);
+            admitted++;
+        }
+    }
+
+    /**
+     * Reserves the size of the built message of an admitted request, or throws; a request that does not fit keeps its
+     * place until it is released
+     * @param context the request
+     * @param bytes size of the request message in bytes
+     */
+    void reserve(RequestContext context, long bytes) throws AdmissionException {
+        synchronized (lock) {
+            if (context.dropped) {
+                throw new AdmissionException(ErrorCodeDropped, "request dropped from the admission queue for a request of higher priority");
+            }
+            // the request itself is outstanding: it fits on its own whatever its size
+            if (outstanding > 1 && outstandingBytes + bytes > maxBytes) {
+                makeRoom(context, 0, outstandingBytes + bytes - maxBytes);
+            }
+            context.bytes = bytes;
+            outstandingBytes += bytes;
+        }
+    }
+
+    /**
+     * Marks an admitted request as being sent, after which it can no longer be dropped
+     */
+    void startSending(RequestContext context) throws AdmissionException {
+        synchronized (lock) {
+            if (context.dropped) {
+                throw new AdmissionException(ErrorCodeDropped, "request dropped from the admission queue for a request of higher priority");
+            }
+            unsent.get(context.getRequestClass()).remove(context);
+            if (policy == Policy.DEADLINE) {
+                long deadline = deadlines.get(context.getRequestClass()) * 1000000;
+                if (deadline > 0 && System.nanoTime() - context.getStartNanos() > deadline) {
+                    expired++;
+                    throw new AdmissionException(ErrorCodeDeadline, "request not sent: its deadline has passed");
+                }
+            }
+            context.sending = true;
+        }
+    }
+
+    /**
+     * Releases the place of a completed request
+     */
+    void release(RequestContext context) {
+        synchronized (lock) {
+            context.admission = null;
+            if (context.dropped) {
+                return;
+            }
+            unsent.get(context.getRequestClass()).remove(context);
+            remove(context);
+            if (context.sending) {
+                long nanos = System.nanoTime() - context.admittedNanos;
+                serviceNanos = (serviceNanos == 0) ? nanos : serviceNanos + ServiceTimeWeight * (nanos - serviceNanos);
+            }
+        }
+    }
+
+    /**
+     * Drops unsent requests of a lower class until the given number of requests and bytes are free, or throws without
+     * dropping any
+     */
+    private void makeRoom(RequestContext context, int requests, long bytes) throws AdmissionException {
+        List<RequestContext> victims = new ArrayList<>();
+        if (policy == Policy.DROP_LOWEST_PRIORITY) {
+            List<RequestContext> candidates = candidates(context.getRequestClass());
+            // a request whose message has not been built holds no bytes
+            for (RequestContext candidate : candidates) {
+                if (bytes > 0 && candidate.bytes > 0) {
+                    victims.add(candidate);
+                    requests--;
+                    bytes -= candidate.bytes;
+                }
+            }
+            for (RequestContext candidate : candidates) {
+                if (requests > 0 && !victims.contains(candidate)) {
+                    victims.add(candidate);
+                    requests--;
+                }
+            }
+        }
+        if (requests > 0 || bytes > 0) {
+            rejected++;
+            throw new AdmissionException(ErrorCodeQueueFull, "request rejected: admission queue is full");
+        }
+        for (RequestContext victim : victims) {
+            unsent.get(victim.getRequestClass()).remove(victim);
+            remove(victim);
+            victim.dropped = true;
+            dropped++;
+        }
+    }
+
+    private void remove(RequestContext context) {
+        outstanding--;
+        outstandingBytes -= context.bytes;
+    }
+
+    /**
+     * @return The unsent requests of a lower class than the given one, lowest class and oldest first
+     */
+    private List<RequestContext> candidates(RequestClass requestClass) {
+        List<RequestContext> result = new ArrayList<>();
+        RequestClass[] classes = RequestClass.values();
+        for (int i = classes.length - 1; i > requestClass.ordinal(); i--) {
+            result.addAll(unsent.get(classes[i]));
+        }
+        return result;
+    }
+}
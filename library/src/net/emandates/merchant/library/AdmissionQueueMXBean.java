@@ -0,0 +1,39 @@
+package net.emandates.merchant.library;
+
+/**
+ * The management interface of an AdmissionQueue, see JmxRegistration; the limits, the policy and the deadlines are
+ * writable, and setLimits changes both limits at once
+ */
+public interface AdmissionQueueMXBean {
+    int getMaxRequests();
+
+    void setMaxRequests(int maxRequests);
+
+    long getMaxBytes();
+
+    void setMaxBytes(long maxBytes);
+
+    void setLimits(int maxRequests, long maxBytes);
+
+    AdmissionQueue.Policy getPolicy();
+
+    void setPolicy(AdmissionQueue.Policy policy);
+
+    long getDeadline(RequestClass requestClass);
+
+    void setDeadline(RequestClass requestClass, long deadline);
+
+    int getOutstanding();
+
+    long getOutstandingBytes();
+
+    double getServiceTimeMillis();
+
+    long getAdmitted();
+
+    long getRejected();
+
+    long getDropped();
+
+    long getExpired();
+}
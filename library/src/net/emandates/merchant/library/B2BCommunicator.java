@@ -6,6 +6,9 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableEntryException;
 import java.security.cert.CertificateException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import jakarta.xml.bind.JAXBException;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.XMLSignatureException;
@@ -44,26 +47,90 @@ public class B2BCommunicator extends CoreCommunicator {
      * information when an error occurs
      */
     public CancellationResponse cancel(CancellationRequest cancellationRequest) {
+        return cancel(cancellationRequest, RequestClass.INTERACTIVE);
+    }
+
+    CancellationResponse cancel(CancellationRequest cancellationRequest, RequestClass requestClass) {
+        Configuration config = getConfiguration();
+        RequestContext context = newContext("cancel", config, requestClass, null, cancellationRequest.getMessageID());
         try {
-            logger.Log(config, "sending cancel mandate request");
-            Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getCancel(cancellationRequest);
-            String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config, cancellationRequest, eMandate);
-            xml = xmlProcessor.AddSignature(config, xml);
+            admit(context);
+            String xml = buildCancellationRequest(config, cancellationRequest, context);
 
-            CancellationResponse cr = CancellationResponse.Parse(
-                    performRequest(xml, config.getAcquirerUrl_TransactionReq(), config.isTls12Enabled())
-            );
+            String response = performRequest(config, xml, config.getAcquirerUrl_TransactionReq(), context);
+            long start = context.startPhase(RequestPhase.PARSE);
+            CancellationResponse cr = CancellationResponse.Parse(response);
+            context.endPhase(RequestPhase.PARSE, start);
 
             return cr;
         } catch (ParserConfigurationException | SAXException | IOException | TransformerException | CommunicatorException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return CancellationResponse.Get(ex);
         } catch (DatatypeConfigurationException | JAXBException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return CancellationResponse.Get(ex);
         } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException | InvalidAlgorithmParameterException | MarshalException | XMLSignatureException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return CancellationResponse.Get(ex);
+        } finally {
+            context.complete();
         }
     }
+
+    /**
+     * Sends a cancellation request through the request pipeline, see cancel(CancellationRequest).
+     * @param cancellationRequest A CancellationRequest object
+     * @return A future that completes with the CancellationResponse; it never completes exceptionally
+     */
+    public CompletableFuture<CancellationResponse> cancelAsync(final CancellationRequest cancellationRequest) {
+        return cancelAsync(cancellationRequest, RequestClass.INTERACTIVE);
+    }
+
+    CompletableFuture<CancellationResponse> cancelAsync(final CancellationRequest cancellationRequest, RequestClass requestClass) {
+        final Configuration config = getConfiguration();
+        final RequestContext context = newContext("cancel", config, requestClass, null, cancellationRequest.getMessageID());
+        return submit(config, context, () -> buildCancellationRequest(config, cancellationRequest, context), config.getAcquirerUrl_TransactionReq(),
+                CancellationResponse::Parse, CancellationResponse::Get);
+    }
+
+    String buildCancellationRequest(Configuration config, CancellationRequest cancellationRequest, RequestContext context) throws DatatypeConfigurationException,
+            JAXBException, CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableEntryException,
+            InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException, SAXException, XMLSignatureException,
+            TransformerException {
+        logger.Log(config, LogLevel.INFO, "sending cancel mandate request");
+        long start = context.startPhase(RequestPhase.BUILD);
+        Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getCancel(cancellationRequest);
+        String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config, cancellationRequest, eMandate);
+        context.endPhase(RequestPhase.BUILD, start);
+        start = context.startPhase(RequestPhase.SIGN);
+        String signed = xmlProcessor.AddSignature(config, xml);
+        context.endPhase(RequestPhase.SIGN, start);
+        return signed;
+    }
+
+    /**
+     * Sends a cancellation request for every element of the collection, with one request in flight per
+     * available processor, through the request pipeline (see getPipeline()). Further requests are sent as results are
+     * consumed, so a stream that is abandoned stops sending.
+     * @param cancellationRequests The CancellationRequest objects to send
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<CancellationRequest, CancellationResponse>> cancelAll(Collection<CancellationRequest> cancellationRequests) {
+        return cancelAll(cancellationRequests, BulkExecutor.defaultConcurrency());
+    }
+
+    /**
+     * Sends a cancellation request for every element of the collection, through the request pipeline.
+     * Further requests are sent as results are consumed, so a stream that is abandoned stops sending.
+     * @param cancellationRequests The CancellationRequest objects to send
+     * @param concurrency The maximum number of requests in flight
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<CancellationRequest, CancellationResponse>> cancelAll(Collection<CancellationRequest> cancellationRequests, int concurrency) {
+        return BulkExecutor.async(cancellationRequests.iterator(), r -> cancelAsync(r, RequestClass.BULK), CancellationRequest::getMessageID,
+                concurrency, getPipeline().getTracer()).stream();
+    }
 }
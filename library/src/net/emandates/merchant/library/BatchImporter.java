@@ -0,0 +1,357 @@
+package net.emandates.merchant.library;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.Duration;
+import net.emandates.merchant.library.misc.MessageIdGenerator;
+
+/**
+ * Imports new mandate, amendment and cancellation requests from a CSV or JSON file and sends them with a bounded
+ * number of requests in flight. Records are read one at a time and results are appended to an output file as they
+ * complete, so memory use does not depend on the size of the file. The number of every completed record is appended to
+ * a checkpoint file, and flushed together with its result line; running the import again with the same checkpoint
+ * skips those records, so an interrupted run only resubmits the records that were in flight. The checkpoint is
+ * compacted when a run completes.
+ *
+ * Every record has a "type" field (new, amend or cancel; new when absent) and the fields of the corresponding request
+ * object under their property names: entranceCode, language, expirationPeriod (an xs:duration such as PT30M),
+ * eMandateID, eMandateReason, debtorReference, debtorBankID, purchaseID, sequenceType, maxAmount, originalIBAN,
+ * originalDebtorBankID and messageID. Cancellations require a B2BCommunicator.
+ */
+public class BatchImporter {
+    /**
+     * Format of the input file
+     */
+    public enum Format {
+        /**
+         * Comma separated values with a header line
+         */
+        CSV,
+
+        /**
+         * An array of flat JSON objects, or one flat JSON object per line
+         */
+        JSON
+    }
+
+    /**
+     * Counts of a completed import run
+     */
+    public static class Summary {
+        private long submitted;
+        private long succeeded;
+        private long failed;
+        private long skipped;
+
+        /**
+         * @return Number of records sent in this run
+         */
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return Number of records of this run for which the response was not an error
+         */
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return Number of records of this run for which the response was an error
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Number of records skipped because they completed in a previous run
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+
+    private static final String OutputHeader = "record,type,messageID,isError,transactionID,issuerAuthenticationURL,errorCode,errorMessage";
+
+    private final CoreCommunicator communicator;
+    private int concurrency = BulkExecutor.defaultConcurrency();
+
+    /**
+     * @param communicator the communicator used to send the requests
+     */
+    public BatchImporter(CoreCommunicator communicator) {
+        this.communicator = communicator;
+    }
+
+    /**
+     * @param concurrency The maximum number of requests in flight; defaults to the number of available processors
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Imports a file, resuming from the checkpoint if it exists
+     * @param input the file with the records
+     * @param format the format of the input file
+     * @param output the file to which a result line is appended for every completed record
+     * @param checkpoint the checkpoint file, created if it does not exist
+     * @return the counts of this run
+     * @throws IOException
+     */
+    public Summary run(Path input, Format format, Path output, Path checkpoint) throws IOException {
+        Checkpoint done = Checkpoint.load(checkpoint);
+        // compacting first also drops a line that a crashed run left incomplete, so that it cannot merge with the next
+        done.save(checkpoint);
+        Summary summary = new Summary();
+        boolean newOutput = !Files.exists(output) || Files.size(output) == 0;
+
+        try (Reader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+                BatchRecordReader records = (format == Format.CSV) ? BatchRecordReader.csv(in) : BatchRecordReader.json(in);
+                BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                BufferedWriter log = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                BulkExecutor<Record, String[]> executor = new BulkExecutor<>(new Pending(records, done, summary), this::send,
+                        r -> String.valueOf(r.number), concurrency, communicator.getPipeline().getTracer())) {
+            if (newOutput) {
+                out.write(OutputHeader);
+                out.newLine();
+            }
+
+            while (executor.hasNext()) {
+                BulkResult<Record, String[]> result = executor.next();
+                String[] line = result.getResponse();
+                Utils.writeCsvLine(out, line);
+                summary.submitted++;
+                if (Boolean.parseBoolean(line[3])) {
+                    summary.failed++;
+                } else {
+                    summary.succeeded++;
+                }
+
+                // the result line goes out first: after a crash in between, the record is sent again rather than lost
+                out.flush();
+                done.complete(result.getRequest().number);
+                log.write(Long.toString(result.getRequest().number));
+                log.write('\n');
+                log.flush();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        done.save(checkpoint);
+        return summary;
+    }
+
+    private String[] send(Record record) {
+        String type = record.fields.getOrDefault("type", "new");
+        type = (type == null) ? "new" : type.toLowerCase();
+        try {
+            switch (type) {
+                case "new": {
+                    NewMandateRequest request = new NewMandateRequest(field(record, "entranceCode"), field(record, "language"),
+                            duration(record), field(record, "eMandateID"), field(record, "eMandateReason"),
+                            field(record, "debtorReference"), field(record, "debtorBankID"), field(record, "purchaseID"),
+                            sequenceType(record), amount(record), messageID(record));
+                    NewMandateResponse response = communicator.newMandate(request, RequestClass.BULK);
+                    return line(record, type, request.getMessageID(), response.getIsError(), response.getTransactionID(),
+                            response.getIssuerAuthenticationURL(), response.getErrorResponse());
+                }
+                case "amend": {
+                    AmendmentRequest request = new AmendmentRequest(field(record, "entranceCode"), field(record, "language"),
+                            duration(record), field(record, "eMandateID"), field(record, "eMandateReason"),
+                            field(record, "debtorReference"), field(record, "debtorBankID"), field(record, "purchaseID"),
+                            sequenceType(record), field(record, "originalIBAN"), field(record, "originalDebtorBankID"),
+                            messageID(record));
+                    AmendmentResponse response = communicator.amend(request, RequestClass.BULK);
+                    return line(record, type, request.getMessageID(), response.getIsError(), response.getTransactionID(),
+                            response.getIssuerAuthenticationURL(), response.getErrorResponse());
+                }
+                case "cancel": {
+                    if (!(communicator instanceof B2BCommunicator)) {
+                        throw new IllegalArgumentException("cancellation requires a B2BCommunicator");
+                    }
+                    CancellationRequest request = new CancellationRequest(field(record, "entranceCode"), field(record, "language"),
+                            duration(record), field(record, "eMandateID"), field(record, "eMandateReason"),
+                            field(record, "debtorReference"), field(record, "debtorBankID"), field(record, "purchaseID"),
+                            sequenceType(record), amount(record), field(record, "originalIBAN"), messageID(record));
+                    CancellationResponse response = ((B2BCommunicator) communicator).cancel(request, RequestClass.BULK);
+                    return line(record, type, request.getMessageID(), response.getIsError(), response.getTransactionID(),
+                            response.getIssuerAuthenticationURL(), response.getErrorResponse());
+                }
+                default:
+                    throw new IllegalArgumentException("unknown record type '" + type + "'");
+            }
+        } catch (IllegalArgumentException | DatatypeConfigurationException ex) {
+            return new String[] { String.valueOf(record.number), type, field(record, "messageID"), "true", null, null, "",
+                ex.getMessage() };
+        }
+    }
+
+    private static String[] line(Record record, String type, String messageID, boolean isError, String transactionID,
+            String issuerAuthenticationURL, ErrorResponse error) {
+        return new String[] { String.valueOf(record.number), type, messageID, String.valueOf(isError), transactionID,
+            issuerAuthenticationURL, (error != null) ? error.getErrorCode() : null, (error != null) ? error.getErrorMessage() : null };
+    }
+
+    private static String messageID(Record record) {
+        String value = field(record, "messageID");
+        return (value != null) ? value : MessageIdGenerator.New();
+    }
+
+    private static String field(Record record, String name) {
+        return record.fields.get(name);
+    }
+
+    private static Duration duration(Record record) throws DatatypeConfigurationException {
+        String value = field(record, "expirationPeriod");
+        return (value != null) ? DatatypeFactory.newInstance().newDuration(value) : null;
+    }
+
+    private static SequenceType sequenceType(Record record) {
+        String value = field(record, "sequenceType");
+        return (value != null) ? SequenceType.valueOf(value.toUpperCase()) : null;
+    }
+
+    private static Double amount(Record record) {
+        String value = field(record, "maxAmount");
+        return (value != null) ? Double.valueOf(value) : null;
+    }
+
+    private static class Record {
+        private final long number;
+        private final Map<String, String> fields;
+
+        Record(long number, Map<String, String> fields) {
+            this.number = number;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * Numbers the records of the file and skips those that completed in a previous run
+     */
+    private static class Pending implements Iterator<Record> {
+        private final BatchRecordReader records;
+        private final Checkpoint done;
+        private final Summary summary;
+        private long number;
+        private Record next;
+
+        Pending(BatchRecordReader records, Checkpoint done, Summary summary) {
+            this.records = records;
+            this.done = done;
+            this.summary = summary;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && records.hasNext()) {
+                Map<String, String> fields = records.next();
+                long current = number++;
+                if (done.isComplete(current)) {
+                    summary.skipped++;
+                } else {
+                    next = new Record(current, fields);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * Completed record numbers: all numbers below the watermark, plus the numbers in the completed set. The file holds
+     * a compacted state (a watermark line and a completed line) followed by the number of every record completed since,
+     * one per line.
+     */
+    private static class Checkpoint {
+        private long watermark;
+        private final TreeSet<Long> completed = new TreeSet<>();
+
+        static Checkpoint load(Path path) throws IOException {
+            Checkpoint checkpoint = new Checkpoint();
+            if (!Files.exists(path)) {
+                return checkpoint;
+            }
+            String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            // a last line without line break was not completely written
+            for (String line : content.substring(0, content.lastIndexOf('\n') + 1).split("\n")) {
+                line = line.trim();
+                if (line.startsWith("watermark=")) {
+                    checkpoint.watermark = Long.parseLong(line.substring("watermark=".length()).trim());
+                } else if (line.startsWith("completed=")) {
+                    for (String number : line.substring("completed=".length()).split(",")) {
+                        if (!number.trim().isEmpty()) {
+                            checkpoint.completed.add(Long.parseLong(number.trim()));
+                        }
+                    }
+                } else if (!line.isEmpty()) {
+                    checkpoint.complete(Long.parseLong(line));
+                }
+            }
+            return checkpoint;
+        }
+
+        boolean isComplete(long number) {
+            return number < watermark || completed.contains(number);
+        }
+
+        void complete(long number) {
+            if (number < watermark) {
+                return;
+            }
+            if (number != watermark) {
+                completed.add(number);
+                return;
+            }
+            watermark++;
+            while (completed.remove(watermark)) {
+                watermark++;
+            }
+        }
+
+        void save(Path path) throws IOException {
+            StringBuilder content = new StringBuilder();
+            content.append("watermark=").append(watermark).append('\n');
+            content.append("completed=");
+            boolean first = true;
+            for (Long number : completed) {
+                if (!first) {
+                    content.append(',');
+                }
+                content.append(number);
+                first = false;
+            }
+            content.append('\n');
+
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
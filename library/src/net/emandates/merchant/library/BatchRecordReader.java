@@ -0,0 +1,271 @@
+package net.emandates.merchant.library;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the records of a batch file one at a time, as maps of field name to value. CSV files need a header line with
+ * the field names; quoted fields may contain commas and doubled quotes but no line breaks. JSON files hold either an
+ * array of flat objects or one flat object per line. Empty values are returned as null.
+ */
+abstract class BatchRecordReader implements Iterator<Map<String, String>>, Closeable {
+    private Map<String, String> next;
+    private boolean done;
+
+    static BatchRecordReader csv(Reader reader) {
+        return new Csv(new BufferedReader(reader));
+    }
+
+    static BatchRecordReader json(Reader reader) {
+        return new Json(new PushbackReader(new BufferedReader(reader), 1));
+    }
+
+    protected abstract Map<String, String> read() throws IOException;
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = read();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public Map<String, String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, String> result = next;
+        next = null;
+        return result;
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.isEmpty()) ? null : value;
+    }
+
+    private static class Csv extends BatchRecordReader {
+        private final BufferedReader reader;
+        private List<String> header;
+
+        Csv(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        protected Map<String, String> read() throws IOException {
+            if (header == null) {
+                String line = nextLine();
+                if (line == null) {
+                    return null;
+                }
+                header = split(line);
+            }
+
+            String line = nextLine();
+            if (line == null) {
+                return null;
+            }
+            List<String> values = split(line);
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                record.put(header.get(i).trim(), emptyToNull(i < values.size() ? values.get(i) : null));
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private String nextLine() throws IOException {
+            String line = reader.readLine();
+            while (line != null && line.trim().isEmpty()) {
+                line = reader.readLine();
+            }
+            return line;
+        }
+
+        private static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+
+    private static class Json extends BatchRecordReader {
+        private final PushbackReader reader;
+        private boolean started;
+        private boolean array;
+        private int records;
+
+        Json(PushbackReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        protected Map<String, String> read() throws IOException {
+            int c = skipWhitespace();
+            if (!started) {
+                started = true;
+                array = c == '[';
+                if (array) {
+                    c = skipWhitespace();
+                }
+            } else if (array && c == ',') {
+                c = skipWhitespace();
+            }
+
+            if (c == -1 || (array && c == ']')) {
+                return null;
+            }
+            if (c != '{') {
+                throw error("expected '{' but found '" + (char) c + "'");
+            }
+
+            Map<String, String> record = new HashMap<>();
+            c = skipWhitespace();
+            while (c != '}') {
+                if (c != '"') {
+                    throw error("expected a field name");
+                }
+                String name = readString();
+                if (skipWhitespace() != ':') {
+                    throw error("expected ':' after field " + name);
+                }
+                record.put(name, emptyToNull(readValue()));
+
+                c = skipWhitespace();
+                if (c == ',') {
+                    c = skipWhitespace();
+                } else if (c != '}') {
+                    throw error("expected ',' or '}' after field " + name);
+                }
+            }
+            records++;
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c = reader.read();
+            while (c != -1 && Character.isWhitespace(c)) {
+                c = reader.read();
+            }
+            return c;
+        }
+
+        private String readValue() throws IOException {
+            int c = skipWhitespace();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("nested values are not supported");
+            }
+
+            StringBuilder literal = new StringBuilder();
+            while (c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+                literal.append((char) c);
+                c = reader.read();
+            }
+            if (c != -1) {
+                reader.unread(c);
+            }
+            String value = literal.toString();
+            return value.equals("null") ? null : value;
+        }
+
+        private String readString() throws IOException {
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                int c = reader.read();
+                if (c == -1) {
+                    throw error("unterminated string");
+                }
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append((char) c);
+                    continue;
+                }
+
+                c = reader.read();
+                switch (c) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u': value.append(readHexChar()); break;
+                    case -1: throw error("unterminated string");
+                    default: value.append((char) c); break;
+                }
+            }
+        }
+
+        // the four hex digits of a unicode escape
+        private char readHexChar() throws IOException {
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+                int c = reader.read();
+                int digit = (c >= 0 && c < 128) ? Character.digit(c, 16) : -1;
+                if (digit == -1) {
+                    throw error("invalid \\u escape");
+                }
+                code = code * 16 + digit;
+            }
+            return (char) code;
+        }
+
+        /**
+         * @return An exception for a syntax error in the record being read; records are numbered from 0
+         */
+        private IOException error(String message) {
+            return new IOException(message + " in record " + records);
+        }
+    }
+}
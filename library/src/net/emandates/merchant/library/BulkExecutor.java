@@ -0,0 +1,162 @@
+package net.emandates.merchant.library;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a communicator call for every request of a source with a fixed number of requests in flight, and returns the
+ * results in completion order. Requests are taken from the source only when a result is consumed, so the source can
+ * be read incrementally and a slow consumer holds back submission. Blocking calls run on a pool owned by the executor;
+ * asynchronous calls (see async) run wherever the returned future is completed, e.g. on a RequestPipeline. Every call
+ * is made with the trace context of the thread that created the executor as the current context, so that the spans of
+ * the operations are its children.
+ */
+class BulkExecutor<Q, R> implements Iterator<BulkResult<Q, R>>, AutoCloseable {
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final Iterator<? extends Q> source;
+    private final Function<Q, R> call;
+    private final Function<Q, CompletableFuture<R>> asyncCall;
+    private final Function<Q, String> correlation;
+    private final int concurrency;
+    private final ExecutorService executor;
+    private final ITracer tracer;
+    private final Object traceContext;
+    private final BlockingQueue<Object> completed = new LinkedBlockingQueue<>();
+    private int inFlight;
+
+    /**
+     * @param tracer the tracer whose context is passed on to the calls
+     */
+    BulkExecutor(Iterator<? extends Q> source, Function<Q, R> call, Function<Q, String> correlation, int concurrency,
+            ITracer tracer) {
+        this(source, call, null, correlation, concurrency, tracer);
+    }
+
+    private BulkExecutor(Iterator<? extends Q> source, Function<Q, R> call, Function<Q, CompletableFuture<R>> asyncCall,
+            Function<Q, String> correlation, int concurrency, ITracer tracer) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.source = source;
+        this.call = call;
+        this.asyncCall = asyncCall;
+        this.correlation = correlation;
+        this.concurrency = concurrency;
+        this.tracer = tracer;
+        this.traceContext = tracer.Capture();
+
+        if (asyncCall != null) {
+            this.executor = null;
+            return;
+        }
+
+        String prefix = "emandates-bulk-" + poolNumber.incrementAndGet() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Creates an executor for a call that returns a future instead of blocking; no threads are created.
+     */
+    static <Q, R> BulkExecutor<Q, R> async(Iterator<? extends Q> source, Function<Q, CompletableFuture<R>> call,
+            Function<Q, String> correlation, int concurrency, ITracer tracer) {
+        return new BulkExecutor<>(source, null, call, correlation, concurrency, tracer);
+    }
+
+    static int defaultConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        fill();
+        if (inFlight == 0) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized BulkResult<Q, R> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Object result;
+        try {
+            result = completed.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(ex);
+        }
+        inFlight--;
+        fill();
+
+        if (result instanceof RuntimeException) {
+            throw new CompletionException((RuntimeException) result);
+        }
+        return (BulkResult<Q, R>) result;
+    }
+
+    Stream<BulkResult<Q, R>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void fill() {
+        while (inFlight < concurrency && source.hasNext()) {
+            final Q request = source.next();
+            inFlight++;
+            if (asyncCall != null) {
+                try (ITracer.Scope scope = tracer.Restore(traceContext)) {
+                    asyncCall.apply(request).whenComplete((response, ex) -> {
+                        if (ex != null) {
+                            completed.add((ex instanceof RuntimeException) ? ex : new CompletionException(ex));
+                        } else {
+                            completed.add(new BulkResult<>(request, response, correlation.apply(request)));
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    completed.add(ex);
+                }
+                continue;
+            }
+            executor.execute(() -> {
+                try (ITracer.Scope scope = tracer.Restore(traceContext)) {
+                    completed.add(new BulkResult<>(request, call.apply(request), correlation.apply(request)));
+                } catch (RuntimeException ex) {
+                    completed.add(ex);
+                }
+            });
+        }
+    }
+}
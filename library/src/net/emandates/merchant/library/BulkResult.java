@@ -0,0 +1,39 @@
+package net.emandates.merchant.library;
+
+/**
+ * Outcome of one request of a bulk operation
+ * @param <Q> the request type
+ * @param <R> the response type
+ */
+public class BulkResult<Q, R> {
+    private final Q request;
+    private final R response;
+    private final String correlationID;
+
+    BulkResult(Q request, R response, String correlationID) {
+        this.request = request;
+        this.response = response;
+        this.correlationID = correlationID;
+    }
+
+    /**
+     * @return The request that was sent
+     */
+    public Q getRequest() {
+        return request;
+    }
+
+    /**
+     * @return The response received for the request, or error information when an error occurs
+     */
+    public R getResponse() {
+        return response;
+    }
+
+    /**
+     * @return The messageID of the request, or the transactionID for status requests
+     */
+    public String getCorrelationID() {
+        return correlationID;
+    }
+}
@@ -0,0 +1,195 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out communicators for many merchant contracts (tenants) in one JVM. All tenants share one configuration for
+ * everything that is not specific to a contract: acquirer URLs and certificates, logging and TLS settings. Each tenant
+ * only adds its contract ID and sub ID, its merchant return URL and its signing credentials.
+ *
+ * Tenants share the expensive immutable resources: the compiled schemas, JAXB contexts and TLS socket factory (which
+ * are shared by all communicators in the JVM), the request pipeline and its transport threads, and the acquirer
+ * certificates, which are parsed once from the shared configuration's key store.
+ */
+public class CommunicatorRegistry implements AutoCloseable {
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final RequestPipeline pipeline;
+    private volatile Configuration shared;
+    private volatile KeyMaterial trust;
+
+    /**
+     * @param shared the configuration shared by all tenants; its key store holds the acquirer certificates, and the
+     * signing keys of tenants that have no key store of their own
+     * @throws IOException if the key store cannot be read
+     * @throws GeneralSecurityException if the key store cannot be loaded
+     */
+    public CommunicatorRegistry(Configuration shared) throws IOException, GeneralSecurityException {
+        this(shared, new RequestPipeline());
+    }
+
+    /**
+     * @param shared the configuration shared by all tenants
+     * @param pipeline the request pipeline used by the communicators of all tenants
+     * @throws IOException if the key store cannot be read
+     * @throws GeneralSecurityException if the key store cannot be loaded
+     */
+    public CommunicatorRegistry(Configuration shared, RequestPipeline pipeline) throws IOException, GeneralSecurityException {
+        this.pipeline = pipeline;
+        setSharedConfiguration(shared);
+    }
+
+    /**
+     * Replaces the shared configuration, e.g. from a ConfigurationWatcher listener. The communicators of all tenants
+     * are switched to the new configuration; requests in flight complete with the configuration they started with.
+     * @param shared the new shared configuration
+     * @throws IOException if the key store cannot be read
+     * @throws GeneralSecurityException if the key store or a tenant's signing key cannot be loaded
+     */
+    public synchronized void setSharedConfiguration(Configuration shared) throws IOException, GeneralSecurityException {
+        Configuration snapshot = shared.snapshot();
+        KeyMaterial material = snapshot.getKeyMaterial();
+        Map<Tenant, Configuration> configs = new HashMap<>();
+        for (Tenant tenant : tenants.values()) {
+            configs.put(tenant, snapshot.forTenant(tenant.values, material));
+        }
+        for (Map.Entry<Tenant, Configuration> entry : configs.entrySet()) {
+            entry.getKey().setConfiguration(entry.getValue());
+        }
+        this.shared = snapshot;
+        this.trust = material;
+    }
+
+    /**
+     * @return The configuration shared by all tenants
+     */
+    public Configuration getSharedConfiguration() {
+        return shared;
+    }
+
+    /**
+     * Adds a tenant, or replaces the contract, merchant and signing values of a registered tenant. Only
+     * eMandateContractId, eMandateContractSubId, merchantReturnUrl, the signing certificate alias and password and
+     * (optionally) the key store of the given configuration are used.
+     * @param tenant the tenant's configuration
+     * @throws IOException if the tenant's key store cannot be read
+     * @throws GeneralSecurityException if the tenant's key store or signing key cannot be loaded
+     */
+    public synchronized void register(Configuration tenant) throws IOException, GeneralSecurityException {
+        String key = tenant.getTenant();
+        Configuration values = tenant.clone();
+        Configuration config = shared.forTenant(values, trust);
+        Tenant existing = tenants.get(key);
+        if (existing != null) {
+            existing.values = values;
+            existing.setConfiguration(config);
+        } else {
+            tenants.put(key, new Tenant(values, config));
+        }
+    }
+
+    /**
+     * Removes a tenant; communicators already handed out keep working with their last configuration
+     * @param eMandateContractId the tenant's contract ID
+     * @param eMandateContractSubId the tenant's contract sub ID
+     */
+    public synchronized void unregister(String eMandateContractId, int eMandateContractSubId) {
+        tenants.remove(key(eMandateContractId, eMandateContractSubId));
+    }
+
+    /**
+     * @return The keys (contractID/subID) of the registered tenants
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+    /**
+     * @param eMandateContractId the tenant's contract ID
+     * @param eMandateContractSubId the tenant's contract sub ID
+     * @return The CORE communicator of the tenant, created on first use
+     */
+    public CoreCommunicator getCore(String eMandateContractId, int eMandateContractSubId) {
+        return tenant(eMandateContractId, eMandateContractSubId).core();
+    }
+
+    /**
+     * @param eMandateContractId the tenant's contract ID
+     * @param eMandateContractSubId the tenant's contract sub ID
+     * @return The B2B communicator of the tenant, created on first use
+     */
+    public B2BCommunicator getB2B(String eMandateContractId, int eMandateContractSubId) {
+        return tenant(eMandateContractId, eMandateContractSubId).b2b();
+    }
+
+    /**
+     * @return The request pipeline shared by all tenants
+     */
+    public RequestPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Closes the shared request pipeline
+     */
+    @Override
+    public void close() {
+        pipeline.close();
+    }
+
+    private Tenant tenant(String eMandateContractId, int eMandateContractSubId) {
+        Tenant tenant = tenants.get(key(eMandateContractId, eMandateContractSubId));
+        if (tenant == null) {
+            throw new IllegalArgumentException("tenant " + key(eMandateContractId, eMandateContractSubId) + " is not registered");
+        }
+        return tenant;
+    }
+
+    private static String key(String eMandateContractId, int eMandateContractSubId) {
+        return eMandateContractId + "/" + eMandateContractSubId;
+    }
+
+    private class Tenant {
+        private volatile Configuration values;
+        private Configuration config;
+        private CoreCommunicator core;
+        private B2BCommunicator b2b;
+
+        Tenant(Configuration values, Configuration config) {
+            this.values = values;
+            this.config = config;
+        }
+
+        synchronized CoreCommunicator core() {
+            if (core == null) {
+                core = new CoreCommunicator(config);
+                core.setPipeline(pipeline);
+            }
+            return core;
+        }
+
+        synchronized B2BCommunicator b2b() {
+            if (b2b == null) {
+                b2b = new B2BCommunicator(config);
+                b2b.setPipeline(pipeline);
+            }
+            return b2b;
+        }
+
+        synchronized void setConfiguration(Configuration config) {
+            this.config = config;
+            if (core != null) {
+                core.setConfiguration(config);
+            }
+            if (b2b != null) {
+                b2b.setConfiguration(config);
+            }
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package net.emandates.merchant.library;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
@@ -13,13 +24,18 @@ import org.xml.sax.SAXException;
 
 /**
  * Configuration class
+ *
+ * A Configuration is either mutable, as created by its constructors and changed through its setters, Load and Setup,
+ * or an immutable snapshot, as created by a Builder or by snapshot(). A snapshot keeps its values and the parsed key
+ * material in final fields (see ConfigurationSnapshot), so it can be shared by any number of threads without
+ * synchronization; its setters throw UnsupportedOperationException.
  */
 public class Configuration {
     private String eMandateContractId;
     private int eMandateContractSubId;
     private String merchantReturnUrl;
     private String keyStoreLocation;
-    private InputStream keyStore;
+    private byte[] keyStore;
     private String keyStorePassword;
     private String signingCertificateAlias;
     private String signingCertificatePassword;
@@ -35,21 +51,29 @@ public class Configuration {
     private ILoggerFactory loggerFactory;
     private boolean tls12Enabled;
 
-    private static Configuration instance;
+    private volatile KeyMaterial keyMaterial;
+    private KeyMaterial trust;
+
+    private static class DefaultInstance {
+        private static final Configuration instance = new Configuration();
+    }
 
     /**
      * Gets the default Configuration instance
      * @return the default Configuration instance
      */
     public static Configuration defaultInstance() {
-        if (instance == null) {
-            instance = new Configuration();
-        }
+        return DefaultInstance.instance;
+    }
 
-        return instance;
+    /**
+     * @return A Builder for an immutable Configuration
+     */
+    public static Builder builder() {
+        return new Builder(new Configuration());
     }
 
-    private Configuration() {
+    Configuration() {
     }
     
     /**
@@ -83,7 +107,7 @@ public class Configuration {
             eMandateContractId, 
             eMandateContractSubId, 
             merchantReturnUrl, 
-            loadKeyStore(keyStoreLocation), // load the InputStream
+            new ByteArrayInputStream(loadKeyStore(keyStoreLocation)), // load the InputStream
             keyStorePassword, 
             signingCertificateAlias, 
             signingCertificatePassword, 
@@ -176,7 +200,7 @@ public class Configuration {
             eMandateContractId, 
             eMandateContractSubId, 
             merchantReturnUrl, 
-            loadKeyStore(keyStoreLocation), // load the InputStream
+            new ByteArrayInputStream(loadKeyStore(keyStoreLocation)), // load the InputStream
             keyStorePassword, 
             signingCertificateAlias, 
             signingCertificatePassword, 
@@ -310,7 +334,7 @@ public class Configuration {
             eMandateContractId, 
             eMandateContractSubId, 
             merchantReturnUrl, 
-            loadKeyStore(keyStoreLocation), // load the InputStream
+            new ByteArrayInputStream(loadKeyStore(keyStoreLocation)), // load the InputStream
             keyStorePassword, 
             signingCertificateAlias, 
             signingCertificatePassword, 
@@ -329,32 +353,117 @@ public class Configuration {
     /**
      * Clone a configuration object
      *
-     * @return new Configuration object
+     * @return new Configuration object; the clone of an immutable snapshot is mutable
      */
     public Configuration clone() {
         Configuration result = new Configuration();
-        result.eMandateContractId = this.eMandateContractId;
-        result.eMandateContractSubId = this.eMandateContractSubId;
-        result.merchantReturnUrl = this.merchantReturnUrl;
-        result.keyStoreLocation = this.keyStoreLocation;
-        result.keyStorePassword = this.keyStorePassword;
-        result.signingCertificateAlias = this.signingCertificateAlias;
-        result.signingCertificatePassword = this.signingCertificatePassword;
-        result.acquirerCertificateAlias = this.acquirerCertificateAlias;
-        result.acquirerUrl_DirectoryReq = this.acquirerUrl_DirectoryReq;
-        result.acquirerUrl_TransactionReq = this.acquirerUrl_TransactionReq;
-        result.acquirerUrl_StatusReq = this.acquirerUrl_StatusReq;
-        result.logsEnabled = this.logsEnabled;
-        result.serviceLogsEnabled = this.serviceLogsEnabled;
-        result.serviceLogsLocation = this.serviceLogsLocation;
-        result.serviceLogsPattern = this.serviceLogsPattern;
-        result.tls12Enabled = this.tls12Enabled;
-        result.loggerFactory = this.loggerFactory;
-
-        result.keyStore = this.keyStore;
+        result.eMandateContractId = geteMandateContractId();
+        result.eMandateContractSubId = geteMandateContractSubId();
+        result.merchantReturnUrl = getMerchantReturnUrl();
+        result.keyStoreLocation = getKeyStoreLocation();
+        result.keyStorePassword = getKeyStorePassword();
+        result.signingCertificateAlias = getSigningCertificateAlias();
+        result.signingCertificatePassword = getSigningCertificatePassword();
+        result.acquirerCertificateAlias = getAcquirerCertificateAlias();
+        result.acquirerAlternateCertificateAlias = getAcquirerAlternateCertificateAlias();
+        result.acquirerUrl_DirectoryReq = getAcquirerUrl_DirectoryReq();
+        result.acquirerUrl_TransactionReq = getAcquirerUrl_TransactionReq();
+        result.acquirerUrl_StatusReq = getAcquirerUrl_StatusReq();
+        result.logsEnabled = isLogsEnabled();
+        result.serviceLogsEnabled = isServiceLogsEnabled();
+        result.serviceLogsLocation = getServiceLogsLocation();
+        result.serviceLogsPattern = getServiceLogsPattern();
+        result.tls12Enabled = isTls12Enabled();
+        result.loggerFactory = getLoggerFactory();
+
+        result.keyStore = getKeyStoreBytes();
+        result.keyMaterial = getLoadedKeyMaterial();
+        result.trust = getTrust();
         return result;
     }
 
+    /**
+     * Creates an immutable snapshot of this configuration. The key store is parsed and the signing key is loaded, so
+     * that a configuration with an unusable key store fails here rather than on the first request.
+     * @return an immutable Configuration; this instance if it is immutable already
+     * @throws IOException if the key store cannot be read
+     * @throws GeneralSecurityException if the key store or the signing key cannot be loaded
+     */
+    public Configuration snapshot() throws IOException, GeneralSecurityException {
+        KeyMaterial material = null;
+        if (keyStore != null) {
+            material = getKeyMaterial();
+            if (material.getSigningKeyError() != null) {
+                throw material.getSigningKeyError();
+            }
+        }
+        return new ConfigurationSnapshot(this, material);
+    }
+
+    /**
+     * Creates the immutable configuration of a tenant: the contract, merchant and signing values of the tenant, and all
+     * other values of this configuration. Acquirer certificates are looked up in the given trust index first, so that
+     * tenants share the parsed acquirer certificates; a tenant without a key store of its own signs with a key from the
+     * key store of this configuration.
+     */
+    Configuration forTenant(Configuration tenant, KeyMaterial trust) throws IOException, GeneralSecurityException {
+        Configuration result = clone();
+        result.eMandateContractId = tenant.geteMandateContractId();
+        result.eMandateContractSubId = tenant.geteMandateContractSubId();
+        result.merchantReturnUrl = tenant.getMerchantReturnUrl();
+        result.signingCertificateAlias = tenant.getSigningCertificateAlias();
+        result.signingCertificatePassword = tenant.getSigningCertificatePassword();
+        byte[] tenantKeyStore = tenant.getKeyStoreBytes();
+        if (tenantKeyStore != null) {
+            result.keyStoreLocation = tenant.getKeyStoreLocation();
+            result.keyStore = tenantKeyStore;
+            result.keyStorePassword = tenant.getKeyStorePassword();
+        }
+        result.keyMaterial = (tenantKeyStore != null) ? tenant.getLoadedKeyMaterial() : null;
+        if (result.keyMaterial != null && !Objects.equals(result.signingCertificateAlias, result.keyMaterial.getSigningCertificateAlias())) {
+            result.keyMaterial = null;
+        }
+        result.trust = trust;
+        return result.snapshot();
+    }
+
+    /**
+     * @param alias alias of an acquirer certificate
+     * @return The certificate from the shared trust index or the key store, or null if neither has it
+     */
+    X509Certificate getAcquirerCertificate(String alias) throws IOException, KeyStoreException, NoSuchAlgorithmException, CertificateException {
+        KeyMaterial trust = getTrust();
+        if (trust != null) {
+            X509Certificate cert = trust.getCertificate(alias);
+            if (cert != null) {
+                return cert;
+            }
+        }
+        KeyMaterial keys = getKeyMaterial();
+        return (keys != null) ? keys.getCertificate(alias) : null;
+    }
+
+    /**
+     * @return The shared index of acquirer certificates of a tenant's configuration, or null
+     */
+    KeyMaterial getTrust() {
+        return trust;
+    }
+
+    /**
+     * @return true if this is an immutable snapshot
+     */
+    public boolean isImmutable() {
+        return false;
+    }
+
+    /**
+     * @return A Builder initialized with the values of this configuration
+     */
+    public Builder toBuilder() {
+        return new Builder(clone());
+    }
+
     /**
      * Attempts to load the settings from the application's configuration
      * @param is an InputStream where the configuration should be loaded from (e.g. a file)
@@ -363,6 +472,7 @@ public class Configuration {
      * @throws IOException
      */
     public void Load(InputStream is) throws ParserConfigurationException, SAXException, IOException {
+        checkMutable();
         Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
 
         seteMandateContractId(getConfigValue(doc, "eMandates.Contract.Id"));
@@ -396,6 +506,7 @@ public class Configuration {
      * @throws IOException
      */
     public void Setup(Configuration values) throws IOException {
+        checkMutable();
         seteMandateContractId(values.geteMandateContractId());
         seteMandateContractSubId(values.geteMandateContractSubId());
         setMerchantReturnUrl(values.getMerchantReturnUrl());
@@ -431,6 +542,7 @@ public class Configuration {
      * zeros to fill out the field.
      */
     public void seteMandateContractId(String eMandateContractId) {
+        checkMutable();
         this.eMandateContractId = eMandateContractId;
     }
 
@@ -446,9 +558,18 @@ public class Configuration {
      * use 0 for this field.
      */
     public void seteMandateContractSubId(int eMandateContractSubId) {
+        checkMutable();
         this.eMandateContractSubId = eMandateContractSubId;
     }
 
+    /**
+     * @return The tenant the configuration belongs to, as contractID/subID (see CommunicatorRegistry and
+     * FairScheduler)
+     */
+    String getTenant() {
+        return geteMandateContractId() + "/" + geteMandateContractSubId();
+    }
+
     /**
      * @return A valid URL to which the debtor banks redirects to, after the debtor has authorized a transaction.
      */
@@ -460,6 +581,7 @@ public class Configuration {
      * @param merchantReturnUrl A valid URL to which the debtor banks redirects to, after the debtor has authorized a transaction.
      */
     public void setMerchantReturnUrl(String merchantReturnUrl) {
+        checkMutable();
         this.merchantReturnUrl = merchantReturnUrl;
     }
 
@@ -474,7 +596,9 @@ public class Configuration {
      * @param signingCertificateAlias A string which specifies the alias of the certificate to use to sign messages to the creditor bank.
      */
     public void setSigningCertificateAlias(String signingCertificateAlias) {
+        checkMutable();
         this.signingCertificateAlias = signingCertificateAlias;
+        this.keyMaterial = null;
     }
 
     /**
@@ -488,6 +612,7 @@ public class Configuration {
      * @param acquirerCertificateAlias A string which specifies the alias of the certificate to use to validate messages from the creditor bank
      */
     public void setAcquirerCertificateAlias(String acquirerCertificateAlias) {
+        checkMutable();
         this.acquirerCertificateAlias = acquirerCertificateAlias;
     }
     
@@ -502,6 +627,7 @@ public class Configuration {
      * @param acquirerAlternateCertificateAlias A string which specifies the alias of the alternate certificate to validate received messages from the creditor bank
      */
 	public void setAcquirerAlternateCertificateAlias(String acquirerAlternateCertificateAlias) {
+		checkMutable();
 		this.acquirerAlternateCertificateAlias = acquirerAlternateCertificateAlias;
 	}
 
@@ -516,6 +642,7 @@ public class Configuration {
      * @param acquirerUrl_DirectoryReq The URL to which the library sends Directory request messages
      */
     public void setAcquirerUrl_DirectoryReq(String acquirerUrl_DirectoryReq) {
+        checkMutable();
         this.acquirerUrl_DirectoryReq = acquirerUrl_DirectoryReq;
     }
 
@@ -530,6 +657,7 @@ public class Configuration {
      * @param acquirerUrl_TransactionReq The URL to which the library sends Transaction messages (including eMandates messages).
      */
     public void setAcquirerUrl_TransactionReq(String acquirerUrl_TransactionReq) {
+        checkMutable();
         this.acquirerUrl_TransactionReq = acquirerUrl_TransactionReq;
     }
 
@@ -544,6 +672,7 @@ public class Configuration {
      * @param acquirerUrl_StatusReq The URL to which the library sends Status request messages.
      */
     public void setAcquirerUrl_StatusReq(String acquirerUrl_StatusReq) {
+        checkMutable();
         this.acquirerUrl_StatusReq = acquirerUrl_StatusReq;
     }
 
@@ -558,7 +687,9 @@ public class Configuration {
      * @param signingCertificatePassword The password of the private key of the signing certificate
      */
     public void setSigningCertificatePassword(String signingCertificatePassword) {
+        checkMutable();
         this.signingCertificatePassword = signingCertificatePassword;
+        this.keyMaterial = null;
     }
 
     /**
@@ -576,14 +707,16 @@ public class Configuration {
     }
 
     /**
-     * @param keyStoreLocation A Java keystore (file on the disk) that stores the certificates
+     * @param keyStoreLocation A Java keystore that stores the certificates: a class path resource, or else a file on the disk
      * @param keyStorePassword The password used to access the keystore
      */
     public void setKeyStoreLocationAndPass(String keyStoreLocation, String keyStorePassword) throws IOException {
+        checkMutable();
         this.keyStoreLocation = keyStoreLocation;
         this.keyStorePassword = keyStorePassword;
 
         this.keyStore = loadKeyStore(getKeyStoreLocation());
+        this.keyMaterial = null;
     }
 
     /**
@@ -591,19 +724,50 @@ public class Configuration {
      * @param keyStorePassword The password used to access the keystore
      */
     public void setKeyStoreAndPass(InputStream keyStore, String keyStorePassword) throws IOException {
+        checkMutable();
         this.keyStorePassword = keyStorePassword;
 
-        this.keyStore = markSupported(keyStore);
-        this.keyStore.mark(Integer.MAX_VALUE);
+        this.keyStore = keyStore.readAllBytes();
+        this.keyMaterial = null;
     }
 
     /**
      * @return the keyStore
      */
     InputStream getKeyStore() {
+        byte[] bytes = getKeyStoreBytes();
+        return (bytes != null) ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    /**
+     * @return The key store as read, or null
+     */
+    byte[] getKeyStoreBytes() {
         return keyStore;
     }
 
+    /**
+     * @return The parsed key store if it has been loaded, otherwise null
+     */
+    KeyMaterial getLoadedKeyMaterial() {
+        return keyMaterial;
+    }
+
+    /**
+     * @return The parsed key store, loaded on first use
+     */
+    KeyMaterial getKeyMaterial() throws IOException, KeyStoreException, NoSuchAlgorithmException, CertificateException {
+        KeyMaterial material = keyMaterial;
+        if (material == null) {
+            if (keyStore == null) {
+                return null;
+            }
+            material = KeyMaterial.Load(keyStore, keyStorePassword, signingCertificateAlias, signingCertificatePassword);
+            keyMaterial = material;
+        }
+        return material;
+    }
+
     /**
      * @return This tells the library that it should output debug logging messages.
      */
@@ -615,6 +779,7 @@ public class Configuration {
      * @param logsEnabled This tells the library that it should output debug logging messages.
      */
     public void setLogsEnabled(boolean logsEnabled) {
+        checkMutable();
         this.logsEnabled = logsEnabled;
     }
 
@@ -629,6 +794,7 @@ public class Configuration {
      * @param serviceLogsEnabled This tells the library that it should save ISO pain raw messages or not.
      */
     public void setServiceLogsEnabled(boolean serviceLogsEnabled) {
+        checkMutable();
         this.serviceLogsEnabled = serviceLogsEnabled;
     }
 
@@ -643,6 +809,7 @@ public class Configuration {
      * @param serviceLogsLocation A directory on the disk where the library saves ISO pain raw messages.
      */
     public void setServiceLogsLocation(String serviceLogsLocation) {
+        checkMutable();
         this.serviceLogsLocation = serviceLogsLocation;
     }
 
@@ -677,6 +844,7 @@ public class Configuration {
      * %a = current action
      */
     public void setServiceLogsPattern(String serviceLogsPattern) {
+        checkMutable();
         this.serviceLogsPattern = serviceLogsPattern;
     }
 
@@ -691,6 +859,7 @@ public class Configuration {
      * @param loggerFactory the loggerFactory to set
      */
     public void setLoggerFactory(ILoggerFactory loggerFactory) {
+        checkMutable();
         this.loggerFactory = loggerFactory;
     }
     
@@ -699,6 +868,7 @@ public class Configuration {
      * @param tls12Enabled flag that indicates the library to use TLS 1.2
      */
     public void setTls12Enabled(boolean tls12Enabled) {
+        checkMutable();
         this.tls12Enabled = tls12Enabled;
     }
     
@@ -730,22 +900,54 @@ public class Configuration {
 //        this.loggerFactory = loggerFactory != null ? loggerFactory : new LoggerFactory();
 //    }
     
-    private static InputStream loadKeyStore(String storeLocation) throws IOException {
+    private static byte[] loadKeyStore(String storeLocation) throws IOException {
+        URL url = findKeyStore(storeLocation);
+        if (url == null) {
+            throw new FileNotFoundException("key store '" + storeLocation + "' was not found");
+        }
+		try (InputStream keyStore = url.openStream()) {
+			return keyStore.readAllBytes();
+		}
+	}
+
+    /**
+     * Looks up the key store on the class path, or else on the file system
+     */
+    private static URL findKeyStore(String storeLocation) throws IOException {
+        if (storeLocation == null) {
+            return null;
+        }
         URL url = ClassLoader.getSystemClassLoader().getResource(storeLocation);
         if (url == null) {
             url = Configuration.class.getClassLoader().getResource(storeLocation);
         }
-		InputStream keyStore = markSupported(url.openStream());
-		keyStore.mark(Integer.MAX_VALUE);
-		return keyStore;
-	}
+        if (url == null && Files.isRegularFile(Paths.get(storeLocation))) {
+            url = Paths.get(storeLocation).toUri().toURL();
+        }
+        return url;
+    }
 
-	private static InputStream markSupported(InputStream in) {
-		if (in.markSupported()) {
-			return in;
-		}
-		return new BufferedInputStream(in);
-	}
+    /**
+     * @return The file holding the key store set with setKeyStoreLocationAndPass, or null if there is no such file
+     * (e.g. the key store is packaged in a jar or was set as an InputStream)
+     */
+    Path getKeyStoreFile() throws IOException {
+        URL url = findKeyStore(getKeyStoreLocation());
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+
+    private void checkMutable() {
+        if (isImmutable()) {
+            throw new UnsupportedOperationException("configuration snapshot is immutable");
+        }
+    }
           
     private String getConfigValue(Document doc, String key) {
         NodeList nl = doc.getElementsByTagName("add");
@@ -757,4 +959,198 @@ public class Configuration {
         }
         return null;
     }
+
+    /**
+     * Builds an immutable Configuration. Values not set keep the defaults of a new Configuration, or the values of the
+     * Configuration the builder was created from (see toBuilder()).
+     */
+    public static class Builder {
+        private final Configuration values;
+
+        private Builder(Configuration values) {
+            this.values = values;
+        }
+
+        /**
+         * Reads the settings from a configuration file, see Configuration.Load(InputStream)
+         * @param is an InputStream where the configuration should be loaded from (e.g. a file)
+         * @return this builder
+         * @throws ParserConfigurationException
+         * @throws SAXException
+         * @throws IOException
+         */
+        public Builder load(InputStream is) throws ParserConfigurationException, SAXException, IOException {
+            values.Load(is);
+            return this;
+        }
+
+        /**
+         * @param eMandateContractId eMandate.ContractID as supplied to you by the creditor bank
+         * @return this builder
+         */
+        public Builder eMandateContractId(String eMandateContractId) {
+            values.seteMandateContractId(eMandateContractId);
+            return this;
+        }
+
+        /**
+         * @param eMandateContractSubId eMandate.ContractSubId as supplied to you by the creditor bank
+         * @return this builder
+         */
+        public Builder eMandateContractSubId(int eMandateContractSubId) {
+            values.seteMandateContractSubId(eMandateContractSubId);
+            return this;
+        }
+
+        /**
+         * @param merchantReturnUrl A valid URL to which the debtor banks redirects to, after the debtor has authorized a transaction.
+         * @return this builder
+         */
+        public Builder merchantReturnUrl(String merchantReturnUrl) {
+            values.setMerchantReturnUrl(merchantReturnUrl);
+            return this;
+        }
+
+        /**
+         * @param keyStoreLocation A Java keystore (file on the disk) that stores the certificates
+         * @param keyStorePassword The password used to access the keystore
+         * @return this builder
+         * @throws IOException
+         */
+        public Builder keyStoreLocation(String keyStoreLocation, String keyStorePassword) throws IOException {
+            values.setKeyStoreLocationAndPass(keyStoreLocation, keyStorePassword);
+            return this;
+        }
+
+        /**
+         * @param keyStore A Java keystore InputStream that stores the certificates; it is read completely
+         * @param keyStorePassword The password used to access the keystore
+         * @return this builder
+         * @throws IOException
+         */
+        public Builder keyStore(InputStream keyStore, String keyStorePassword) throws IOException {
+            values.setKeyStoreAndPass(keyStore, keyStorePassword);
+            return this;
+        }
+
+        /**
+         * @param signingCertificateAlias The alias of the certificate to use to sign messages to the creditor bank
+         * @param signingCertificatePassword The password of the private key of the signing certificate
+         * @return this builder
+         */
+        public Builder signingCertificate(String signingCertificateAlias, String signingCertificatePassword) {
+            values.setSigningCertificateAlias(signingCertificateAlias);
+            values.setSigningCertificatePassword(signingCertificatePassword);
+            return this;
+        }
+
+        /**
+         * @param acquirerCertificateAlias The alias of the certificate to use to validate messages from the creditor bank
+         * @return this builder
+         */
+        public Builder acquirerCertificateAlias(String acquirerCertificateAlias) {
+            values.setAcquirerCertificateAlias(acquirerCertificateAlias);
+            return this;
+        }
+
+        /**
+         * @param acquirerAlternateCertificateAlias The alias of the alternate certificate to use to validate messages from the creditor bank
+         * @return this builder
+         */
+        public Builder acquirerAlternateCertificateAlias(String acquirerAlternateCertificateAlias) {
+            values.setAcquirerAlternateCertificateAlias(acquirerAlternateCertificateAlias);
+            return this;
+        }
+
+        /**
+         * @param acquirerUrl_DirectoryReq The URL to which the library sends Directory request messages
+         * @return this builder
+         */
+        public Builder acquirerUrl_DirectoryReq(String acquirerUrl_DirectoryReq) {
+            values.setAcquirerUrl_DirectoryReq(acquirerUrl_DirectoryReq);
+            return this;
+        }
+
+        /**
+         * @param acquirerUrl_TransactionReq The URL to which the library sends Transaction messages (including eMandates messages).
+         * @return this builder
+         */
+        public Builder acquirerUrl_TransactionReq(String acquirerUrl_TransactionReq) {
+            values.setAcquirerUrl_TransactionReq(acquirerUrl_TransactionReq);
+            return this;
+        }
+
+        /**
+         * @param acquirerUrl_StatusReq The URL to which the library sends Status request messages.
+         * @return this builder
+         */
+        public Builder acquirerUrl_StatusReq(String acquirerUrl_StatusReq) {
+            values.setAcquirerUrl_StatusReq(acquirerUrl_StatusReq);
+            return this;
+        }
+
+        /**
+         * @param logsEnabled This tells the library that it should output debug logging messages.
+         * @return this builder
+         */
+        public Builder logsEnabled(boolean logsEnabled) {
+            values.setLogsEnabled(logsEnabled);
+            return this;
+        }
+
+        /**
+         * @param serviceLogsEnabled This tells the library that it should save ISO pain raw messages or not.
+         * @return this builder
+         */
+        public Builder serviceLogsEnabled(boolean serviceLogsEnabled) {
+            values.setServiceLogsEnabled(serviceLogsEnabled);
+            return this;
+        }
+
+        /**
+         * @param serviceLogsLocation A directory on the disk where the library saves ISO pain raw messages.
+         * @return this builder
+         */
+        public Builder serviceLogsLocation(String serviceLogsLocation) {
+            values.setServiceLogsLocation(serviceLogsLocation);
+            return this;
+        }
+
+        /**
+         * @param serviceLogsPattern A string that describes a pattern to distinguish the ISO pain raw messages, see
+         * Configuration.getServiceLogsPattern()
+         * @return this builder
+         */
+        public Builder serviceLogsPattern(String serviceLogsPattern) {
+            values.setServiceLogsPattern(serviceLogsPattern);
+            return this;
+        }
+
+        /**
+         * @param tls12Enabled flag that indicates the library to use TLS 1.2
+         * @return this builder
+         */
+        public Builder tls12Enabled(boolean tls12Enabled) {
+            values.setTls12Enabled(tls12Enabled);
+            return this;
+        }
+
+        /**
+         * @param loggerFactory ILoggerFactory instance that is used to create ILogger object.
+         * @return this builder
+         */
+        public Builder loggerFactory(ILoggerFactory loggerFactory) {
+            values.setLoggerFactory(loggerFactory);
+            return this;
+        }
+
+        /**
+         * @return An immutable Configuration with the values of this builder
+         * @throws IOException if the key store cannot be read
+         * @throws GeneralSecurityException if the key store or the signing key cannot be loaded
+         */
+        public Configuration build() throws IOException, GeneralSecurityException {
+            return values.snapshot();
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package net.emandates.merchant.library;
+
+/**
+ * An immutable Configuration, as created by Configuration.Builder and Configuration.snapshot(). Every value and the
+ * parsed key store are held in final fields, so a snapshot can be shared by any number of threads without
+ * synchronization; the setters inherited from Configuration throw UnsupportedOperationException.
+ */
+final class ConfigurationSnapshot extends Configuration {
+    private final String eMandateContractId;
+    private final int eMandateContractSubId;
+    private final String merchantReturnUrl;
+    private final String keyStoreLocation;
+    private final byte[] keyStore;
+    private final String keyStorePassword;
+    private final String signingCertificateAlias;
+    private final String signingCertificatePassword;
+    private final String acquirerCertificateAlias;
+    private final String acquirerAlternateCertificateAlias;
+    private final String acquirerUrl_DirectoryReq;
+    private final String acquirerUrl_TransactionReq;
+    private final String acquirerUrl_StatusReq;
+    private final boolean logsEnabled;
+    private final boolean serviceLogsEnabled;
+    private final String serviceLogsLocation;
+    private final String serviceLogsPattern;
+    private final ILoggerFactory loggerFactory;
+    private final boolean tls12Enabled;
+    private final KeyMaterial keyMaterial;
+    private final KeyMaterial trust;
+
+    /**
+     * @param values the values of the snapshot
+     * @param keyMaterial the parsed key store of the values, or null if they have no key store
+     */
+    ConfigurationSnapshot(Configuration values, KeyMaterial keyMaterial) {
+        this.eMandateContractId = values.geteMandateContractId();
+        this.eMandateContractSubId = values.geteMandateContractSubId();
+        this.merchantReturnUrl = values.getMerchantReturnUrl();
+        this.keyStoreLocation = values.getKeyStoreLocation();
+        this.keyStore = values.getKeyStoreBytes();
+        this.keyStorePassword = values.getKeyStorePassword();
+        this.signingCertificateAlias = values.getSigningCertificateAlias();
+        this.signingCertificatePassword = values.getSigningCertificatePassword();
+        this.acquirerCertificateAlias = values.getAcquirerCertificateAlias();
+        this.acquirerAlternateCertificateAlias = values.getAcquirerAlternateCertificateAlias();
+        this.acquirerUrl_DirectoryReq = values.getAcquirerUrl_DirectoryReq();
+        this.acquirerUrl_TransactionReq = values.getAcquirerUrl_TransactionReq();
+        this.acquirerUrl_StatusReq = values.getAcquirerUrl_StatusReq();
+        this.logsEnabled = values.isLogsEnabled();
+        this.serviceLogsEnabled = values.isServiceLogsEnabled();
+        this.serviceLogsLocation = values.getServiceLogsLocation();
+        this.serviceLogsPattern = values.getServiceLogsPattern();
+        this.loggerFactory = (values.getLoggerFactory() != null) ? values.getLoggerFactory() : new LoggerFactory();
+        this.tls12Enabled = values.isTls12Enabled();
+        this.keyMaterial = keyMaterial;
+        this.trust = values.getTrust();
+    }
+
+    @Override
+    public Configuration snapshot() {
+        return this;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return true;
+    }
+
+    @Override
+    public String geteMandateContractId() {
+        return eMandateContractId;
+    }
+
+    @Override
+    public int geteMandateContractSubId() {
+        return eMandateContractSubId;
+    }
+
+    @Override
+    public String getMerchantReturnUrl() {
+        return merchantReturnUrl;
+    }
+
+    @Override
+    public String getSigningCertificateAlias() {
+        return signingCertificateAlias;
+    }
+
+    @Override
+    public String getAcquirerCertificateAlias() {
+        return acquirerCertificateAlias;
+    }
+
+    @Override
+    public String getAcquirerAlternateCertificateAlias() {
+        return acquirerAlternateCertificateAlias;
+    }
+
+    @Override
+    public String getAcquirerUrl_DirectoryReq() {
+        return acquirerUrl_DirectoryReq;
+    }
+
+    @Override
+    public String getAcquirerUrl_TransactionReq() {
+        return acquirerUrl_TransactionReq;
+    }
+
+    @Override
+    public String getAcquirerUrl_StatusReq() {
+        return acquirerUrl_StatusReq;
+    }
+
+    @Override
+    public String getSigningCertificatePassword() {
+        return signingCertificatePassword;
+    }
+
+    @Override
+    public String getKeyStorePassword() {
+        return keyStorePassword;
+    }
+
+    @Override
+    public String getKeyStoreLocation() {
+        return keyStoreLocation;
+    }
+
+    @Override
+    byte[] getKeyStoreBytes() {
+        return keyStore;
+    }
+
+    @Override
+    KeyMaterial getLoadedKeyMaterial() {
+        return keyMaterial;
+    }
+
+    @Override
+    KeyMaterial getKeyMaterial() {
+        return keyMaterial;
+    }
+
+    @Override
+    KeyMaterial getTrust() {
+        return trust;
+    }
+
+    @Override
+    public boolean isLogsEnabled() {
+        return logsEnabled;
+    }
+
+    @Override
+    public boolean isServiceLogsEnabled() {
+        return serviceLogsEnabled;
+    }
+
+    @Override
+    public String getServiceLogsLocation() {
+        return serviceLogsLocation;
+    }
+
+    @Override
+    public String getServiceLogsPattern() {
+        return serviceLogsPattern;
+    }
+
+    @Override
+    public ILoggerFactory getLoggerFactory() {
+        return loggerFactory;
+    }
+
+    @Override
+    public boolean isTls12Enabled() {
+        return tls12Enabled;
+    }
+}
@@ -0,0 +1,302 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.xml.parsers.ParserConfigurationException;
+import org.xml.sax.SAXException;
+
+/**
+ * Watches the configuration file and the key store file it refers to, and reloads the configuration when either
+ * changes. A reload parses the configuration file and the key store into a new immutable Configuration and validates
+ * it on the watcher's own thread; only a valid configuration is published to the registered communicators and
+ * listeners, and a failed reload keeps the current configuration in use. Requests in flight complete with the
+ * configuration they started with.
+ *
+ * The key store is watched only if it is a file on the disk (see Configuration.setKeyStoreLocationAndPass).
+ */
+public class ConfigurationWatcher implements AutoCloseable {
+    private static final long DefaultQuietPeriod = 500;
+
+    private final Path configFile;
+    private final AtomicReference<Configuration> current = new AtomicReference<>();
+    private final CopyOnWriteArrayList<CoreCommunicator> communicators = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Consumer<Configuration>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Object reloadLock = new Object();
+    private volatile long quietPeriod = DefaultQuietPeriod;
+    private volatile Exception lastError;
+    private volatile long reloads;
+    private volatile long failedReloads;
+    private WatchService watchService;
+    private Thread thread;
+    private volatile Path keyStoreFile;
+
+    /**
+     * Loads the configuration file; the watcher does not watch it until started
+     * @param configFile the configuration file, in the format read by Configuration.Load
+     * @throws IOException if the configuration or the key store cannot be read
+     * @throws GeneralSecurityException if the key store or the signing key cannot be loaded
+     * @throws ParserConfigurationException
+     * @throws SAXException if the configuration file is not valid XML
+     * @throws CommunicatorException if a required value is missing or a certificate is not in the key store
+     */
+    public ConfigurationWatcher(Path configFile) throws IOException, GeneralSecurityException, ParserConfigurationException, SAXException,
+            CommunicatorException {
+        this.configFile = configFile.toAbsolutePath();
+        Configuration config = load();
+        validate(config);
+        current.set(config);
+    }
+
+    /**
+     * @return The configuration loaded last
+     */
+    public Configuration getConfiguration() {
+        return current.get();
+    }
+
+    /**
+     * Sets the configuration of a communicator to the current configuration, and to every configuration reloaded
+     * later
+     * @param communicator the communicator
+     */
+    public void addCommunicator(CoreCommunicator communicator) {
+        communicators.add(communicator);
+        communicator.setConfiguration(current.get());
+    }
+
+    /**
+     * @param communicator a communicator that should no longer receive reloaded configurations
+     */
+    public void removeCommunicator(CoreCommunicator communicator) {
+        communicators.remove(communicator);
+    }
+
+    /**
+     * @param listener called with every configuration that is reloaded successfully, on the watcher's thread
+     */
+    public void addListener(Consumer<Configuration> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener to remove
+     */
+    public void removeListener(Consumer<Configuration> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param quietPeriod time in milliseconds without further changes after which a change is reloaded, so that a
+     * file written in several steps is read once it is complete; defaults to 500
+     */
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * @return The error of the last failed reload, or null if the last reload succeeded
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return Number of configurations published since the watcher was created
+     */
+    public long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * @return Number of reloads that failed to load or validate
+     */
+    public long getFailedReloads() {
+        return failedReloads;
+    }
+
+    /**
+     * Starts watching the configuration file and the key store file
+     * @throws IOException if the directories cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        watch(configFile);
+        keyStoreFile = current.get().getKeyStoreFile();
+        if (keyStoreFile != null) {
+            watch(keyStoreFile);
+        }
+
+        thread = new Thread(this::run, "emandates-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reloads the configuration now, on the calling thread
+     * @return true if the configuration was valid and has been published
+     */
+    public boolean reload() {
+        synchronized (reloadLock) {
+            Configuration config;
+            try {
+                config = load();
+                validate(config);
+            } catch (IOException | GeneralSecurityException | ParserConfigurationException | SAXException | CommunicatorException
+                    | RuntimeException ex) {
+                lastError = ex;
+                failedReloads++;
+                log(LogLevel.WARNING, "configuration reload failed, keeping the current configuration: " + ex.getMessage());
+                return false;
+            }
+
+            current.set(config);
+            for (CoreCommunicator communicator : communicators) {
+                communicator.setConfiguration(config);
+            }
+            for (Consumer<Configuration> listener : listeners) {
+                try {
+                    listener.accept(config);
+                } catch (RuntimeException ex) {
+                    log(LogLevel.WARNING, "configuration listener failed: " + ex.getMessage());
+                }
+            }
+            lastError = null;
+            reloads++;
+            log(LogLevel.INFO, "configuration reloaded from " + configFile);
+            return true;
+        }
+    }
+
+    /**
+     * Stops watching; the current configuration stays in use
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        watchService.close();
+        thread = null;
+    }
+
+    private Configuration load() throws IOException, GeneralSecurityException, ParserConfigurationException, SAXException {
+        try (InputStream in = Files.newInputStream(configFile)) {
+            return Configuration.builder().load(in).build();
+        }
+    }
+
+    /**
+     * Checks what Configuration.snapshot() does not: the values needed to send requests and the presence of the
+     * acquirer certificates in the key store
+     */
+    private static void validate(Configuration config) throws IOException, GeneralSecurityException, CommunicatorException {
+        require(config.geteMandateContractId(), "eMandates.Contract.Id");
+        require(config.getAcquirerUrl_DirectoryReq(), "eMandates.Acquirer.DirectoryRequestUrl");
+        require(config.getAcquirerUrl_TransactionReq(), "eMandates.Acquirer.TransactionRequestUrl");
+        require(config.getAcquirerUrl_StatusReq(), "eMandates.Acquirer.StatusRequestUrl");
+        require(config.getAcquirerCertificateAlias(), "eMandates.AcquirerCertificate.Alias");
+
+        KeyMaterial keys = config.getKeyMaterial();
+        if (keys == null) {
+            throw new CommunicatorException("no key store configured");
+        }
+        keys.getSigningKey();
+        if (keys.getCertificate(config.getAcquirerCertificateAlias()) == null) {
+            throw new CommunicatorException("acquirer certificate '" + config.getAcquirerCertificateAlias() + "' was not found in the key store");
+        }
+        String alternate = config.getAcquirerAlternateCertificateAlias();
+        if (alternate != null && !alternate.isEmpty() && keys.getCertificate(alternate) == null) {
+            throw new CommunicatorException("acquirer alternate certificate '" + alternate + "' was not found in the key store");
+        }
+    }
+
+    private static void require(String value, String key) throws CommunicatorException {
+        if (value == null || value.isEmpty()) {
+            throw new CommunicatorException(key + " is not set");
+        }
+    }
+
+    private void watch(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (watchedDirectories.containsValue(directory)) {
+            return;
+        }
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(key, directory);
+    }
+
+    private void run() {
+        boolean changed = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = changed ? watchService.poll(quietPeriod, TimeUnit.MILLISECONDS) : watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            if (key == null) {
+                changed = false;
+                reloadAndRewatch();
+                continue;
+            }
+
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changed = true;
+                    continue;
+                }
+                Path file = directory.resolve((Path) event.context());
+                if (file.equals(configFile) || file.equals(keyStoreFile)) {
+                    changed = true;
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void reloadAndRewatch() {
+        if (!reload()) {
+            return;
+        }
+        try {
+            Path file = current.get().getKeyStoreFile();
+            if (file != null && !file.equals(keyStoreFile)) {
+                synchronized (this) {
+                    watch(file);
+                    keyStoreFile = file;
+                }
+            }
+        } catch (IOException | ClosedWatchServiceException ex) {
+            log(LogLevel.WARNING, "cannot watch the key store: " + ex.getMessage());
+        }
+    }
+
+    private void log(LogLevel level, String message) {
+        Configuration config = current.get();
+        ILoggerFactory factory = config.getLoggerFactory();
+        ((factory != null) ? factory : new LoggerFactory()).Create().Log(config, level, message);
+    }
+}
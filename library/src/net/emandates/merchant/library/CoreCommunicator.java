@@ -11,10 +11,17 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableEntryException;
 import java.security.cert.CertificateException;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import jakarta.xml.bind.JAXBException;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.XMLSignatureException;
@@ -43,10 +50,25 @@ public class CoreCommunicator {
      */
     protected Instrumentation localInstrumentCode;
     
+    /**
+     * Configuration used by the current instance (can be CORE or B2B). Every request reads it once and uses that
+     * Configuration until it completes.
+     */
+    private final AtomicReference<Configuration> configuration = new AtomicReference<>();
+
     /**
      * Configuration used by the current instance (can be CORE or B2B).
+     * @deprecated Mirrors getConfiguration() for subclasses that read it; assigning it has no effect. Use
+     * getConfiguration() and setConfiguration(Configuration) instead.
      */
-    protected Configuration config;
+    @Deprecated
+    protected volatile Configuration config;
+
+    private volatile StatusMonitor statusMonitor;
+
+    private volatile RequestPipeline pipeline;
+
+    private static volatile SSLSocketFactory tls12SocketFactory;
 
     /**
      * Constructs a new Communicator, initializes the Configuration and sets LocalInstrumentCode = CORE
@@ -56,10 +78,11 @@ public class CoreCommunicator {
     }
     
     public CoreCommunicator(Configuration config) {
+        configuration.set(config);
         this.config = config;
-        logger = (this.config.getLoggerFactory() != null)
-                ? this.config.getLoggerFactory().Create() : new LoggerFactory().Create();
-        xmlProcessor = new XmlProcessor(this.config);
+        logger = (config.getLoggerFactory() != null)
+                ? config.getLoggerFactory().Create() : new LoggerFactory().Create();
+        xmlProcessor = new XmlProcessor(config);
         localInstrumentCode = Instrumentation.CORE;
     }
 
@@ -69,25 +92,75 @@ public class CoreCommunicator {
      * information when an error occurs
      */
     public DirectoryResponse directory() {
+        Configuration config = getConfiguration();
+        RequestContext context = newContext("directory", config, RequestClass.INTERACTIVE, null, null);
         try {
-            logger.Log(config, "sending new directory request");
-            String xml = new iDxMessageBuilder(localInstrumentCode).getDirectoryRequest(config);
-            xml = xmlProcessor.AddSignature(config, xml);
+            admit(context);
+            String xml = buildDirectoryRequest(config, context);
 
-            DirectoryResponse dr = DirectoryResponse.Parse(
-                performRequest(xml, config.getAcquirerUrl_DirectoryReq(), config.isTls12Enabled())
-            );
+            String response = performRequest(config, xml, config.getAcquirerUrl_DirectoryReq(), context);
+            long start = context.startPhase(RequestPhase.PARSE);
+            DirectoryResponse dr = DirectoryResponse.Parse(response);
+            context.endPhase(RequestPhase.PARSE, start);
 
             return dr;
         } catch (DatatypeConfigurationException | JAXBException | CommunicatorException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return DirectoryResponse.Get(ex);
         } catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException | InvalidAlgorithmParameterException | ParserConfigurationException | MarshalException | SAXException | XMLSignatureException | TransformerException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return DirectoryResponse.Get(ex);
+        } finally {
+            context.complete();
         }
     }
+
+    /**
+     * Sends a directory request through the request pipeline, see directory().
+     * @return A future that completes with the DirectoryResponse; it never completes exceptionally
+     */
+    public CompletableFuture<DirectoryResponse> directoryAsync() {
+        final Configuration config = getConfiguration();
+        final RequestContext context = newContext("directory", config, RequestClass.INTERACTIVE, null, null);
+        return submit(config, context, () -> buildDirectoryRequest(config, context), config.getAcquirerUrl_DirectoryReq(), DirectoryResponse::Parse,
+                DirectoryResponse::Get);
+    }
+
+    String buildDirectoryRequest(Configuration config, RequestContext context) throws DatatypeConfigurationException, JAXBException, CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableEntryException,
+            InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException, SAXException, XMLSignatureException,
+            TransformerException {
+        logger.Log(config, LogLevel.INFO, "sending new directory request");
+        long start = context.startPhase(RequestPhase.BUILD);
+        String xml = new iDxMessageBuilder(localInstrumentCode).getDirectoryRequest(config);
+        context.endPhase(RequestPhase.BUILD, start);
+        start = context.startPhase(RequestPhase.SIGN);
+        String signed = xmlProcessor.AddSignature(config, xml);
+        context.endPhase(RequestPhase.SIGN, start);
+        return signed;
+    }
     
+    /**
+     * One TLS 1.2 socket factory is shared by all communicators: creating an SSLContext is expensive, and kept-alive
+     * connections are only reused for requests that use the same socket factory.
+     */
+    private static SSLSocketFactory getTls12SocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
+        SSLSocketFactory result = tls12SocketFactory;
+        if (result == null) {
+            synchronized (CoreCommunicator.class) {
+                result = tls12SocketFactory;
+                if (result == null) {
+                    SSLContext sc = SSLContext.getInstance("TLSv1.2");
+                    sc.init(null,null,new java.security.SecureRandom());
+                    result = sc.getSocketFactory();
+                    tls12SocketFactory = result;
+                }
+            }
+        }
+        return result;
+    }
+
     private HttpURLConnection getConnection(String url, boolean isTls12Enabled) throws IOException, KeyManagementException, NoSuchAlgorithmException
     {
         if(url.startsWith("https://"))
@@ -95,9 +168,7 @@ public class CoreCommunicator {
             HttpsURLConnection con = (HttpsURLConnection) new URL(url).openConnection();
             if(isTls12Enabled)
             {
-                SSLContext sc = SSLContext.getInstance("TLSv1.2");
-                sc.init(null,null,new java.security.SecureRandom());
-                con.setSSLSocketFactory(sc.getSocketFactory());
+                con.setSSLSocketFactory(getTls12SocketFactory());
             }
             return con;
         }
@@ -108,62 +179,263 @@ public class CoreCommunicator {
         }
     }
     
-    String performRequest(String xml, String url, boolean isTls12Enabled) throws CommunicatorException {
+    /**
+     * Reserves the size of an admitted request, validates and sends it and verifies its response; the caller completes
+     * the context
+     */
+    String performRequest(Configuration config, String xml, String url, RequestContext context) throws CommunicatorException {
+        reserve(context, xml);
+        validateRequest(config, xml, url, context);
+        String response = send(config, xml, url, context);
+        verifyResponse(config, response, context);
+        return response;
+    }
+
+    /**
+     * Creates the context of an operation, recording its phases in the pipeline's metrics, tracer and slow request
+     * recorder; called on the thread that called the operation, so that its span is a child of that thread's trace
+     * context
+     */
+    RequestContext newContext(String operation, Configuration config, RequestClass requestClass, String transactionID,
+            String messageID) {
+        RequestPipeline p = getPipeline();
+        return new RequestContext(operation, config, requestClass, transactionID, messageID, p.getMetrics(), p.getTracer(),
+                p.getSlowRequestRecorder());
+    }
+
+    /**
+     * Passes a request through the pipeline's AdmissionQueue, if it has one; called before the request is built, so
+     * that a request that is not admitted costs nothing and never waits for the build stage
+     */
+    void admit(RequestContext context) throws AdmissionException {
+        AdmissionQueue admission = getPipeline().getAdmissionQueue();
+        if (admission != null) {
+            long start = context.startPhase(RequestPhase.QUEUE);
+            try {
+                admission.admit(context);
+            } finally {
+                context.endPhase(RequestPhase.QUEUE, start);
+            }
+        }
+    }
+
+    /**
+     * Reserves the size of a built request in the AdmissionQueue that admitted it
+     */
+    void reserve(RequestContext context, String xml) throws AdmissionException {
+        AdmissionQueue admission = context.admission;
+        if (admission != null) {
+            admission.reserve(context, Utils.utf8Length(xml));
+        }
+    }
+
+    void validateRequest(Configuration config, String xml, String url, RequestContext context) throws CommunicatorException {
         try {
-            logger.Log(config, "sending request to " + url);
+            logger.Log(config, LogLevel.DEBUG, "sending request to %s", url);
 
-            if (!xmlProcessor.VerifySchema(config, xml)) {
-                logger.Log(config, "request xml schema is not valid");
+            long start = context.startPhase(RequestPhase.SCHEMA_VALIDATION);
+            boolean valid = xmlProcessor.VerifySchema(config, xml);
+            context.endPhase(RequestPhase.SCHEMA_VALIDATION, start);
+            if (!valid) {
+                logger.Log(config, LogLevel.WARNING, "request xml schema is not valid");
                 throw new CommunicatorException("request xml schema not valid");
             }
 
-            logger.LogXmlMessage(config, xml);
+            if (context.isCapturingMessages()) {
+                context.request = xml;
+            }
+            if (logger.IsXmlLogEnabled(config)) {
+                logXmlMessage(config, context, MessageInfo.Request(context, xml, null), false);
+            }
+        } catch (IOException | ParserConfigurationException | SAXException ex) {
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
+            throw new CommunicatorException("error occured", ex);
+        }
+    }
 
-            logger.Log(config, "creating http(s) client");
+    /**
+     * Sends the request once the pipeline's FairScheduler grants it a transport slot
+     */
+    String send(Configuration config, String xml, String url, RequestContext context) throws CommunicatorException {
+        FairScheduler scheduler = getPipeline().getScheduler();
+        long start = context.startPhase(RequestPhase.QUEUE);
+        try {
+            scheduler.acquire(context.getTenant(), context.getRequestClass());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CommunicatorException("interrupted while waiting for the transport", ex);
+        } finally {
+            context.endPhase(RequestPhase.QUEUE, start);
+        }
+        try {
+            return exchange(config, xml, url, context);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Sends the request with a transport slot that the caller holds
+     */
+    String exchange(Configuration config, String xml, String url, RequestContext context) throws CommunicatorException {
+        boolean received = false;
+        ITracer.Scope scope = ITracer.Scope.None;
+        try {
+            context.startSending();
+            context.setEndpoint(url);
+            long start = context.startPhase(RequestPhase.EXCHANGE);
+            scope = context.makeCurrent();
+            logger.Log(config, LogLevel.DEBUG, "creating http(s) client");
 
-            HttpURLConnection con = getConnection(url, isTls12Enabled );//HttpsURLConnection) new URL(url).openConnection();
+            HttpURLConnection con = getConnection(url, config.isTls12Enabled() );//HttpsURLConnection) new URL(url).openConnection();
             con.setRequestMethod("POST");
             con.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
             con.setDoInput(true);
             con.setDoOutput(true);
             
-            con.getOutputStream().write(xml.getBytes(StandardCharsets.UTF_8));
+            byte[] request = xml.getBytes(StandardCharsets.UTF_8);
+            con.getOutputStream().write(request);
             
             String response = Utils.copy(con.getInputStream());
+            long length = con.getContentLengthLong();
+            context.endExchange(start, url, con.getResponseCode(), request.length, (length >= 0) ? length : response.length());
+            received = true;
 
-            logger.LogXmlMessage(config, response);
+            return response;
+        } catch (IOException | IllegalStateException ex) {
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
+            throw new CommunicatorException("error occured", ex);
+        } catch (KeyManagementException ex) {
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
+            throw new CommunicatorException("error occured", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
+            throw new CommunicatorException("error occured", ex);
+        } finally {
+            scope.close();
+            if (!received) {
+                logHeldRequest(config, context);
+            }
+        }
+    }
 
-            if (!xmlProcessor.VerifySchema(config,response)) {
-                logger.Log(config, "response xml schema is not valid");
+    void verifyResponse(Configuration config, String response, RequestContext context) throws CommunicatorException {
+        boolean valid = false;
+        try {
+            long start = context.startPhase(RequestPhase.SCHEMA_VALIDATION);
+            boolean schemaValid = xmlProcessor.VerifySchema(config,response);
+            context.endPhase(RequestPhase.SCHEMA_VALIDATION, start);
+            if (!schemaValid) {
+                logger.Log(config, LogLevel.WARNING, "response xml schema is not valid");
                 throw new CommunicatorException("response xml schema not valid");
             }
 
-            if (!xmlProcessor.VerifySignature(config, response)) {
-                logger.Log(config, "response xml signature not valid");
+            start = context.startPhase(RequestPhase.SIGNATURE_VERIFICATION);
+            boolean signatureValid = xmlProcessor.VerifySignature(config, response);
+            context.endPhase(RequestPhase.SIGNATURE_VERIFICATION, start);
+            if (!signatureValid) {
+                logger.Log(config, LogLevel.WARNING, "response xml signature not valid");
                 throw new CommunicatorException("response xml signature not valid");
             }
-            
-            return response;
+            valid = true;
         } catch (IOException | IllegalStateException | ParserConfigurationException | SAXException ex) {
-            logger.Log(config, ex.getMessage());
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             throw new CommunicatorException("error occured", ex);
         } catch (MarshalException | XMLSignatureException ex) {
-            logger.Log(config, ex.getMessage());
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             throw new CommunicatorException("error occured", ex);
         } catch (ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
-            logger.Log(config, ex.getMessage());
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             throw new CommunicatorException("error occured", ex);
         } catch (TransformerException ex) {
-            logger.Log(config, ex.getMessage());
-            throw new CommunicatorException("error occured", ex);
-        } catch (KeyManagementException ex) {
-            logger.Log(config, ex.getMessage());
-            throw new CommunicatorException("error occured", ex);
-        } catch (NoSuchAlgorithmException ex) {
-            logger.Log(config, ex.getMessage());
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             throw new CommunicatorException("error occured", ex);
+        } finally {
+            if (context.isCapturingMessages()) {
+                context.response = response;
+            }
+            // reading the root element is only worth it if the message is logged or the operation recorded
+            boolean logged = logger.IsXmlLogEnabled(config);
+            if (logged || context.isRecording()) {
+                MessageInfo message = MessageInfo.Response(context, response, null);
+                context.setResponse(message);
+                if (logged) {
+                    logXmlMessage(config, context, message, !valid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs a raw message, unless the writer's ServiceLogSampler leaves the operation out; a request that is left out
+     * is held back and logged with the response if the operation fails.
+     * @param failed whether the message is an invalid response, which is always logged
+     */
+    void logXmlMessage(Configuration config, RequestContext context, MessageInfo message, boolean failed) {
+        ServiceLogWriter writer = config.isServiceLogsEnabled() ? ServiceLogWriter.getDefault() : null;
+        ServiceLogSampler sampler = (writer != null) ? writer.getSampler() : null;
+        if (sampler == null || sampler.sample(context, message, writer) || failed) {
+            logHeldRequest(config, context);
+            logger.LogXmlMessage(config, message);
+        } else if (message.getDirection() == MessageInfo.Direction.REQUEST) {
+            context.heldRequest = message;
+        }
+    }
+
+    /**
+     * Logs the request of a failed operation if the sampler held it back
+     */
+    void logHeldRequest(Configuration config, RequestContext context) {
+        MessageInfo request = context.heldRequest;
+        if (request != null) {
+            context.heldRequest = null;
+            logger.LogXmlMessage(config, request);
         }
     }
+
+    /**
+     * Runs a request through the pipeline: the build step and request validation on the build stage, the HTTP exchange
+     * on the transport stage once the FairScheduler grants it a slot, and response verification and parsing on the
+     * verify stage. Each stage runs with the span of the operation as the current trace context. Errors are logged and
+     * turned into an error response by the given function.
+     */
+    @SuppressWarnings("try")
+    <R> CompletableFuture<R> submit(final Configuration config, final RequestContext context, Callable<String> build,
+            final String url, final Function<String, R> parse, final Function<Throwable, R> onError) {
+        try {
+            admit(context);
+        } catch (AdmissionException ex) {
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
+            R result = onError.apply(ex);
+            context.complete();
+            return CompletableFuture.completedFuture(result);
+        }
+        return getPipeline().submit(context,
+                () -> {
+                    try (ITracer.Scope scope = context.makeCurrent()) {
+                        String xml = build.call();
+                        reserve(context, xml);
+                        validateRequest(config, xml, url, context);
+                        return xml;
+                    }
+                },
+                xml -> exchange(config, xml, url, context),
+                response -> {
+                    try (ITracer.Scope scope = context.makeCurrent()) {
+                        verifyResponse(config, response, context);
+                        long start = context.startPhase(RequestPhase.PARSE);
+                        R result = parse.apply(response);
+                        context.endPhase(RequestPhase.PARSE, start);
+                        return result;
+                    }
+                },
+                ex -> {
+                    context.fail(ex);
+                    logger.Log(config, LogLevel.ERROR, ex.getMessage());
+                    return onError.apply(ex);
+                }).whenComplete((result, ex) -> context.complete());
+    }
     
     /**
      * Sends a new mandate request to the URL specified in Configuration.AcquirerUrl_TransactionReq.
@@ -172,28 +444,69 @@ public class CoreCommunicator {
      * when an error occurs
      */
     public NewMandateResponse newMandate(NewMandateRequest newMandateRequest) {
+        return newMandate(newMandateRequest, RequestClass.INTERACTIVE);
+    }
+
+    NewMandateResponse newMandate(NewMandateRequest newMandateRequest, RequestClass requestClass) {
+        Configuration config = getConfiguration();
+        RequestContext context = newContext("newMandate", config, requestClass, null, newMandateRequest.getMessageID());
         try {
-            logger.Log(config, "sending new mandate request");
-            Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getNewMandate(newMandateRequest);
-            String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config,newMandateRequest, eMandate);
-            xml = xmlProcessor.AddSignature(config, xml);
+            admit(context);
+            String xml = buildNewMandateRequest(config, newMandateRequest, context);
 
-            NewMandateResponse nmr = NewMandateResponse.Parse(
-                performRequest(xml, config.getAcquirerUrl_TransactionReq(), config.isTls12Enabled())
-            );
+            String response = performRequest(config, xml, config.getAcquirerUrl_TransactionReq(), context);
+            long start = context.startPhase(RequestPhase.PARSE);
+            NewMandateResponse nmr = NewMandateResponse.Parse(response);
+            context.endPhase(RequestPhase.PARSE, start);
 
             return nmr;
         } catch (ParserConfigurationException | SAXException | IOException | TransformerException | CommunicatorException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return NewMandateResponse.Get(ex);
         } catch (DatatypeConfigurationException | JAXBException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return NewMandateResponse.Get(ex);
         } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException | InvalidAlgorithmParameterException | MarshalException | XMLSignatureException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return NewMandateResponse.Get(ex);
+        } finally {
+            context.complete();
         }
     }
+
+    /**
+     * Sends a new mandate request through the request pipeline, see newMandate(NewMandateRequest).
+     * @param newMandateRequest A NewMandateRequest object.
+     * @return A future that completes with the NewMandateResponse; it never completes exceptionally
+     */
+    public CompletableFuture<NewMandateResponse> newMandateAsync(final NewMandateRequest newMandateRequest) {
+        return newMandateAsync(newMandateRequest, RequestClass.INTERACTIVE);
+    }
+
+    CompletableFuture<NewMandateResponse> newMandateAsync(final NewMandateRequest newMandateRequest, RequestClass requestClass) {
+        final Configuration config = getConfiguration();
+        final RequestContext context = newContext("newMandate", config, requestClass, null, newMandateRequest.getMessageID());
+        return submit(config, context, () -> buildNewMandateRequest(config, newMandateRequest, context), config.getAcquirerUrl_TransactionReq(),
+                NewMandateResponse::Parse, NewMandateResponse::Get);
+    }
+
+    String buildNewMandateRequest(Configuration config, NewMandateRequest newMandateRequest, RequestContext context) throws DatatypeConfigurationException, JAXBException,
+            CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableEntryException,
+            InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException, SAXException, XMLSignatureException,
+            TransformerException {
+        logger.Log(config, LogLevel.INFO, "sending new mandate request");
+        long start = context.startPhase(RequestPhase.BUILD);
+        Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getNewMandate(newMandateRequest);
+        String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config,newMandateRequest, eMandate);
+        context.endPhase(RequestPhase.BUILD, start);
+        start = context.startPhase(RequestPhase.SIGN);
+        String signed = xmlProcessor.AddSignature(config, xml);
+        context.endPhase(RequestPhase.SIGN, start);
+        return signed;
+    }
     
     /**
      * Sends an amendment request to the URL specified in Configuration.AcquirerUrl_TransactionReq.
@@ -202,28 +515,69 @@ public class CoreCommunicator {
      * or error information when an error occurs.
      */
     public AmendmentResponse amend(AmendmentRequest amendmentRequest) {
+        return amend(amendmentRequest, RequestClass.INTERACTIVE);
+    }
+
+    AmendmentResponse amend(AmendmentRequest amendmentRequest, RequestClass requestClass) {
+        Configuration config = getConfiguration();
+        RequestContext context = newContext("amend", config, requestClass, null, amendmentRequest.getMessageID());
         try {
-            logger.Log(config, "sending amend mandate request");
-            Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getAmend(amendmentRequest);
-            String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config, amendmentRequest, eMandate);
-            xml = xmlProcessor.AddSignature(config, xml);
+            admit(context);
+            String xml = buildAmendmentRequest(config, amendmentRequest, context);
 
-            AmendmentResponse ar = AmendmentResponse.Parse(
-                    performRequest( xml, config.getAcquirerUrl_TransactionReq(), config.isTls12Enabled())
-            );
+            String response = performRequest(config, xml, config.getAcquirerUrl_TransactionReq(), context);
+            long start = context.startPhase(RequestPhase.PARSE);
+            AmendmentResponse ar = AmendmentResponse.Parse(response);
+            context.endPhase(RequestPhase.PARSE, start);
 
             return ar;
         } catch (ParserConfigurationException | SAXException | IOException | TransformerException | CommunicatorException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return AmendmentResponse.Get(ex);
         } catch (DatatypeConfigurationException | JAXBException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return AmendmentResponse.Get(ex);
         } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException | InvalidAlgorithmParameterException | MarshalException | XMLSignatureException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return AmendmentResponse.Get(ex);
+        } finally {
+            context.complete();
         }
     }
+
+    /**
+     * Sends an amendment request through the request pipeline, see amend(AmendmentRequest).
+     * @param amendmentRequest An AmendmentRequest object.
+     * @return A future that completes with the AmendmentResponse; it never completes exceptionally
+     */
+    public CompletableFuture<AmendmentResponse> amendAsync(final AmendmentRequest amendmentRequest) {
+        return amendAsync(amendmentRequest, RequestClass.INTERACTIVE);
+    }
+
+    CompletableFuture<AmendmentResponse> amendAsync(final AmendmentRequest amendmentRequest, RequestClass requestClass) {
+        final Configuration config = getConfiguration();
+        final RequestContext context = newContext("amend", config, requestClass, null, amendmentRequest.getMessageID());
+        return submit(config, context, () -> buildAmendmentRequest(config, amendmentRequest, context), config.getAcquirerUrl_TransactionReq(),
+                AmendmentResponse::Parse, AmendmentResponse::Get);
+    }
+
+    String buildAmendmentRequest(Configuration config, AmendmentRequest amendmentRequest, RequestContext context) throws DatatypeConfigurationException, JAXBException,
+            CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableEntryException,
+            InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException, SAXException, XMLSignatureException,
+            TransformerException {
+        logger.Log(config, LogLevel.INFO, "sending amend mandate request");
+        long start = context.startPhase(RequestPhase.BUILD);
+        Element eMandate = new eMandateMessageBuilder(localInstrumentCode).getAmend(amendmentRequest);
+        String xml = new iDxMessageBuilder(localInstrumentCode).getTransactionRequest(config, amendmentRequest, eMandate);
+        context.endPhase(RequestPhase.BUILD, start);
+        start = context.startPhase(RequestPhase.SIGN);
+        String signed = xmlProcessor.AddSignature(config, xml);
+        context.endPhase(RequestPhase.SIGN, start);
+        return signed;
+    }
     
     /**
      * Sends a transaction status request to the URL specified in Configuration.AcquirerUrl_TransactionReq.
@@ -232,28 +586,229 @@ public class CoreCommunicator {
      * error information when an error occurs.
      */
     public StatusResponse getStatus(StatusRequest statusRequest) {
+        return getStatus(statusRequest, RequestClass.RETURN_STATUS);
+    }
+
+    /**
+     * Sends a transaction status request, see getStatus(StatusRequest), in the given class of the FairScheduler, e.g.
+     * RequestClass.POLLING for status requests of a background job.
+     * @param statusRequest A StatusRequest object
+     * @param requestClass The class of the request
+     * @return A StatusResponse object, or error information when an error occurs.
+     */
+    public StatusResponse getStatus(StatusRequest statusRequest, RequestClass requestClass) {
+        Configuration config = getConfiguration();
+        RequestContext context = newContext("status", config, requestClass, statusRequest.getTransactionID(), null);
         try {
-            logger.Log(config, "sending status request");
-            String xml = new iDxMessageBuilder(localInstrumentCode).getStatusRequest(config, statusRequest);
-            xml = xmlProcessor.AddSignature(config, xml);
+            admit(context);
+            String xml = buildStatusRequest(config, statusRequest, context);
 
-            StatusResponse sr = StatusResponse.Parse(
-                    performRequest( xml, config.getAcquirerUrl_StatusReq(), config.isTls12Enabled())
-            );
+            String response = performRequest(config, xml, config.getAcquirerUrl_StatusReq(), context);
+            long start = context.startPhase(RequestPhase.PARSE);
+            StatusResponse sr = parseStatusResponse(response);
+            context.endPhase(RequestPhase.PARSE, start);
 
             return sr;
         } catch (CommunicatorException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return StatusResponse.Get(ex);
         } catch (DatatypeConfigurationException | JAXBException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return StatusResponse.Get(ex);
         } catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException | InvalidAlgorithmParameterException | ParserConfigurationException | MarshalException | SAXException | XMLSignatureException | TransformerException ex) {
-            logger.Log(config, ex.getMessage());
+            context.fail(ex);
+            logger.Log(config, LogLevel.ERROR, ex.getMessage());
             return StatusResponse.Get(ex);
+        } finally {
+            context.complete();
         }
     }
+
+    /**
+     * Sends a transaction status request through the request pipeline, see getStatus(StatusRequest).
+     * @param statusRequest A StatusRequest object
+     * @return A future that completes with the StatusResponse; it never completes exceptionally
+     */
+    public CompletableFuture<StatusResponse> getStatusAsync(final StatusRequest statusRequest) {
+        return getStatusAsync(statusRequest, RequestClass.RETURN_STATUS);
+    }
+
+    /**
+     * Sends a transaction status request through the request pipeline, in the given class of the FairScheduler.
+     * @param statusRequest A StatusRequest object
+     * @param requestClass The class of the request
+     * @return A future that completes with the StatusResponse; it never completes exceptionally
+     */
+    public CompletableFuture<StatusResponse> getStatusAsync(final StatusRequest statusRequest, RequestClass requestClass) {
+        final Configuration config = getConfiguration();
+        final RequestContext context = newContext("status", config, requestClass, statusRequest.getTransactionID(), null);
+        return submit(config, context, () -> buildStatusRequest(config, statusRequest, context), config.getAcquirerUrl_StatusReq(),
+                this::parseStatusResponse, StatusResponse::Get);
+    }
+
+    String buildStatusRequest(Configuration config, StatusRequest statusRequest, RequestContext context) throws DatatypeConfigurationException, JAXBException,
+            CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException, UnrecoverableEntryException,
+            InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException, SAXException, XMLSignatureException,
+            TransformerException {
+        logger.Log(config, LogLevel.INFO, "sending status request");
+        long start = context.startPhase(RequestPhase.BUILD);
+        String xml = new iDxMessageBuilder(localInstrumentCode).getStatusRequest(config, statusRequest);
+        context.endPhase(RequestPhase.BUILD, start);
+        start = context.startPhase(RequestPhase.SIGN);
+        String signed = xmlProcessor.AddSignature(config, xml);
+        context.endPhase(RequestPhase.SIGN, start);
+        return signed;
+    }
+
+    private StatusResponse parseStatusResponse(String xml) {
+        StatusResponse sr = StatusResponse.Parse(xml);
+
+        StatusMonitor monitor = statusMonitor;
+        if (monitor != null) {
+            monitor.onStatusResponse(sr);
+        }
+
+        return sr;
+    }
     
+    /**
+     * Sends a new mandate request for every element of the collection, with one request in flight per
+     * available processor, through the request pipeline (see getPipeline()). Further requests are sent as results are
+     * consumed, so a stream that is abandoned stops sending.
+     * @param newMandateRequests The NewMandateRequest objects to send
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<NewMandateRequest, NewMandateResponse>> submitAll(Collection<NewMandateRequest> newMandateRequests) {
+        return submitAll(newMandateRequests, BulkExecutor.defaultConcurrency());
+    }
+
+    /**
+     * Sends a new mandate request for every element of the collection, through the request pipeline.
+     * Further requests are sent as results are consumed, so a stream that is abandoned stops sending.
+     * @param newMandateRequests The NewMandateRequest objects to send
+     * @param concurrency The maximum number of requests in flight
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<NewMandateRequest, NewMandateResponse>> submitAll(Collection<NewMandateRequest> newMandateRequests, int concurrency) {
+        return BulkExecutor.async(newMandateRequests.iterator(), r -> newMandateAsync(r, RequestClass.BULK), NewMandateRequest::getMessageID,
+                concurrency, getPipeline().getTracer()).stream();
+    }
+
+    /**
+     * Sends an amendment request for every element of the collection, with one request in flight per
+     * available processor, through the request pipeline (see getPipeline()). Further requests are sent as results are
+     * consumed, so a stream that is abandoned stops sending.
+     * @param amendmentRequests The AmendmentRequest objects to send
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<AmendmentRequest, AmendmentResponse>> amendAll(Collection<AmendmentRequest> amendmentRequests) {
+        return amendAll(amendmentRequests, BulkExecutor.defaultConcurrency());
+    }
+
+    /**
+     * Sends an amendment request for every element of the collection, through the request pipeline.
+     * Further requests are sent as results are consumed, so a stream that is abandoned stops sending.
+     * @param amendmentRequests The AmendmentRequest objects to send
+     * @param concurrency The maximum number of requests in flight
+     * @return The results in completion order, each correlated to its request by messageID
+     */
+    public Stream<BulkResult<AmendmentRequest, AmendmentResponse>> amendAll(Collection<AmendmentRequest> amendmentRequests, int concurrency) {
+        return BulkExecutor.async(amendmentRequests.iterator(), r -> amendAsync(r, RequestClass.BULK), AmendmentRequest::getMessageID,
+                concurrency, getPipeline().getTracer()).stream();
+    }
+
+    /**
+     * Sends a status request for every element of the collection, with one request in flight per
+     * available processor, through the request pipeline (see getPipeline()). Further requests are sent as results are
+     * consumed, so a stream that is abandoned stops sending.
+     * @param statusRequests The StatusRequest objects to send
+     * @return The results in completion order, each correlated to its request by transactionID
+     */
+    public Stream<BulkResult<StatusRequest, StatusResponse>> getStatusAll(Collection<StatusRequest> statusRequests) {
+        return getStatusAll(statusRequests, BulkExecutor.defaultConcurrency());
+    }
+
+    /**
+     * Sends a status request for every element of the collection, through the request pipeline. Further
+     * requests are sent as results are consumed, so a stream that is abandoned stops sending.
+     * @param statusRequests The StatusRequest objects to send
+     * @param concurrency The maximum number of requests in flight
+     * @return The results in completion order, each correlated to its request by transactionID
+     */
+    public Stream<BulkResult<StatusRequest, StatusResponse>> getStatusAll(Collection<StatusRequest> statusRequests, int concurrency) {
+        return BulkExecutor.async(statusRequests.iterator(), r -> getStatusAsync(r, RequestClass.BULK), StatusRequest::getTransactionID,
+                concurrency, getPipeline().getTracer()).stream();
+    }
+
+    /**
+     * Gets the StatusMonitor of this communicator, creating it on first use. Every status response received by
+     * getStatus is passed to the monitor, which emits transitions for the transactions it tracks.
+     * @return The StatusMonitor instance for this communicator
+     */
+    public StatusMonitor getStatusMonitor() {
+        StatusMonitor monitor = statusMonitor;
+        if (monitor == null) {
+            synchronized (this) {
+                monitor = statusMonitor;
+                if (monitor == null) {
+                    monitor = new StatusMonitor(this);
+                    statusMonitor = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+
+    /**
+     * @return The Configuration used by new requests
+     */
+    public Configuration getConfiguration() {
+        return configuration.get();
+    }
+
+    /**
+     * Replaces the Configuration used by new requests; requests in flight complete with the Configuration they started
+     * with. Pass an immutable snapshot (see Configuration.Builder) so that the values cannot change while in use.
+     * @param config the new Configuration
+     */
+    public void setConfiguration(Configuration config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config must not be null");
+        }
+        configuration.set(config);
+        this.config = config;
+    }
+
+    /**
+     * Gets the RequestPipeline used by the asynchronous and bulk methods, creating a pipeline with default settings on
+     * first use.
+     * @return The RequestPipeline of this communicator
+     */
+    public RequestPipeline getPipeline() {
+        RequestPipeline p = pipeline;
+        if (p == null) {
+            synchronized (this) {
+                p = pipeline;
+                if (p == null) {
+                    p = new RequestPipeline();
+                    pipeline = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Sets the RequestPipeline used by the asynchronous and bulk methods, e.g. to share one pipeline between
+     * communicators. The previous pipeline is not closed.
+     * @param pipeline The RequestPipeline to use
+     */
+    public void setPipeline(RequestPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public static String getVersion() {
         return "1.2.4";
     }
@@ -21,7 +21,7 @@ public class ErrorResponse {
     }
     
     private ErrorResponse(Throwable e) {
-        errorCode = "";
+        errorCode = (e instanceof AdmissionException) ? ((AdmissionException) e).getErrorCode() : "";
         errorMessage = e.getMessage();
         errorDetails = e.getCause() != null? e.getCause().getMessage() : "";
         suggestedAction = "";
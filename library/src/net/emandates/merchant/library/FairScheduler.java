@@ -0,0 +1,411 @@
+package net.emandates.merchant.library;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which request may use the transport next when more requests want to send than the transport allows. Every
+ * HTTP exchange, synchronous or through the request pipeline, takes a slot before it connects and returns it when the
+ * response has been read. While a slot is free requests do not wait; once all slots are taken, waiting requests are
+ * granted slots by weighted fair queuing over flows, a flow being the requests of one tenant (contract ID and sub ID)
+ * in one RequestClass. A flow's share of the transport is proportional to the weight of its class times the weight of
+ * its tenant, so a large bulk run of one tenant cannot starve the interactive requests of the same or another tenant.
+ *
+ * The scheduler uses self-clocked fair queuing: a waiting request is stamped with a virtual finish time of
+ * max(virtual time, finish time of the flow's previous request) + 1 / weight, and the request with the smallest stamp
+ * is granted the next free slot, which advances the virtual time to its stamp. Requests of the request pipeline wait
+ * for their slot here rather than in the queue of its transport stage, which only receives requests that have a slot.
+ *
+ * The time requests wait for a slot is recorded per tenant and class.
+ */
+public class FairScheduler implements FairSchedulerMXBean {
+    /**
+     * Wait times for a transport slot of the requests of one tenant and class
+     */
+    public static class WaitStatistics {
+        private long count;
+        private long waited;
+        private long totalNanos;
+        private long maxNanos;
+
+        /**
+         * @return Number of requests that got a transport slot
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Number of requests that had to wait for a transport slot
+         */
+        public synchronized long getWaited() {
+            return waited;
+        }
+
+        /**
+         * @return Total time in nanoseconds the requests waited
+         */
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return Longest time in nanoseconds a request waited
+         */
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return Mean time in milliseconds the requests waited, counting the requests that did not wait
+         */
+        public synchronized double getMeanMillis() {
+            return (count == 0) ? 0 : totalNanos / (double) count / 1e6;
+        }
+
+        synchronized void record(long nanos) {
+            count++;
+            if (nanos > 0) {
+                waited++;
+                totalNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+            }
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+    private final Map<String, Double> flowFinish = new HashMap<>();
+    private final Map<RequestClass, Double> classWeights = new EnumMap<>(RequestClass.class);
+    private final ConcurrentMap<String, Double> tenantWeights = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<RequestClass, WaitStatistics>> statistics = new ConcurrentHashMap<>();
+    private int maxConcurrent = Integer.MAX_VALUE;
+    private int inFlight;
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * Creates a scheduler without a limit on concurrent exchanges, with the class weights INTERACTIVE 8,
+     * RETURN_STATUS 4, POLLING 2 and BULK 1
+     */
+    public FairScheduler() {
+        classWeights.put(RequestClass.INTERACTIVE, 8.0);
+        classWeights.put(RequestClass.RETURN_STATUS, 4.0);
+        classWeights.put(RequestClass.POLLING, 2.0);
+        classWeights.put(RequestClass.BULK, 1.0);
+    }
+
+    /**
+     * Sets the number of HTTP exchanges that may be in progress at the same time; requests beyond it wait for a slot.
+     * Raising the limit grants slots to waiting requests immediately.
+     * @param maxConcurrent the number of slots; defaults to unlimited, and to the number of transport threads for the
+     * scheduler of a RequestPipeline
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        }
+        List<Ticket> started;
+        lock.lock();
+        try {
+            this.maxConcurrent = maxConcurrent;
+            started = grant();
+        } finally {
+            lock.unlock();
+        }
+        start(started);
+    }
+
+    /**
+     * @return The number of HTTP exchanges that may be in progress at the same time
+     */
+    public int getMaxConcurrent() {
+        lock.lock();
+        try {
+            return maxConcurrent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param requestClass a request class
+     * @param weight the relative share of the transport of the class; applies to requests that start waiting later
+     */
+    public void setClassWeight(RequestClass requestClass, double weight) {
+        checkWeight(weight);
+        lock.lock();
+        try {
+            classWeights.put(requestClass, weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param requestClass a request class
+     * @return The relative share of the transport of the class
+     */
+    public double getClassWeight(RequestClass requestClass) {
+        lock.lock();
+        try {
+            return classWeights.get(requestClass);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param tenant a tenant, as contractID/subID
+     * @param weight the relative share of the transport of the tenant; tenants without a weight have weight 1
+     */
+    public void setTenantWeight(String tenant, double weight) {
+        checkWeight(weight);
+        tenantWeights.put(tenant, weight);
+    }
+
+    /**
+     * @param tenant a tenant, as contractID/subID
+     * @return The relative share of the transport of the tenant
+     */
+    public double getTenantWeight(String tenant) {
+        return tenantWeights.getOrDefault(tenant, 1.0);
+    }
+
+    /**
+     * @return Number of HTTP exchanges in progress
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of requests waiting for a transport slot
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The tenants (contractID/subID) that have sent requests
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(statistics.keySet());
+    }
+
+    /**
+     * @param tenant a tenant, as contractID/subID
+     * @param requestClass a request class
+     * @return The wait times of the tenant's requests of the class
+     */
+    public WaitStatistics getWaitStatistics(String tenant, RequestClass requestClass) {
+        return statistics(tenant, requestClass);
+    }
+
+    /**
+     * @param requestClass a request class
+     * @return The wait times of the requests of the class over all tenants
+     */
+    public WaitStatistics getWaitStatistics(RequestClass requestClass) {
+        WaitStatistics result = new WaitStatistics();
+        for (Map<RequestClass, WaitStatistics> perClass : statistics.values()) {
+            WaitStatistics s = perClass.get(requestClass);
+            synchronized (s) {
+                result.count += s.count;
+                result.waited += s.waited;
+                result.totalNanos += s.totalNanos;
+                result.maxNanos = Math.max(result.maxNanos, s.maxNanos);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a transport slot. Every successful call must be followed by a call to release().
+     * @param tenant the tenant of the request, as contractID/subID
+     * @param requestClass the class of the request
+     * @throws InterruptedException if the thread was interrupted while waiting; no slot was taken
+     */
+    void acquire(String tenant, RequestClass requestClass) throws InterruptedException {
+        WaitStatistics stats = statistics(tenant, requestClass);
+        Ticket ticket;
+        lock.lock();
+        try {
+            if (inFlight < maxConcurrent && waiting.isEmpty()) {
+                inFlight++;
+                stats.record(0);
+                return;
+            }
+
+            ticket = enqueue(tenant, requestClass, stats, null);
+            try {
+                while (!ticket.granted) {
+                    ticket.condition.await();
+                }
+            } catch (InterruptedException ex) {
+                if (!ticket.granted) {
+                    waiting.remove(ticket);
+                    throw ex;
+                }
+                Thread.currentThread().interrupt();
+            }
+            stats.record(Math.max(1, System.nanoTime() - ticket.start));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a task once it has been granted a transport slot, without waiting for it; the task runs on the thread that
+     * returns the slot it gets, or on this thread if a slot is free, and must lead to a call to release()
+     * @param tenant the tenant of the request, as contractID/subID
+     * @param requestClass the class of the request
+     * @param task the task, which must not throw
+     */
+    void acquire(String tenant, RequestClass requestClass, Runnable task) {
+        WaitStatistics stats = statistics(tenant, requestClass);
+        lock.lock();
+        try {
+            if (!(inFlight < maxConcurrent && waiting.isEmpty())) {
+                enqueue(tenant, requestClass, stats, task);
+                return;
+            }
+            inFlight++;
+            stats.record(0);
+        } finally {
+            lock.unlock();
+        }
+        task.run();
+    }
+
+    /**
+     * Returns a transport slot taken by acquire()
+     */
+    void release() {
+        List<Ticket> started;
+        lock.lock();
+        try {
+            inFlight--;
+            started = grant();
+        } finally {
+            lock.unlock();
+        }
+        start(started);
+    }
+
+    private Ticket enqueue(String tenant, RequestClass requestClass, WaitStatistics stats, Runnable task) {
+        String flow = tenant + "|" + requestClass;
+        double weight = classWeights.get(requestClass) * getTenantWeight(tenant);
+        double finish = Math.max(virtualTime, flowFinish.getOrDefault(flow, 0.0)) + 1 / weight;
+        flowFinish.put(flow, finish);
+        Ticket ticket = new Ticket(finish, sequence++, (task == null) ? lock.newCondition() : null, task, stats);
+        waiting.add(ticket);
+        return ticket;
+    }
+
+    // runs the tasks granted a slot; called without holding the lock, as a task may hand work to another thread
+    private static void start(List<Ticket> started) {
+        if (started != null) {
+            for (Ticket ticket : started) {
+                ticket.stats.record(Math.max(1, System.nanoTime() - ticket.start));
+                ticket.task.run();
+            }
+        }
+    }
+
+    /**
+     * Grants free slots to waiting requests, signalling waiting threads; returns the granted tasks, to be started
+     * once the lock is released
+     */
+    private List<Ticket> grant() {
+        List<Ticket> started = null;
+        while (inFlight < maxConcurrent && !waiting.isEmpty()) {
+            Ticket next = waiting.poll();
+            virtualTime = next.finish;
+            inFlight++;
+            next.granted = true;
+            if (next.task != null) {
+                if (started == null) {
+                    started = new ArrayList<>();
+                }
+                started.add(next);
+            } else {
+                next.condition.signal();
+            }
+        }
+        if (waiting.isEmpty() && flowFinish.size() > 1024) {
+            // flows that finished before the virtual time have no influence on later stamps
+            for (Iterator<Double> it = flowFinish.values().iterator(); it.hasNext();) {
+                if (it.next() <= virtualTime) {
+                    it.remove();
+                }
+            }
+        }
+        return started;
+    }
+
+    private WaitStatistics statistics(String tenant, RequestClass requestClass) {
+        Map<RequestClass, WaitStatistics> perClass = statistics.get(tenant);
+        if (perClass == null) {
+            perClass = statistics.computeIfAbsent(tenant, t -> {
+                Map<RequestClass, WaitStatistics> map = new EnumMap<>(RequestClass.class);
+                for (RequestClass c : RequestClass.values()) {
+                    map.put(c, new WaitStatistics());
+                }
+                return map;
+            });
+        }
+        return perClass.get(requestClass);
+    }
+
+    private static void checkWeight(double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+    }
+
+    private static class Ticket implements Comparable<Ticket> {
+        private final double finish;
+        private final long sequence;
+        private final Condition condition;
+        private final Runnable task;
+        private final WaitStatistics stats;
+        private final long start = System.nanoTime();
+        private boolean granted;
+
+        Ticket(double finish, long sequence, Condition condition, Runnable task, WaitStatistics stats) {
+            this.finish = finish;
+            this.sequence = sequence;
+            this.condition = condition;
+            this.task = task;
+            this.stats = stats;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int result = Double.compare(finish, other.finish);
+            return (result != 0) ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
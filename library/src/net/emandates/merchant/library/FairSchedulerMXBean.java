@@ -0,0 +1,18 @@
+package net.emandates.merchant.library;
+
+import java.util.Set;
+
+/**
+ * The management interface of a FairScheduler, see JmxRegistration; MaxConcurrent is writable
+ */
+public interface FairSchedulerMXBean {
+    int getMaxConcurrent();
+
+    void setMaxConcurrent(int maxConcurrent);
+
+    int getInFlight();
+
+    int getQueueLength();
+
+    Set<String> getTenants();
+}
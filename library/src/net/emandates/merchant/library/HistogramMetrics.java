@@ -0,0 +1,126 @@
+package net.emandates.merchant.library;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a LatencyHistogram per operation for the operation as a whole and for each of its phases, and counts the
+ * failed operations per errorCode.
+ */
+public class HistogramMetrics implements IMetrics {
+    private static final RequestPhase[] Phases = RequestPhase.values();
+
+    // per operation: a histogram per phase, followed by the histogram of the whole operation
+    private final Map<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> errors = new ConcurrentHashMap<>();
+
+    @Override
+    public void RecordPhase(String operation, RequestPhase phase, long nanos) {
+        histograms(operation)[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void RecordOperation(String operation, long nanos) {
+        histograms(operation)[Phases.length].record(nanos);
+    }
+
+    @Override
+    public void RecordError(String operation, String errorCode) {
+        errors.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(errorCode, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return The names of the operations that have been recorded
+     */
+    public Set<String> getOperations() {
+        return new TreeSet<>(histograms.keySet());
+    }
+
+    /**
+     * @param operation the name of an operation, e.g. newMandate
+     * @return The latencies of the operation as a whole
+     */
+    public LatencyHistogram getHistogram(String operation) {
+        return histograms(operation)[Phases.length];
+    }
+
+    /**
+     * @param operation the name of an operation, e.g. newMandate
+     * @param phase a phase
+     * @return The time the operation spent in the phase
+     */
+    public LatencyHistogram getHistogram(String operation, RequestPhase phase) {
+        return histograms(operation)[phase.ordinal()];
+    }
+
+    /**
+     * @param operation the name of an operation, e.g. newMandate
+     * @return The number of failures of the operation per errorCode; failures by an exception without an errorCode
+     * are counted under the empty string
+     */
+    public Map<String, Long> getErrors(String operation) {
+        Map<String, Long> result = new TreeMap<>();
+        Map<String, LongAdder> counts = errors.get(operation);
+        if (counts != null) {
+            counts.forEach((errorCode, count) -> result.put(errorCode, count.sum()));
+        }
+        return result;
+    }
+
+    /**
+     * Clears all histograms and error counts
+     */
+    public void reset() {
+        errors.clear();
+        for (LatencyHistogram[] operation : histograms.values()) {
+            for (LatencyHistogram histogram : operation) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * @return A table with the count, mean, median, 99th percentile and maximum in milliseconds of every operation and
+     * phase
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-12s %-22s %8s %9s %9s %9s %9s%n", "operation", "phase",
+                "count", "mean", "p50", "p99", "max"));
+        for (String operation : getOperations()) {
+            append(sb, operation, "total", getHistogram(operation));
+            for (RequestPhase phase : Phases) {
+                LatencyHistogram histogram = getHistogram(operation, phase);
+                if (histogram.getCount() > 0) {
+                    append(sb, operation, phase.name(), histogram);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String operation, String phase, LatencyHistogram histogram) {
+        sb.append(String.format("%-12s %-22s %8d %9.3f %9.3f %9.3f %9.3f%n", operation, phase, histogram.getCount(),
+                histogram.getMean() / 1e6, histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    private LatencyHistogram[] histograms(String operation) {
+        LatencyHistogram[] result = histograms.get(operation);
+        if (result == null) {
+            result = histograms.computeIfAbsent(operation, key -> {
+                LatencyHistogram[] created = new LatencyHistogram[Phases.length + 1];
+                for (int i = 0; i < created.length; i++) {
+                    created[i] = new LatencyHistogram();
+                }
+                return created;
+            });
+        }
+        return result;
+    }
+}
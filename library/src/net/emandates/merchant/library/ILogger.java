@@ -1,7 +1,105 @@
 package net.emandates.merchant.library;
 
+import java.util.function.Supplier;
 
+/**
+ * Logs the messages and the raw XML messages (service logs) of the communicators. Only Log(Configuration, String,
+ * Object...) and LogXmlMessage have to be implemented; the level-aware methods log through Log at any level by
+ * default. Implementations should override IsEnabled and the level-aware methods so that a message that is not logged
+ * costs neither formatting nor allocation.
+ */
 public interface ILogger {
     void Log( Configuration config, String message, Object... args);
     void LogXmlMessage(Configuration config, String content);
+
+    /**
+     * Logs a raw XML message with what the communicator knows about it, so that it does not have to be parsed to be
+     * named or indexed
+     * @param config the configuration of the communicator
+     * @param message the message and its values
+     */
+    default void LogXmlMessage(Configuration config, MessageInfo message) {
+        LogXmlMessage(config, message.getContent());
+    }
+
+    /**
+     * @param config the configuration of the communicator
+     * @return false if LogXmlMessage logs nothing, so that the communicators need not describe the raw XML messages
+     */
+    default boolean IsXmlLogEnabled(Configuration config) {
+        return true;
+    }
+
+    /**
+     * @param config the configuration of the communicator
+     * @param level the level of a message
+     * @return true if a message at this level would be logged
+     */
+    default boolean IsEnabled(Configuration config, LogLevel level) {
+        return config.isLogsEnabled();
+    }
+
+    /**
+     * @param config the configuration of the communicator
+     * @param level the level of the message
+     * @param message the message, which is not formatted
+     */
+    default void Log(Configuration config, LogLevel level, String message) {
+        if (IsEnabled(config, level)) {
+            Log(config, "%s", message);
+        }
+    }
+
+    /**
+     * Logs a message with the exception that caused it; the exception is passed to Log as an argument that the
+     * message does not format, so that an implementation can log its stack trace
+     * @param config the configuration of the communicator
+     * @param level the level of the message
+     * @param message the message, which is not formatted
+     * @param thrown the exception
+     */
+    default void Log(Configuration config, LogLevel level, String message, Throwable thrown) {
+        if (IsEnabled(config, level)) {
+            Log(config, "%s", message, thrown);
+        }
+    }
+
+    /**
+     * Formats the message with String.format only if it is logged
+     * @param config the configuration of the communicator
+     * @param level the level of the message
+     * @param format the format of the message
+     * @param arg the argument of the format
+     */
+    default void Log(Configuration config, LogLevel level, String format, Object arg) {
+        if (IsEnabled(config, level)) {
+            Log(config, "%s", String.format(format, arg));
+        }
+    }
+
+    /**
+     * Formats the message with String.format only if it is logged
+     * @param config the configuration of the communicator
+     * @param level the level of the message
+     * @param format the format of the message
+     * @param arg1 the first argument of the format
+     * @param arg2 the second argument of the format
+     */
+    default void Log(Configuration config, LogLevel level, String format, Object arg1, Object arg2) {
+        if (IsEnabled(config, level)) {
+            Log(config, "%s", String.format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * Builds the message only if it is logged
+     * @param config the configuration of the communicator
+     * @param level the level of the message
+     * @param message supplies the message
+     */
+    default void Log(Configuration config, LogLevel level, Supplier<String> message) {
+        if (IsEnabled(config, level)) {
+            Log(config, "%s", message.get());
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package net.emandates.merchant.library;
+
+/**
+ * Receives the latencies of the communicator operations (directory, newMandate, amend, status and cancel), see
+ * RequestPipeline.setMetrics. The phases of an operation are reported when it completes, each with the total time
+ * spent in it; a phase the operation did not reach is not reported. Implementations are called from many threads at
+ * once and should not block.
+ */
+public interface IMetrics {
+    /**
+     * Metrics that are not recorded; the operations do not read the clock for them
+     */
+    IMetrics None = new IMetrics() {
+        @Override
+        public boolean IsEnabled() {
+            return false;
+        }
+
+        @Override
+        public void RecordPhase(String operation, RequestPhase phase, long nanos) {
+        }
+
+        @Override
+        public void RecordOperation(String operation, long nanos) {
+        }
+    };
+
+    /**
+     * @return false if the operations need not be timed at all
+     */
+    default boolean IsEnabled() {
+        return true;
+    }
+
+    /**
+     * @param operation the name of the operation, e.g. newMandate
+     * @param phase the phase
+     * @param nanos time spent in the phase, in nanoseconds
+     */
+    void RecordPhase(String operation, RequestPhase phase, long nanos);
+
+    /**
+     * @param operation the name of the operation, e.g. newMandate
+     * @param nanos time from calling the operation until it completed, in nanoseconds
+     */
+    void RecordOperation(String operation, long nanos);
+
+    /**
+     * Reports an operation that failed, before its latency is reported
+     * @param operation the name of the operation, e.g. newMandate
+     * @param errorCode the errorCode of the ErrorResponse: that of the acquirer's error response or of an
+     * AdmissionException, or an empty string for other exceptions
+     */
+    default void RecordError(String operation, String errorCode) {
+    }
+}
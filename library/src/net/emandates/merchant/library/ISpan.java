@@ -0,0 +1,39 @@
+package net.emandates.merchant.library;
+
+/**
+ * A span created by an ITracer. A span is started, given its attributes and ended by the threads an operation runs on
+ * one after the other, never by two threads at once.
+ */
+public interface ISpan {
+    /**
+     * @param key the name of the attribute, e.g. url.full
+     * @param value the value
+     */
+    void SetAttribute(String key, String value);
+
+    /**
+     * @param key the name of the attribute, e.g. http.response.status_code
+     * @param value the value
+     */
+    default void SetAttribute(String key, long value) {
+        SetAttribute(key, Long.toString(value));
+    }
+
+    /**
+     * Marks the span as failed
+     * @param errorCode the errorCode of the error response, or a description of the error
+     * @param cause the exception the operation failed with, or null if the acquirer returned an error response
+     */
+    void SetError(String errorCode, Throwable cause);
+
+    /**
+     * Makes the span the current context of the calling thread, so that spans created by other instrumentation, e.g. of
+     * the HTTP client, are its children
+     * @return The scope, to be closed on the same thread
+     */
+    default ITracer.Scope MakeCurrent() {
+        return ITracer.Scope.None;
+    }
+
+    void End();
+}
@@ -0,0 +1,6 @@
+package net.emandates.merchant.library;
+
+
+public interface IStatusListener {
+    void StatusChanged(StatusChangeEvent event);
+}
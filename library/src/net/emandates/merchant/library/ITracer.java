@@ -0,0 +1,72 @@
+package net.emandates.merchant.library;
+
+/**
+ * Creates the trace spans of the communicator operations, see RequestPipeline.setTracer. Every operation (directory,
+ * newMandate, amend, status and cancel) gets a span, started on the thread that calls it, with a child span for each
+ * RequestPhase it passes through. The library does not depend on a tracing library; an adapter implements this
+ * interface and ISpan on top of e.g. OpenTelemetry, mapping Capture and Restore onto its context propagation.
+ *
+ * The operation span has the attributes emandates.operation, emandates.tenant, emandates.request_class,
+ * emandates.message_type (of the request), emandates.response_type, emandates.transaction_id, emandates.message_id,
+ * url.full and, when the operation fails, emandates.error_code and error.type. The EXCHANGE span has url.full,
+ * http.response.status_code, http.request.body.size and http.response.body.size. Implementations are called from
+ * many threads at once.
+ */
+public interface ITracer {
+    /**
+     * A context made current on a thread by Restore or ISpan.MakeCurrent; closing it restores the previous context
+     */
+    interface Scope extends AutoCloseable {
+        Scope None = () -> {
+        };
+
+        @Override
+        void close();
+    }
+
+    /**
+     * A tracer that creates no spans
+     */
+    ITracer None = new ITracer() {
+        @Override
+        public boolean IsEnabled() {
+            return false;
+        }
+
+        @Override
+        public ISpan StartSpan(String name, ISpan parent) {
+            return null;
+        }
+    };
+
+    /**
+     * @return false if no spans are created, so that the operations need not collect their attributes
+     */
+    default boolean IsEnabled() {
+        return true;
+    }
+
+    /**
+     * @param name the name of the span, e.g. eMandates newMandate or EXCHANGE
+     * @param parent the parent span, or null for a child of the context that is current on the calling thread
+     * @return The started span
+     */
+    ISpan StartSpan(String name, ISpan parent);
+
+    /**
+     * Captures the context that is current on the calling thread, to be restored on the thread that continues its work
+     * @return The context, or null if there is none
+     */
+    default Object Capture() {
+        return null;
+    }
+
+    /**
+     * Makes a captured context current on the calling thread
+     * @param context a context returned by Capture
+     * @return The scope, to be closed on the same thread when the work is done
+     */
+    default Scope Restore(Object context) {
+        return Scope.None;
+    }
+}
@@ -0,0 +1,139 @@
+package net.emandates.merchant.library;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the components of the library as MXBeans with the platform MBean server, so that they can be inspected
+ * and tuned at runtime with e.g. JConsole. The object names are net.emandates.merchant.library:type=&lt;class&gt;,name=&lt;name&gt;.
+ * The writable attributes (the limits of the FairScheduler and the AdmissionQueue, the deadlines of the AdmissionQueue,
+ * the rates and thresholds of the ServiceLogWriter and ServiceLogSampler, and the poll concurrency of the StatusMonitor)
+ * take effect for the next request. The FairScheduler and the AdmissionQueue apply them under their lock, and
+ * AdmissionQueue.setLimits changes both limits at once; the others are single volatile writes, so e.g. a request may
+ * see the new queue threshold of a ServiceLogSampler together with its old latency threshold.
+ */
+public final class JmxRegistration implements AutoCloseable {
+    public static final String Domain = "net.emandates.merchant.library";
+
+    private final MBeanServer server;
+    private final String name;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * @param name the name key of the object names, e.g. the name of the application
+     */
+    public JmxRegistration(String name) {
+        this(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    /**
+     * @param server the server to register with
+     * @param name the name key of the object names
+     */
+    public JmxRegistration(MBeanServer server, String name) {
+        this.server = server;
+        this.name = name;
+    }
+
+    /**
+     * Registers a pipeline with its FairScheduler and, if it has one, its AdmissionQueue
+     * @param pipeline the pipeline
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(RequestPipeline pipeline) throws JMException {
+        register("RequestPipeline", pipeline);
+        register("FairScheduler", pipeline.getScheduler());
+        AdmissionQueue admission = pipeline.getAdmissionQueue();
+        if (admission != null) {
+            register(admission);
+        }
+        return this;
+    }
+
+    /**
+     * Registers an AdmissionQueue, e.g. one set on a pipeline after the pipeline was registered
+     * @param admission the queue
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(AdmissionQueue admission) throws JMException {
+        register("AdmissionQueue", admission);
+        return this;
+    }
+
+    /**
+     * Registers a writer with its ServiceLogSampler, if it has one
+     * @param writer the writer, e.g. ServiceLogWriter.getDefault()
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(ServiceLogWriter writer) throws JMException {
+        register("ServiceLogWriter", writer);
+        ServiceLogSampler sampler = writer.getSampler();
+        if (sampler != null) {
+            register(sampler);
+        }
+        return this;
+    }
+
+    /**
+     * Registers a ServiceLogSampler, e.g. one set on a writer after the writer was registered
+     * @param sampler the sampler
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(ServiceLogSampler sampler) throws JMException {
+        register("ServiceLogSampler", sampler);
+        return this;
+    }
+
+    /**
+     * Registers a SlowRequestRecorder, whose dump operation returns the captured operations
+     * @param recorder the recorder
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(SlowRequestRecorder recorder) throws JMException {
+        register("SlowRequestRecorder", recorder);
+        return this;
+    }
+
+    /**
+     * Registers a StatusMonitor, whose DueCount is its polling backlog
+     * @param monitor the monitor
+     * @return this
+     * @throws JMException if a bean with the same name is registered already
+     */
+    public JmxRegistration register(StatusMonitor monitor) throws JMException {
+        register("StatusMonitor", monitor);
+        return this;
+    }
+
+    /**
+     * Unregisters every bean registered by this instance
+     */
+    @Override
+    public synchronized void close() {
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (InstanceNotFoundException | MBeanRegistrationException ex) {
+                // unregistered by someone else
+            }
+        }
+        registered.clear();
+    }
+
+    private synchronized void register(String type, Object bean) throws JMException {
+        ObjectName objectName = new ObjectName(Domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+        server.registerMBean(bean, objectName);
+        registered.add(objectName);
+    }
+}
@@ -0,0 +1,121 @@
+package net.emandates.merchant.library;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The contents of the key store, parsed once: the signing key and certificate, and the certificates of the key store
+ * by alias. Instances are immutable and can be used by any number of threads.
+ */
+final class KeyMaterial {
+    private final String signingCertificateAlias;
+    private final PrivateKey signingKey;
+    private final X509Certificate signingCertificate;
+    private final GeneralSecurityException signingKeyError;
+    private final Map<String, X509Certificate> certificates;
+
+    private KeyMaterial(String signingCertificateAlias, PrivateKey signingKey, X509Certificate signingCertificate,
+            GeneralSecurityException signingKeyError, Map<String, X509Certificate> certificates) {
+        this.signingCertificateAlias = signingCertificateAlias;
+        this.signingKey = signingKey;
+        this.signingCertificate = signingCertificate;
+        this.signingKeyError = signingKeyError;
+        this.certificates = certificates;
+    }
+
+    /**
+     * Loads the key store. A signing key that cannot be recovered does not fail the load, so that responses can still
+     * be verified; the error is reported by getSigningKey().
+     */
+    static KeyMaterial Load(byte[] keyStore, String keyStorePassword, String signingCertificateAlias,
+            String signingCertificatePassword) throws IOException, KeyStoreException, NoSuchAlgorithmException, CertificateException {
+        KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+        ks.load(new ByteArrayInputStream(keyStore), (keyStorePassword != null) ? keyStorePassword.toCharArray() : null);
+
+        Map<String, X509Certificate> certificates = new HashMap<>();
+        Enumeration<String> aliases = ks.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            Certificate cert = ks.getCertificate(alias);
+            if (cert instanceof X509Certificate) {
+                certificates.put(alias, (X509Certificate) cert);
+            }
+        }
+
+        PrivateKey signingKey = null;
+        X509Certificate signingCertificate = null;
+        GeneralSecurityException signingKeyError = null;
+        if (signingCertificateAlias != null) {
+            try {
+                KeyStore.Entry entry = ks.getEntry(signingCertificateAlias, new KeyStore.PasswordProtection(
+                        (signingCertificatePassword != null) ? signingCertificatePassword.toCharArray() : new char[0]));
+                if (entry instanceof KeyStore.PrivateKeyEntry) {
+                    signingKey = ((KeyStore.PrivateKeyEntry) entry).getPrivateKey();
+                    signingCertificate = (X509Certificate) ((KeyStore.PrivateKeyEntry) entry).getCertificate();
+                }
+            } catch (GeneralSecurityException ex) {
+                signingKeyError = ex;
+            }
+        }
+
+        return new KeyMaterial(signingCertificateAlias, signingKey, signingCertificate, signingKeyError,
+                Collections.unmodifiableMap(certificates));
+    }
+
+    /**
+     * @return The private key of the signing certificate
+     * @throws CommunicatorException when the key store has no private key entry for the signing certificate alias, or
+     * the key cannot be recovered with the signing certificate password
+     */
+    PrivateKey getSigningKey() throws CommunicatorException {
+        if (signingKeyError != null) {
+            throw new CommunicatorException("KeyEntry '" + signingCertificateAlias + "' could not be loaded from the KeyStore",
+                    signingKeyError);
+        }
+        if (signingKey == null) {
+            throw new CommunicatorException("KeyEntry '" + signingCertificateAlias + "' was not found in the KeyStore");
+        }
+        return signingKey;
+    }
+
+    /**
+     * @return The alias the signing key was loaded for
+     */
+    String getSigningCertificateAlias() {
+        return signingCertificateAlias;
+    }
+
+    /**
+     * @return The signing certificate, or null when there is no signing key
+     */
+    X509Certificate getSigningCertificate() {
+        return signingCertificate;
+    }
+
+    /**
+     * @return The error that prevented loading the signing key, or null
+     */
+    GeneralSecurityException getSigningKeyError() {
+        return signingKeyError;
+    }
+
+    /**
+     * @param alias alias of a certificate in the key store
+     * @return The certificate, or null if the key store has no certificate with this alias
+     */
+    X509Certificate getCertificate(String alias) {
+        return certificates.get(alias);
+    }
+}
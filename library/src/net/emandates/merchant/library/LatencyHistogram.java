@@ -0,0 +1,160 @@
+package net.emandates.merchant.library;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision, in the way of HdrHistogram: values are
+ * counted in buckets that double in width with every power of two, each split into 32 sub-buckets, so a recorded value
+ * is reported within about 3% of itself. Values up to about 18 minutes are kept; larger values count as 18 minutes.
+ * Recording is lock-free and does not allocate; a histogram takes about 10 kB.
+ */
+public class LatencyHistogram {
+    private static final int SubBucketBits = 6;
+    private static final int HalfSubBuckets = 1 << (SubBucketBits - 1);
+    private static final long MaxValue = (1L << 40) - 1;
+    private static final int Length = index(MaxValue) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(Length);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos a latency; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MaxValue, nanos));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Sum of the recorded values in nanoseconds
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return Largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return Mean of the recorded values in nanoseconds, or 0 if there are none
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0) ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return The value below which the given percentage of the recorded values lies, in nanoseconds, or 0 if there
+     * are none
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[Length];
+        for (int i = 0; i < Length; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < Length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param nanos an upper bound
+     * @return Number of recorded values not larger than the bound, as far as the precision of the histogram allows
+     */
+    public long getCountAtOrBelow(long nanos) {
+        if (nanos < 0) {
+            return 0;
+        }
+        int last = index(Math.min(MaxValue, nanos));
+        long n = 0;
+        for (int i = 0; i <= last; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * Counts the recorded values up to each of a number of bounds in one pass, e.g. for the buckets of a Prometheus
+     * histogram
+     * @param bounds upper bounds in nanoseconds, in ascending order
+     * @return For each bound the number of values not larger than it, followed by the number of all values; the
+     * counts are taken from one pass over the buckets, so they are consistent with each other
+     */
+    public long[] getCountsAtOrBelow(long[] bounds) {
+        long[] result = new long[bounds.length + 1];
+        int bound = 0;
+        while (bound < bounds.length && bounds[bound] < 0) {
+            bound++;
+        }
+        long n = 0;
+        for (int i = 0; i < Length; i++) {
+            while (bound < bounds.length && index(Math.min(MaxValue, bounds[bound])) < i) {
+                result[bound++] = n;
+            }
+            n += counts.get(i);
+        }
+        while (bound < bounds.length) {
+            result[bound++] = n;
+        }
+        result[bounds.length] = n;
+        return result;
+    }
+
+    /**
+     * Clears the histogram; values recorded at the same time may be partly kept
+     */
+    public void reset() {
+        for (int i = 0; i < Length; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if (value < 2 * HalfSubBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SubBucketBits - 1);
+        return shift * HalfSubBuckets + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        int shift = Math.max(0, index / HalfSubBuckets - 1);
+        long subBucket = index - (long) shift * HalfSubBuckets;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
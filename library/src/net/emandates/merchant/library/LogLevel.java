@@ -0,0 +1,41 @@
+package net.emandates.merchant.library;
+
+import java.util.logging.Level;
+
+/**
+ * Severity of a log message, see ILogger
+ */
+public enum LogLevel {
+    /**
+     * Details of a request, e.g. the steps of signing and the certificates used to verify a signature
+     */
+    DEBUG(Level.FINE),
+
+    /**
+     * Requests being sent
+     */
+    INFO(Level.INFO),
+
+    /**
+     * Invalid messages and recoverable problems
+     */
+    WARNING(Level.WARNING),
+
+    /**
+     * Failed requests
+     */
+    ERROR(Level.SEVERE);
+
+    private final Level julLevel;
+
+    LogLevel(Level julLevel) {
+        this.julLevel = julLevel;
+    }
+
+    /**
+     * @return The java.util.logging level the messages are logged at by the default logger
+     */
+    public Level getJulLevel() {
+        return julLevel;
+    }
+}
@@ -1,21 +1,14 @@
 package net.emandates.merchant.library;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.logging.Level;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
+import java.util.function.Supplier;
 
+/**
+ * Logs to java.util.logging, at the JUL level of each LogLevel, when logs are enabled in the configuration. Messages
+ * logged without a level are logged at INFO.
+ */
 class Logger implements ILogger {
+    private static final java.util.logging.Logger julLogger = java.util.logging.Logger.getLogger(Logger.class.getName());
+
     private String version = "";
 
     public Logger() {
@@ -25,62 +18,79 @@ class Logger implements ILogger {
         version = packageVersion;
     }
 
-    private void Write(Configuration config, String content) {
-        if (config.isLogsEnabled()) {
-            java.util.logging.Logger.getLogger(Logger.class.getName()).log(Level.INFO, versionedLog(content));
+    private void Write(LogLevel level, String content) {
+        julLogger.log(level.getJulLevel(), versionedLog(content));
+    }
+
+    private void LogFile(Configuration config, MessageInfo message) {
+        if (!config.isServiceLogsEnabled()) {
+            return;
         }
+        ServiceLogWriter.getDefault().write(config, message);
     }
 
-    private void Write(Configuration config, Throwable e) {
-        if (config.isLogsEnabled()) {
-            java.util.logging.Logger.getLogger(Logger.class.getName()).log(Level.INFO, versionedLog(null), e);
+    @Override
+    public boolean IsEnabled(Configuration config, LogLevel level) {
+        return config.isLogsEnabled() && julLogger.isLoggable(level.getJulLevel());
+    }
+
+    @Override
+    public boolean IsXmlLogEnabled(Configuration config) {
+        return config.isServiceLogsEnabled();
+    }
+
+    @Override
+    public void Log(Configuration config, String message, Object... args) {
+        if (IsEnabled(config, LogLevel.INFO)) {
+            Write(LogLevel.INFO, String.format(message, args));
         }
     }
 
-    private void LogFile(Configuration config, String content) {
-        if (!config.isServiceLogsEnabled()) {
-            return;
+    @Override
+    public void Log(Configuration config, LogLevel level, String message) {
+        if (IsEnabled(config, level)) {
+            Write(level, message);
         }
-        
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().
-                    newDocumentBuilder().parse(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
-            
-            String documentElementName = doc.getDocumentElement().getTagName().replace(':', '-');
-            String fileName = config.getServiceLogsPattern();
-
-            Calendar c = GregorianCalendar.getInstance();
-            
-            fileName = fileName.replace("%Y", String.valueOf(c.get(GregorianCalendar.YEAR)));
-            fileName = fileName.replace("%M", String.format("%02d", c.get(GregorianCalendar.MONTH) + 1)); // January is 0
-            fileName = fileName.replace("%D", String.format("%02d", c.get(GregorianCalendar.DAY_OF_MONTH)));
-            fileName = fileName.replace("%h", String.format("%02d", c.get(GregorianCalendar.HOUR_OF_DAY)));
-            fileName = fileName.replace("%m", String.format("%02d", c.get(GregorianCalendar.MINUTE)));
-            fileName = fileName.replace("%s", String.format("%02d", c.get(GregorianCalendar.SECOND)));
-            fileName = fileName.replace("%f", String.format("%03d", c.get(GregorianCalendar.MILLISECOND)));
-            fileName = fileName.replace("%a", documentElementName);
-
-            File f = new File(config.getServiceLogsLocation() + File.separator + fileName);
-            f.getParentFile().mkdirs();
-
-            try (OutputStreamWriter char_output = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8.newEncoder())) {
-                char_output.write(content);
-            }
-            
-        } catch (ParserConfigurationException | SAXException | IOException ex) {
-            Write(config, ex);
+    }
+
+    @Override
+    public void Log(Configuration config, LogLevel level, String message, Throwable thrown) {
+        if (IsEnabled(config, level)) {
+            julLogger.log(level.getJulLevel(), versionedLog(message), thrown);
         }
     }
 
     @Override
-    public void Log(Configuration config, String message, Object... args) {
-        String output = String.format(message, args);
-        Write(config, output);
+    public void Log(Configuration config, LogLevel level, String format, Object arg) {
+        if (IsEnabled(config, level)) {
+            Write(level, String.format(format, arg));
+        }
+    }
+
+    @Override
+    public void Log(Configuration config, LogLevel level, String format, Object arg1, Object arg2) {
+        if (IsEnabled(config, level)) {
+            Write(level, String.format(format, arg1, arg2));
+        }
+    }
+
+    @Override
+    public void Log(Configuration config, LogLevel level, Supplier<String> message) {
+        if (IsEnabled(config, level)) {
+            Write(level, message.get());
+        }
     }
 
     @Override
     public void LogXmlMessage(Configuration config, String content) {
-        LogFile(config, content);
+        if (config.isServiceLogsEnabled()) {
+            LogFile(config, new MessageInfo(null, MessageInfo.rootName(content), null, null, null, content, null));
+        }
+    }
+
+    @Override
+    public void LogXmlMessage(Configuration config, MessageInfo message) {
+        LogFile(config, message);
     }
 
     private String versionedLog(String message) {
@@ -0,0 +1,218 @@
+package net.emandates.merchant.library;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A raw XML message passed to ILogger.LogXmlMessage, with the values that identify it in the service logs: whether it
+ * was sent or received, the name of the root element, the iDx transactionID, the MsgId of the pain message and the
+ * iDx errorCode. The communicators fill in what they already know about a message, so that it does not have to be
+ * parsed to be logged; values that are not known are null.
+ */
+public final class MessageInfo {
+    /**
+     * Whether a message was sent to or received from the acquirer
+     */
+    public enum Direction {
+        REQUEST,
+        RESPONSE
+    }
+
+    private static final XMLInputFactory inputFactory = newInputFactory();
+
+    private final Direction direction;
+    private final String messageType;
+    private final String transactionID;
+    private final String messageID;
+    private final String errorCode;
+    private final String content;
+    private final boolean complete;
+    private byte[] payload;
+
+    MessageInfo(Direction direction, String messageType, String transactionID, String messageID, String errorCode,
+            String content, byte[] payload) {
+        this(direction, messageType, transactionID, messageID, errorCode, content, payload,
+                direction == Direction.REQUEST);
+    }
+
+    private MessageInfo(Direction direction, String messageType, String transactionID, String messageID,
+            String errorCode, String content, byte[] payload, boolean complete) {
+        this.direction = direction;
+        this.messageType = messageType;
+        this.transactionID = transactionID;
+        this.messageID = messageID;
+        this.errorCode = errorCode;
+        this.content = content;
+        this.payload = payload;
+        this.complete = complete;
+    }
+
+    /**
+     * Describes a request built by a communicator, without reading it
+     * @param context the operation the request was built for
+     * @param xml the request
+     * @param payload the request as sent, in UTF-8, or null to encode it when needed
+     */
+    static MessageInfo Request(RequestContext context, String xml, byte[] payload) {
+        return new MessageInfo(Direction.REQUEST, context.getRequestType(), context.getTransactionID(),
+                context.getMessageID(), null, xml, payload);
+    }
+
+    /**
+     * Describes a response; only the root element is read, the other values are those of the request
+     * @param context the operation the response was received for
+     * @param xml the response
+     * @param payload the response as received, or null to encode it when needed
+     */
+    static MessageInfo Response(RequestContext context, String xml, byte[] payload) {
+        return new MessageInfo(Direction.RESPONSE, rootName(xml), context.getTransactionID(), context.getMessageID(),
+                null, xml, payload);
+    }
+
+    /**
+     * Reads the values from a message; a message that is not well-formed yields the values read up to the error
+     * @param xml the message
+     * @return the values
+     */
+    static MessageInfo Scan(String xml) {
+        String messageType = null;
+        String transactionID = null;
+        String messageID = null;
+        String errorCode = null;
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if (messageType == null) {
+                    messageType = name;
+                } else if (transactionID == null && name.equals("transactionID")) {
+                    transactionID = reader.getElementText().trim();
+                } else if (messageID == null && name.equals("MsgId")) {
+                    messageID = reader.getElementText().trim();
+                } else if (errorCode == null && name.equals("errorCode")) {
+                    errorCode = reader.getElementText().trim();
+                }
+            }
+        } catch (XMLStreamException ex) {
+            // keep what was read
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                }
+            }
+        }
+        return new MessageInfo(null, messageType, transactionID, messageID, errorCode, xml, null, true);
+    }
+
+    /**
+     * Completes the values that were not known when the message was logged by reading the message, for the service
+     * log archive that indexes on them. A request built by a communicator or a message that was scanned is complete;
+     * a response is read for its errorCode and, for a new mandate, the transactionID assigned by the acquirer.
+     * @return this if all values are known, otherwise a copy with the values read from the message
+     */
+    MessageInfo complete() {
+        if (complete) {
+            return this;
+        }
+        MessageInfo scanned = Scan(content);
+        return new MessageInfo(direction, (messageType != null) ? messageType : scanned.messageType,
+                (transactionID != null) ? transactionID : scanned.transactionID,
+                (messageID != null) ? messageID : scanned.messageID, scanned.errorCode, content, payload, true);
+    }
+
+    /**
+     * @param content a rewritten message, e.g. with personal data masked
+     * @return a copy of this with the content replaced
+     */
+    MessageInfo withContent(String content) {
+        return new MessageInfo(direction, messageType, transactionID, messageID, errorCode, content, null, complete);
+    }
+
+    /**
+     * Reads the name of the root element from the start of a message, without parsing it
+     * @param xml the message
+     * @return the local name of the root element, or null if there is none
+     */
+    static String rootName(String xml) {
+        int length = xml.length();
+        int i = xml.indexOf('<');
+        while (i >= 0 && i + 1 < length) {
+            char c = xml.charAt(i + 1);
+            if (c != '?' && c != '!') {
+                int start = i + 1;
+                int end = start;
+                while (end < length && " \t\r\n/>".indexOf(xml.charAt(end)) < 0) {
+                    if (xml.charAt(end) == ':') {
+                        start = end + 1;
+                    }
+                    end++;
+                }
+                return (end > start) ? xml.substring(start, end) : null;
+            }
+            i = xml.indexOf('<', i + 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether the message was sent or received, or null if it is not known
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return The local name of the root element, e.g. AcquirerTrxReq
+     */
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public String getTransactionID() {
+        return transactionID;
+    }
+
+    public String getMessageID() {
+        return messageID;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return The message
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return The message in UTF-8
+     */
+    public byte[] getPayload() {
+        byte[] result = payload;
+        if (result == null && content != null) {
+            result = content.getBytes(StandardCharsets.UTF_8);
+            payload = result;
+        }
+        return result;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,182 @@
+package net.emandates.merchant.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Masks personal data in the service logs: the text of every element that matches one of the paths is replaced by the
+ * mask, including the text of its child elements. A path is a local element name, e.g. IBAN, or local names separated
+ * by slashes that must be the innermost elements in that order, e.g. Dbtr/Id; namespace prefixes are ignored.
+ *
+ * A message is rewritten in a single pass over its characters, without parsing it into a DOM; everything that is not
+ * masked, including whitespace, comments and namespace declarations, is copied as it is. Instances are immutable and
+ * can be shared by any number of threads.
+ */
+public class MessageRedactor {
+    /**
+     * The paths masked by default: the debtor's IBAN, the names of the parties and the debtor's identification
+     */
+    public static final List<String> DefaultPaths = Arrays.asList("IBAN", "Nm", "Dbtr/Id");
+
+    private final String[][] paths;
+    private final String mask;
+
+    /**
+     * Masks the default paths with ***
+     */
+    public MessageRedactor() {
+        this(DefaultPaths, "***");
+    }
+
+    /**
+     * @param paths the paths of the elements to mask
+     * @param mask the text that replaces the text of a masked element
+     */
+    public MessageRedactor(Collection<String> paths, String mask) {
+        List<String[]> parsed = new ArrayList<>();
+        for (String path : paths) {
+            parsed.add(path.split("/"));
+        }
+        this.paths = parsed.toArray(new String[0][]);
+        this.mask = mask;
+    }
+
+    /**
+     * @param xml a message
+     * @return the message with the text of the matching elements masked; a message that is not well-formed is masked
+     * up to the error and copied from there
+     */
+    public String redact(String xml) {
+        int length = xml.length();
+        StringBuilder out = new StringBuilder(length);
+        // start and end of the local name of every open element
+        int[] names = new int[32];
+        int depth = 0;
+        int maskDepth = -1;
+        int i = 0;
+        while (i < length) {
+            if (xml.charAt(i) != '<') {
+                int end = indexOf(xml, "<", i);
+                if (maskDepth >= 0 && !isWhitespace(xml, i, end)) {
+                    out.append(mask);
+                } else {
+                    out.append(xml, i, end);
+                }
+                i = end;
+            } else if (xml.startsWith("<!--", i)) {
+                i = copy(xml, i, indexOf(xml, "-->", i) + 3, out);
+            } else if (xml.startsWith("<![CDATA[", i)) {
+                int end = indexOf(xml, "]]>", i) + 3;
+                if (maskDepth >= 0) {
+                    out.append(mask);
+                    i = Math.min(end, length);
+                } else {
+                    i = copy(xml, i, end, out);
+                }
+            } else if (xml.startsWith("<?", i)) {
+                i = copy(xml, i, indexOf(xml, "?>", i) + 2, out);
+            } else if (xml.startsWith("<!", i) || xml.startsWith("</", i)) {
+                if (xml.charAt(i + 1) == '/' && depth > 0) {
+                    depth--;
+                    if (depth <= maskDepth) {
+                        maskDepth = -1;
+                    }
+                }
+                i = copy(xml, i, indexOf(xml, ">", i) + 1, out);
+            } else {
+                int start = i + 1;
+                int nameEnd = start;
+                while (nameEnd < length && " \t\r\n/>".indexOf(xml.charAt(nameEnd)) < 0) {
+                    if (xml.charAt(nameEnd) == ':') {
+                        start = nameEnd + 1;
+                    }
+                    nameEnd++;
+                }
+                int end = tagEnd(xml, nameEnd);
+                if (end - 2 <= i || xml.charAt(end - 2) != '/') {
+                    if (depth * 2 == names.length) {
+                        names = Arrays.copyOf(names, names.length * 2);
+                    }
+                    names[depth * 2] = start;
+                    names[depth * 2 + 1] = nameEnd;
+                    depth++;
+                    if (maskDepth < 0 && matches(xml, names, depth)) {
+                        maskDepth = depth - 1;
+                    }
+                }
+                i = copy(xml, i, end, out);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Redacts a logged message, keeping what the communicator knew about it
+     */
+    MessageInfo redact(MessageInfo message) {
+        return message.withContent(redact(message.getContent()));
+    }
+
+    private boolean matches(String xml, int[] names, int depth) {
+        for (String[] path : paths) {
+            if (path.length > depth) {
+                continue;
+            }
+            boolean match = true;
+            for (int j = 0; j < path.length && match; j++) {
+                int element = depth - path.length + j;
+                int start = names[element * 2];
+                int length = names[element * 2 + 1] - start;
+                String name = path[j];
+                match = name.length() == length && xml.regionMatches(start, name, 0, length);
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index after the > that ends the tag, skipping quoted attribute values
+     */
+    private static int tagEnd(String xml, int i) {
+        int length = xml.length();
+        char quote = 0;
+        for (; i < length; i++) {
+            char c = xml.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int indexOf(String xml, String s, int from) {
+        int i = xml.indexOf(s, from);
+        return (i >= 0) ? i : xml.length() - s.length() + 1;
+    }
+
+    private static int copy(String xml, int start, int end, StringBuilder out) {
+        end = Math.min(end, xml.length());
+        out.append(xml, start, end);
+        return end;
+    }
+
+    private static boolean isWhitespace(String xml, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(xml.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package net.emandates.merchant.library;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event for a RequestPhase of a communicator operation, so that the time of an operation can be
+ * correlated with GC pauses and lock contention. The events are disabled by default; enable them by name in a JFR
+ * settings file or on a RecordingStream, e.g. net.emandates.HttpExchange. No event is created while the Flight
+ * Recorder has not been started in the JVM.
+ */
+@Category({"eMandates", "Communicator"})
+@Enabled(false)
+@StackTrace(false)
+abstract class PhaseEvent extends Event {
+    @Label("Operation")
+    @Description("directory, newMandate, amend, status or cancel")
+    String operation;
+
+    @Label("Transaction ID")
+    String transactionID;
+
+    @Label("Message ID")
+    @Description("MsgId of the pain message in the request")
+    String messageID;
+
+    /**
+     * Begins the event of a phase, if the Flight Recorder is running and the event is enabled
+     * @return the event, or null if there is none for the phase or it is not recorded
+     */
+    static PhaseEvent Begin(RequestPhase phase, RequestContext context) {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        PhaseEvent event;
+        switch (phase) {
+            case BUILD:
+                event = new RequestBuild();
+                break;
+            case SIGN:
+                event = new SignatureCreation();
+                break;
+            case SCHEMA_VALIDATION:
+                event = new SchemaValidation();
+                break;
+            case EXCHANGE:
+                event = new HttpExchange();
+                break;
+            case SIGNATURE_VERIFICATION:
+                event = new SignatureVerification();
+                break;
+            case PARSE:
+                event = new ResponseParsing();
+                break;
+            default:
+                return null;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.operation = context.getOperation();
+        event.transactionID = context.getTransactionID();
+        event.messageID = context.getMessageID();
+        event.begin();
+        return event;
+    }
+
+    @Name("net.emandates.RequestBuild")
+    @Label("Request Build")
+    @Description("Building a request message with JAXB")
+    static class RequestBuild extends PhaseEvent {
+    }
+
+    @Name("net.emandates.SignatureCreation")
+    @Label("Signature Creation")
+    @Description("Signing a request message")
+    static class SignatureCreation extends PhaseEvent {
+    }
+
+    @Name("net.emandates.SchemaValidation")
+    @Label("Schema Validation")
+    @Description("Validating a request or response message against the schemas")
+    static class SchemaValidation extends PhaseEvent {
+    }
+
+    @Name("net.emandates.HttpExchange")
+    @Label("HTTP Exchange")
+    @Description("Sending a request to the acquirer and receiving its response")
+    static class HttpExchange extends PhaseEvent {
+        @Label("URL")
+        String url;
+
+        @Label("Status")
+        int status;
+
+        @Label("Request Size")
+        @DataAmount
+        long requestBytes;
+
+        @Label("Response Size")
+        @DataAmount
+        long responseBytes;
+    }
+
+    @Name("net.emandates.SignatureVerification")
+    @Label("Signature Verification")
+    @Description("Verifying the signatures of a response message")
+    static class SignatureVerification extends PhaseEvent {
+    }
+
+    @Name("net.emandates.ResponseParsing")
+    @Label("Response Parsing")
+    @Description("Parsing a response message into a response object")
+    static class ResponseParsing extends PhaseEvent {
+    }
+}
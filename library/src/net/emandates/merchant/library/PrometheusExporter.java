@@ -0,0 +1,225 @@
+package net.emandates.merchant.library;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of a RequestPipeline in the Prometheus text format on /metrics, using the HTTP server of the JDK:
+ * - emandates_operation_duration_seconds{operation}: histogram of the latency of the operations; its _count is the
+ *   number of requests
+ * - emandates_phase_duration_seconds{operation,phase}: histogram of the time spent in each RequestPhase
+ * - emandates_errors_total{operation,error_code}: failed operations by the errorCode of their ErrorResponse
+ * - emandates_pipeline_queue_depth{stage}, emandates_transport_active, emandates_transport_threads: the stages of the
+ *   pipeline
+ * - emandates_scheduler_*: the slots and waiting requests of the FairScheduler
+ * - emandates_admission_*: the AdmissionQueue, if the pipeline has one
+ * - emandates_service_log_*: the queue of the ServiceLogWriter used by the communicators, if it has been created
+ *
+ * The latencies are read from the HistogramMetrics that must be set as the pipeline's metrics. A scrape reads the
+ * counters without locking the request threads and takes well under a millisecond.
+ */
+public class PrometheusExporter implements AutoCloseable {
+    private static final String ContentType = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] BucketSeconds = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+    private static final long[] BucketNanos = new long[BucketSeconds.length];
+    private static final String[] BucketLabels = new String[BucketSeconds.length];
+
+    static {
+        for (int i = 0; i < BucketSeconds.length; i++) {
+            BucketNanos[i] = (long) (BucketSeconds[i] * 1e9);
+            BucketLabels[i] = Double.toString(BucketSeconds[i]);
+        }
+    }
+
+    private final RequestPipeline pipeline;
+    private final HistogramMetrics metrics;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param pipeline the pipeline whose queues and limits are exported
+     * @param metrics the metrics set on the pipeline with setMetrics
+     */
+    public PrometheusExporter(RequestPipeline pipeline, HistogramMetrics metrics) {
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts serving /metrics on a daemon thread
+     * @param address the address to listen on, e.g. new InetSocketAddress(9464); port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            return;
+        }
+        HttpServer created = HttpServer.create(address, 0);
+        created.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "emandates-prometheus");
+            t.setDaemon(true);
+            return t;
+        });
+        created.setExecutor(executor);
+        created.start();
+        server = created;
+    }
+
+    /**
+     * @return The address the exporter listens on, or null if it has not been started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return (server != null) ? server.getAddress() : null;
+    }
+
+    /**
+     * Stops serving; a scrape in progress is completed
+     */
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return The metrics in the Prometheus text format, as served on /metrics
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(8192);
+
+        header(sb, "emandates_operation_duration_seconds", "histogram", "Latency of the communicator operations");
+        for (String operation : metrics.getOperations()) {
+            histogram(sb, "emandates_operation_duration_seconds", "operation=\"" + escape(operation) + "\"",
+                    metrics.getHistogram(operation));
+        }
+
+        header(sb, "emandates_phase_duration_seconds", "histogram", "Time spent in each phase of the communicator operations");
+        for (String operation : metrics.getOperations()) {
+            for (RequestPhase phase : RequestPhase.values()) {
+                LatencyHistogram histogram = metrics.getHistogram(operation, phase);
+                if (histogram.getCount() > 0) {
+                    histogram(sb, "emandates_phase_duration_seconds", "operation=\"" + escape(operation) + "\",phase=\""
+                            + phase.name() + "\"", histogram);
+                }
+            }
+        }
+
+        header(sb, "emandates_errors_total", "counter", "Failed operations by errorCode; empty for exceptions without one");
+        for (String operation : metrics.getOperations()) {
+            for (Map.Entry<String, Long> error : metrics.getErrors(operation).entrySet()) {
+                sample(sb, "emandates_errors_total", "operation=\"" + escape(operation) + "\",error_code=\""
+                        + escape(error.getKey()) + "\"", error.getValue());
+            }
+        }
+
+        header(sb, "emandates_pipeline_queue_depth", "gauge", "Requests waiting for a stage of the request pipeline");
+        sample(sb, "emandates_pipeline_queue_depth", "stage=\"build\"", pipeline.getBuildQueueDepth());
+        sample(sb, "emandates_pipeline_queue_depth", "stage=\"transport\"", pipeline.getTransportQueueDepth());
+        sample(sb, "emandates_pipeline_queue_depth", "stage=\"verify\"", pipeline.getVerifyQueueDepth());
+        gauge(sb, "emandates_transport_active", "HTTP exchanges in progress on the transport stage", pipeline.getActiveTransports());
+        gauge(sb, "emandates_transport_threads", "Threads of the transport stage", pipeline.getTransportThreads());
+
+        FairScheduler scheduler = pipeline.getScheduler();
+        gauge(sb, "emandates_scheduler_in_flight", "Transport slots in use", scheduler.getInFlight());
+        gauge(sb, "emandates_scheduler_queue_length", "Requests waiting for a transport slot", scheduler.getQueueLength());
+        if (scheduler.getMaxConcurrent() != Integer.MAX_VALUE) {
+            gauge(sb, "emandates_scheduler_max_concurrent", "Transport slots", scheduler.getMaxConcurrent());
+        }
+
+        AdmissionQueue admission = pipeline.getAdmissionQueue();
+        if (admission != null) {
+            gauge(sb, "emandates_admission_outstanding", "Requests admitted and not yet completed", admission.getOutstanding());
+            gauge(sb, "emandates_admission_outstanding_bytes", "Bytes of the requests admitted and not yet completed",
+                    admission.getOutstandingBytes());
+            gauge(sb, "emandates_admission_max_requests", "Requests that may be outstanding", admission.getMaxRequests());
+            counter(sb, "emandates_admission_admitted_total", "Requests admitted", admission.getAdmitted());
+            counter(sb, "emandates_admission_rejected_total", "Requests rejected because the queue was full", admission.getRejected());
+            counter(sb, "emandates_admission_dropped_total", "Requests dropped to admit others", admission.getDropped());
+            counter(sb, "emandates_admission_expired_total", "Requests that expired before they were sent", admission.getExpired());
+        }
+
+        ServiceLogWriter writer = ServiceLogWriter.peekDefault();
+        if (writer != null) {
+            gauge(sb, "emandates_service_log_queue_depth", "Messages waiting to be written to the service logs", writer.getQueueDepth());
+            gauge(sb, "emandates_service_log_capacity", "Capacity of the service log queue", writer.getCapacity());
+            counter(sb, "emandates_service_log_written_total", "Messages written to the service logs", writer.getWritten());
+            counter(sb, "emandates_service_log_dropped_total", "Messages dropped because the queue was full", writer.getDropped());
+        }
+        return sb.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", ContentType);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "gauge", help);
+        sample(sb, name, null, value);
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, "counter", help);
+        sample(sb, name, null, value);
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.getCountsAtOrBelow(BucketNanos);
+        for (int i = 0; i < BucketLabels.length; i++) {
+            sb.append(name).append("_bucket{").append(labels).append(",le=\"").append(BucketLabels[i]).append("\"} ")
+                    .append(counts[i]).append('\n');
+        }
+        long count = counts[BucketLabels.length];
+        sb.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        sb.append(name).append("_sum{").append(labels).append("} ").append(histogram.getTotal() / 1e9).append('\n');
+        sb.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
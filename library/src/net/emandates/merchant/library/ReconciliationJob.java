@@ -0,0 +1,311 @@
+package net.emandates.merchant.library;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import net.emandates.merchant.library.store.TrackedTransaction;
+
+/**
+ * Determines the final status of a set of transactions, e.g. all transactions created on a business day. Transactions
+ * with a final status in the checkpoint are not polled again; the others are polled through the communicator's request
+ * pipeline with a bounded number of requests in flight. A line per transaction is written to the report as results
+ * come in, and the counts per status and issuer are written to the summary at the end of the run.
+ *
+ * The checkpoint holds the last known status of every transaction seen by previous runs. Running the job again with
+ * the same checkpoint only re-checks the transactions that had not reached a final status; the report's "changed"
+ * column shows whether the status differs from the one in the checkpoint. Every status received is appended to the
+ * checkpoint as it comes in, so an interrupted run loses none of them; the checkpoint is compacted to a line per
+ * transaction at the start and at the end of a run.
+ */
+public class ReconciliationJob {
+    /**
+     * Counts of a completed reconciliation run
+     */
+    public static class Summary {
+        private long cached;
+        private long polled;
+        private long failed;
+        private final Map<String, Map<String, Long>> counts = new TreeMap<>();
+
+        /**
+         * @return Number of transactions with a final status in the checkpoint, which were not polled
+         */
+        public long getCached() {
+            return cached;
+        }
+
+        /**
+         * @return Number of transactions polled in this run
+         */
+        public long getPolled() {
+            return polled;
+        }
+
+        /**
+         * @return Number of polled transactions for which the status response was an error
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Number of transactions per status and issuer (debtorBankID); failed polls are counted under status
+         * "Error" and transactions without a known issuer under an empty issuer
+         */
+        public Map<String, Map<String, Long>> getCounts() {
+            return Collections.unmodifiableMap(counts);
+        }
+
+        private void count(String status, String issuer) {
+            counts.computeIfAbsent(status, s -> new TreeMap<>()).merge((issuer != null) ? issuer : "", 1L, Long::sum);
+        }
+    }
+
+    private static final String ReportHeader = "transactionID,status,issuer,statusDateTimestamp,source,changed,isError,errorCode,errorMessage";
+    private static final String SummaryHeader = "status,issuer,count";
+    private static final String CheckpointHeader = "transactionID,status,issuer,statusDateTimestamp";
+
+    private final CoreCommunicator communicator;
+    private int concurrency = BulkExecutor.defaultConcurrency();
+
+    /**
+     * @param communicator the communicator used to poll the status of the transactions
+     */
+    public ReconciliationJob(CoreCommunicator communicator) {
+        this.communicator = communicator;
+    }
+
+    /**
+     * @param concurrency The maximum number of status requests in flight; defaults to the number of available processors
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Reconciles the transactions listed in a file, one transactionID per line
+     * @param transactionIDs the file with the transactionIDs
+     * @param report the file to which a line per transaction is written
+     * @param summary the file to which the counts per status and issuer are written
+     * @param checkpoint the checkpoint file, created if it does not exist
+     * @return the counts of this run
+     * @throws IOException
+     */
+    public Summary run(Path transactionIDs, Path report, Path summary, Path checkpoint) throws IOException {
+        try (Stream<String> lines = Files.lines(transactionIDs, StandardCharsets.UTF_8)) {
+            return run(lines.map(String::trim).filter(line -> !line.isEmpty()).iterator(), report, summary, checkpoint);
+        }
+    }
+
+    /**
+     * Reconciles a set of transactions; duplicate transactionIDs are reconciled once
+     * @param transactionIDs the transactionIDs
+     * @param report the file to which a line per transaction is written
+     * @param summary the file to which the counts per status and issuer are written
+     * @param checkpoint the checkpoint file, created if it does not exist
+     * @return the counts of this run
+     * @throws IOException
+     */
+    public Summary run(Iterable<String> transactionIDs, Path report, Path summary, Path checkpoint) throws IOException {
+        return run(transactionIDs.iterator(), report, summary, checkpoint);
+    }
+
+    private Summary run(Iterator<String> transactionIDs, Path report, Path summary, Path checkpoint) throws IOException {
+        Map<String, Entry> known = load(checkpoint);
+        // compacting first also drops a line that an interrupted run left incomplete, so that it cannot merge with the next
+        save(checkpoint, known);
+        Summary result = new Summary();
+
+        try (BufferedWriter out = Files.newBufferedWriter(report, StandardCharsets.UTF_8);
+                BufferedWriter log = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            out.write(ReportHeader);
+            out.newLine();
+
+            ToPoll toPoll = new ToPoll(transactionIDs, known, result, out);
+            try (BulkExecutor<StatusRequest, StatusResponse> executor = BulkExecutor.async(toPoll, r -> communicator.getStatusAsync(r, RequestClass.BULK),
+                    StatusRequest::getTransactionID, concurrency, communicator.getPipeline().getTracer())) {
+                while (executor.hasNext()) {
+                    BulkResult<StatusRequest, StatusResponse> polled = executor.next();
+                    String transactionID = polled.getRequest().getTransactionID();
+                    StatusResponse response = polled.getResponse();
+                    Entry previous = known.get(transactionID);
+                    result.polled++;
+
+                    if (response.getIsError()) {
+                        result.failed++;
+                        String issuer = issuer(transactionID, previous, null);
+                        result.count("Error", issuer);
+                        ErrorResponse error = response.getErrorResponse();
+                        Utils.writeCsvLine(out, transactionID, null, issuer, null, "polled", "false", "true",
+                                (error != null) ? error.getErrorCode() : null, (error != null) ? error.getErrorMessage() : null);
+                        continue;
+                    }
+
+                    Entry entry = new Entry(response.getStatus(), issuer(transactionID, previous, response),
+                            (response.getStatusDateTimestamp() != null) ? response.getStatusDateTimestamp().toXMLFormat() : null);
+                    known.put(transactionID, entry);
+                    result.count(entry.status, entry.issuer);
+                    boolean changed = previous == null || !entry.status.equalsIgnoreCase(previous.status);
+                    Utils.writeCsvLine(out, transactionID, entry.status, entry.issuer, entry.statusDateTimestamp, "polled",
+                            String.valueOf(changed), "false", null, null);
+
+                    Utils.writeCsvLine(log, transactionID, entry.status, entry.issuer, entry.statusDateTimestamp);
+                    log.flush();
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        save(checkpoint, known);
+
+        try (BufferedWriter out = Files.newBufferedWriter(summary, StandardCharsets.UTF_8)) {
+            out.write(SummaryHeader);
+            out.newLine();
+            for (Map.Entry<String, Map<String, Long>> status : result.counts.entrySet()) {
+                for (Map.Entry<String, Long> issuer : status.getValue().entrySet()) {
+                    Utils.writeCsvLine(out, status.getKey(), issuer.getKey(), String.valueOf(issuer.getValue()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The issuer is taken from the acceptance report, or else from the checkpoint, or else from the transaction as
+     * tracked by the communicator's StatusMonitor
+     */
+    private String issuer(String transactionID, Entry previous, StatusResponse response) {
+        if (response != null && response.getAcceptanceReport() != null && response.getAcceptanceReport().getDebtorBankID() != null) {
+            return response.getAcceptanceReport().getDebtorBankID();
+        }
+        if (previous != null && previous.issuer != null) {
+            return previous.issuer;
+        }
+        try {
+            TrackedTransaction tracked = communicator.getStatusMonitor().getStore().Get(transactionID);
+            return (tracked != null) ? tracked.getDebtorBankID() : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static Map<String, Entry> load(Path checkpoint) throws IOException {
+        Map<String, Entry> known = new HashMap<>();
+        if (!Files.exists(checkpoint)) {
+            return known;
+        }
+        String content = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8);
+        // a last line without line break was not completely written
+        try (Reader in = new StringReader(content.substring(0, content.lastIndexOf('\n') + 1));
+                BatchRecordReader records = BatchRecordReader.csv(in)) {
+            while (records.hasNext()) {
+                Map<String, String> record = records.next();
+                String transactionID = record.get("transactionID");
+                String status = record.get("status");
+                if (transactionID != null && status != null) {
+                    // a status appended by a later poll replaces the one before it
+                    known.put(transactionID, new Entry(status, record.get("issuer"), record.get("statusDateTimestamp")));
+                }
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return known;
+    }
+
+    private static void save(Path checkpoint, Map<String, Entry> known) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            out.write(CheckpointHeader);
+            out.newLine();
+            for (Map.Entry<String, Entry> e : known.entrySet()) {
+                Entry entry = e.getValue();
+                Utils.writeCsvLine(out, e.getKey(), entry.status, entry.issuer, entry.statusDateTimestamp);
+            }
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Entry {
+        private final String status;
+        private final String issuer;
+        private final String statusDateTimestamp;
+
+        Entry(String status, String issuer, String statusDateTimestamp) {
+            this.status = status;
+            this.issuer = issuer;
+            this.statusDateTimestamp = statusDateTimestamp;
+        }
+    }
+
+    /**
+     * Yields a status request for every transaction that has to be polled, and reports the transactions with a final
+     * status in the checkpoint as it passes them
+     */
+    private class ToPoll implements Iterator<StatusRequest> {
+        private final Iterator<String> transactionIDs;
+        private final Map<String, Entry> known;
+        private final Summary summary;
+        private final BufferedWriter out;
+        private final Set<String> seen = new HashSet<>();
+        private StatusRequest next;
+
+        ToPoll(Iterator<String> transactionIDs, Map<String, Entry> known, Summary summary, BufferedWriter out) {
+            this.transactionIDs = transactionIDs;
+            this.known = known;
+            this.summary = summary;
+            this.out = out;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && transactionIDs.hasNext()) {
+                String transactionID = transactionIDs.next();
+                if (!seen.add(transactionID)) {
+                    continue;
+                }
+                Entry entry = known.get(transactionID);
+                if (entry == null || !StatusMonitor.isFinalStatus(entry.status)) {
+                    next = new StatusRequest(transactionID);
+                    continue;
+                }
+
+                summary.cached++;
+                summary.count(entry.status, entry.issuer);
+                try {
+                    Utils.writeCsvLine(out, transactionID, entry.status, entry.issuer, entry.statusDateTimestamp, "cached",
+                            "false", "false", null, null);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public StatusRequest next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StatusRequest result = next;
+            next = null;
+            return result;
+        }
+    }
+}
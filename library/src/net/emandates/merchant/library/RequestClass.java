@@ -0,0 +1,27 @@
+package net.emandates.merchant.library;
+
+/**
+ * The priority class of a request, which determines its share of the transport when requests have to wait for it (see
+ * FairScheduler)
+ */
+public enum RequestClass {
+    /**
+     * A request a consumer is waiting for in the browser: directory, new mandate, amendment and cancellation requests
+     */
+    INTERACTIVE,
+
+    /**
+     * A status request made when the consumer returns to the merchant return URL
+     */
+    RETURN_STATUS,
+
+    /**
+     * A status request made by the StatusMonitor's background polling
+     */
+    POLLING,
+
+    /**
+     * A request sent by the bulk methods, the BatchImporter or the ReconciliationJob
+     */
+    BULK
+}
@@ -0,0 +1,300 @@
+package net.emandates.merchant.library;
+
+/**
+ * The state of one communicator operation from the moment it is called until its response has been parsed: what it is
+ * (operation, tenant, request class, and the identifiers of its request), when it started, the time spent in each
+ * RequestPhase, the Flight Recorder event and trace span of the current phase, its place in the AdmissionQueue, and
+ * what the SlowRequestRecorder captures when the operation turns out to be slow.
+ */
+final class RequestContext {
+    private final String operation;
+    private final String tenant;
+    private final RequestClass requestClass;
+    private final String transactionID;
+    private final String messageID;
+    private final long startNanos = System.nanoTime();
+    private final IMetrics metrics;
+    private final long[] phaseNanos;
+    private PhaseEvent event;
+    private final ITracer tracer;
+    private final ISpan span;
+    private ISpan phaseSpan;
+    private String errorCode;
+    private final SlowRequestRecorder recorder;
+    private String endpoint;
+    private int httpStatus;
+    private long requestBytes;
+    private long responseBytes;
+    String request;
+    String response;
+
+    // guarded by the AdmissionQueue
+    volatile AdmissionQueue admission;
+    long bytes;
+    long admittedNanos;
+    boolean sending;
+    boolean dropped;
+
+    // used by the communicator and ServiceLogSampler to log the raw messages of the operation together
+    Boolean sampled;
+    MessageInfo heldRequest;
+
+    /**
+     * @param transactionID the transactionID the request is about, if it has one
+     * @param messageID the MsgId of the pain message in the request, if it has one
+     * @param metrics the metrics the phases are recorded in when the operation completes, unless they are disabled
+     * @param tracer the tracer that creates the spans of the operation; its span is started on the calling thread
+     * @param recorder the recorder that captures the operation if it is slow, or null
+     */
+    RequestContext(String operation, Configuration config, RequestClass requestClass, String transactionID,
+            String messageID, IMetrics metrics, ITracer tracer, SlowRequestRecorder recorder) {
+        this.operation = operation;
+        this.tenant = config.getTenant();
+        this.requestClass = requestClass;
+        this.transactionID = transactionID;
+        this.messageID = messageID;
+        this.metrics = metrics;
+        this.recorder = recorder;
+        this.phaseNanos = (metrics.IsEnabled() || recorder != null) ? new long[RequestPhase.values().length] : null;
+        this.tracer = tracer;
+        this.span = tracer.IsEnabled() ? tracer.StartSpan("eMandates " + operation, null) : null;
+        if (span != null) {
+            span.SetAttribute("emandates.operation", operation);
+            setAttribute(span, "emandates.tenant", tenant);
+            span.SetAttribute("emandates.request_class", requestClass.name());
+            span.SetAttribute("emandates.message_type", getRequestType());
+            setAttribute(span, "emandates.transaction_id", transactionID);
+            setAttribute(span, "emandates.message_id", messageID);
+        }
+    }
+
+    /**
+     * @return The name of the operation: directory, newMandate, amend, status or cancel
+     */
+    String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return The tenant of the request, as contractID/subID
+     */
+    String getTenant() {
+        return tenant;
+    }
+
+    RequestClass getRequestClass() {
+        return requestClass;
+    }
+
+    /**
+     * @return The root element of the request message: DirectoryReq, AcquirerStatusReq or AcquirerTrxReq
+     */
+    String getRequestType() {
+        switch (operation) {
+            case "directory":
+                return "DirectoryReq";
+            case "status":
+                return "AcquirerStatusReq";
+            default:
+                return "AcquirerTrxReq";
+        }
+    }
+
+    String getTransactionID() {
+        return transactionID;
+    }
+
+    String getMessageID() {
+        return messageID;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Starts timing a phase, and begins its Flight Recorder event and trace span if they are enabled
+     * @return The time the phase starts, or 0 if the phases are not recorded in the metrics
+     */
+    long startPhase(RequestPhase phase) {
+        event = PhaseEvent.Begin(phase, this);
+        if (span != null) {
+            endPhaseSpan(null);
+            phaseSpan = tracer.StartSpan(phase.name(), span);
+        }
+        return (phaseNanos != null) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to a phase, commits its Flight Recorder event and ends its span; the stages of an
+     * operation run one after the other, so no lock is needed
+     * @param start the time returned by startPhase
+     */
+    void endPhase(RequestPhase phase, long start) {
+        PhaseEvent current = event;
+        if (current != null) {
+            event = null;
+            current.commit();
+        }
+        endPhaseSpan(null);
+        if (phaseNanos != null) {
+            phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Ends the EXCHANGE phase, adding the details of the HTTP exchange to its Flight Recorder event and span
+     * @param start the time returned by startPhase
+     */
+    void endExchange(long start, String url, int status, long requestBytes, long responseBytes) {
+        if (recorder != null) {
+            this.endpoint = url;
+            this.httpStatus = status;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+        if (phaseSpan != null) {
+            phaseSpan.SetAttribute("url.full", url);
+            phaseSpan.SetAttribute("http.response.status_code", status);
+            phaseSpan.SetAttribute("http.request.body.size", requestBytes);
+            phaseSpan.SetAttribute("http.response.body.size", responseBytes);
+        }
+        if (event instanceof PhaseEvent.HttpExchange) {
+            PhaseEvent.HttpExchange exchange = (PhaseEvent.HttpExchange) event;
+            exchange.url = url;
+            exchange.status = status;
+            exchange.requestBytes = requestBytes;
+            exchange.responseBytes = responseBytes;
+        }
+        endPhase(RequestPhase.EXCHANGE, start);
+    }
+
+    /**
+     * @return Whether the messages of the operation are to be kept in request and response for the SlowRequestRecorder
+     */
+    boolean isCapturingMessages() {
+        return recorder != null && recorder.isCaptureMessages();
+    }
+
+    /**
+     * Makes the span of the current phase, or else of the operation, the current context of the calling thread
+     * @return The scope, to be closed on the same thread
+     */
+    ITracer.Scope makeCurrent() {
+        ISpan current = (phaseSpan != null) ? phaseSpan : span;
+        return (current != null) ? current.MakeCurrent() : ITracer.Scope.None;
+    }
+
+    /**
+     * Records the endpoint the request is sent to
+     */
+    void setEndpoint(String url) {
+        if (span != null) {
+            setAttribute(span, "url.full", url);
+        }
+    }
+
+    /**
+     * @return false if the operation has neither a span nor phases to record, so that setResponse can be skipped
+     */
+    boolean isRecording() {
+        return span != null || phaseNanos != null;
+    }
+
+    /**
+     * Records the response; an error response marks the operation as failed with its errorCode
+     */
+    void setResponse(MessageInfo response) {
+        if (span != null && response.getMessageType() != null) {
+            span.SetAttribute("emandates.response_type", response.getMessageType());
+        }
+        if ((span == null && phaseNanos == null) || errorCode != null || !"AcquirerErrorRes".equals(response.getMessageType())) {
+            return;
+        }
+        String code = response.complete().getErrorCode();
+        errorCode = (code != null) ? code : "";
+        if (span != null) {
+            span.SetError(errorCode, null);
+            setAttribute(span, "emandates.error_code", code);
+        }
+    }
+
+    /**
+     * Marks the operation as failed; only the first error of an operation is recorded
+     */
+    void fail(Throwable ex) {
+        if ((span == null && phaseNanos == null) || errorCode != null) {
+            return;
+        }
+        errorCode = (ex instanceof AdmissionException) ? ((AdmissionException) ex).getErrorCode() : "";
+        if (span != null) {
+            endPhaseSpan(ex);
+            span.SetError(errorCode.isEmpty() ? ex.getClass().getName() : errorCode, ex);
+            if (!errorCode.isEmpty()) {
+                span.SetAttribute("emandates.error_code", errorCode);
+            }
+            span.SetAttribute("error.type", ex.getClass().getName());
+        }
+    }
+
+    /**
+     * Called before the request is sent; fails if the AdmissionQueue has dropped the request while it waited
+     */
+    void startSending() throws AdmissionException {
+        AdmissionQueue queue = admission;
+        if (queue != null) {
+            queue.startSending(this);
+        }
+    }
+
+    /**
+     * Called when the operation has completed, successfully or not
+     */
+    void complete() {
+        AdmissionQueue queue = admission;
+        if (queue != null) {
+            queue.release(this);
+        }
+        long nanos = (phaseNanos != null) ? System.nanoTime() - startNanos : 0;
+        if (phaseNanos != null && metrics.IsEnabled()) {
+            for (RequestPhase phase : RequestPhase.values()) {
+                if (phaseNanos[phase.ordinal()] > 0) {
+                    metrics.RecordPhase(operation, phase, phaseNanos[phase.ordinal()]);
+                }
+            }
+            if (errorCode != null) {
+                metrics.RecordError(operation, errorCode);
+            }
+            metrics.RecordOperation(operation, nanos);
+        }
+        if (recorder != null && recorder.isSlow(nanos)) {
+            recorder.record(new SlowRequestRecorder.Capture(System.currentTimeMillis(), operation, tenant, requestClass,
+                    transactionID, messageID, nanos, phaseNanos, endpoint, httpStatus, requestBytes, responseBytes,
+                    errorCode, request, response));
+        }
+        if (span != null) {
+            endPhaseSpan(null);
+            span.End();
+        }
+    }
+
+    /**
+     * Ends the span of the current phase, if any; a phase left by an exception is ended as failed
+     */
+    private void endPhaseSpan(Throwable ex) {
+        ISpan current = phaseSpan;
+        if (current != null) {
+            phaseSpan = null;
+            if (ex != null) {
+                current.SetError(ex.getClass().getName(), ex);
+            }
+            current.End();
+        }
+    }
+
+    private static void setAttribute(ISpan span, String key, String value) {
+        if (value != null) {
+            span.SetAttribute(key, value);
+        }
+    }
+}
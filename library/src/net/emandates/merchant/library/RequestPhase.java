@@ -0,0 +1,41 @@
+package net.emandates.merchant.library;
+
+/**
+ * A phase of a communicator operation, see IMetrics
+ */
+public enum RequestPhase {
+    /**
+     * Waiting for the AdmissionQueue and for a transport slot of the FairScheduler
+     */
+    QUEUE,
+
+    /**
+     * Building the request message with JAXB
+     */
+    BUILD,
+
+    /**
+     * Signing the request message
+     */
+    SIGN,
+
+    /**
+     * Validating the request and the response against the schemas
+     */
+    SCHEMA_VALIDATION,
+
+    /**
+     * Sending the request and receiving the response
+     */
+    EXCHANGE,
+
+    /**
+     * Verifying the signatures of the response
+     */
+    SIGNATURE_VERIFICATION,
+
+    /**
+     * Parsing the response into a response object
+     */
+    PARSE
+}
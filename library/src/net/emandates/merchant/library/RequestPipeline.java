@@ -0,0 +1,290 @@
+package net.emandates.merchant.library;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs communicator requests in three stages, each with its own thread pool and bounded queue: building and signing
+ * the request message, sending it to the acquirer, and verifying and parsing the response. The CPU-bound stages use
+ * one thread per processor; the transport stage uses many threads, so that requests waiting on the network do not
+ * hold up signing and verification. When a stage's queue is full, the thread handing work to it waits, which slows
+ * down submission instead of letting the queues grow. A pipeline can be shared by several communicators.
+ *
+ * Requests waiting to be sent wait in the pipeline's FairScheduler, which decides which request is sent next; the
+ * transport stage only runs requests the scheduler has granted a slot, so its queue does not reorder them. The
+ * scheduler allows as many exchanges as there are transport threads, and applies to the synchronous methods of the
+ * communicators using the pipeline as well. Setting its limit higher lets requests that were granted a slot wait for
+ * a transport thread in arrival order.
+ */
+public class RequestPipeline implements AutoCloseable, RequestPipelineMXBean {
+    /**
+     * A step of a request that may throw a checked exception
+     */
+    interface Step<T, U> {
+        U apply(T input) throws Exception;
+    }
+
+    private static final AtomicInteger pipelineNumber = new AtomicInteger();
+
+    private final Stage build;
+    private final Stage transport;
+    private final Stage verify;
+    private final FairScheduler scheduler = new FairScheduler();
+    private final int transportQueueCapacity;
+    private final Semaphore transportQueue;
+    private volatile AdmissionQueue admissionQueue;
+    private volatile IMetrics metrics = IMetrics.None;
+    private volatile ITracer tracer = ITracer.None;
+    private volatile SlowRequestRecorder slowRequestRecorder;
+
+    /**
+     * Creates a pipeline with one build and one verify thread per available processor, 256 transport threads and
+     * queues of 1024 requests per stage
+     */
+    public RequestPipeline() {
+        this(Runtime.getRuntime().availableProcessors(), 256, 1024);
+    }
+
+    /**
+     * @param cpuThreads number of threads of the build and of the verify stage
+     * @param transportThreads number of threads of the transport stage, i.e. the number of concurrent HTTP exchanges
+     * @param queueCapacity number of requests that can wait in the queue of each stage
+     */
+    public RequestPipeline(int cpuThreads, int transportThreads, int queueCapacity) {
+        int number = pipelineNumber.incrementAndGet();
+        build = new Stage("emandates-build-" + number, cpuThreads, queueCapacity);
+        // bounded by the scheduler's slots; the requests waiting for a slot are bounded by transportQueue
+        transport = new Stage("emandates-transport-" + number, transportThreads, new LinkedBlockingQueue<>());
+        verify = new Stage("emandates-verify-" + number, cpuThreads, queueCapacity);
+        transportQueueCapacity = queueCapacity;
+        transportQueue = new Semaphore(queueCapacity);
+        scheduler.setMaxConcurrent(transportThreads);
+    }
+
+    /**
+     * @return Number of requests waiting to be built and signed
+     */
+    public int getBuildQueueDepth() {
+        return build.getQueue().size();
+    }
+
+    /**
+     * @return Number of requests waiting to be sent, in the FairScheduler or for a transport thread
+     */
+    public int getTransportQueueDepth() {
+        return transportQueueCapacity - transportQueue.availablePermits();
+    }
+
+    /**
+     * @return Number of responses waiting to be verified and parsed
+     */
+    public int getVerifyQueueDepth() {
+        return verify.getQueue().size();
+    }
+
+    /**
+     * @return Number of threads of the transport stage, i.e. the maximum number of concurrent HTTP exchanges
+     */
+    public int getTransportThreads() {
+        return transport.getMaximumPoolSize();
+    }
+
+    /**
+     * @return Number of HTTP exchanges currently in progress
+     */
+    public int getActiveTransports() {
+        return transport.getActiveCount();
+    }
+
+    /**
+     * @return The scheduler that shares the transport among tenants and request classes
+     */
+    public FairScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return The queue that bounds the requests accepted by the pipeline, or null if the pipeline accepts every
+     * request
+     */
+    public AdmissionQueue getAdmissionQueue() {
+        return admissionQueue;
+    }
+
+    /**
+     * Sets the queue that bounds the requests accepted by the pipeline and by the synchronous methods of the
+     * communicators using the pipeline; requests already admitted complete against the queue that admitted them
+     * @param admissionQueue the queue, or null to accept every request
+     */
+    public void setAdmissionQueue(AdmissionQueue admissionQueue) {
+        this.admissionQueue = admissionQueue;
+    }
+
+    /**
+     * @return The metrics the operations of the communicators using the pipeline are recorded in
+     */
+    public IMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records the latencies of the operations of the communicators using the pipeline, synchronous and asynchronous,
+     * e.g. in a HistogramMetrics; operations already started are recorded in the metrics they started with
+     * @param metrics the metrics, or null to record nothing
+     */
+    public void setMetrics(IMetrics metrics) {
+        this.metrics = (metrics != null) ? metrics : IMetrics.None;
+    }
+
+    /**
+     * @return The tracer that creates the spans of the operations of the communicators using the pipeline
+     */
+    public ITracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Traces the operations of the communicators using the pipeline, synchronous and asynchronous; the span of an
+     * operation is a child of the context current on the thread that called it, also when its stages run on the
+     * pipeline's threads or on the threads of a bulk method
+     * @param tracer the tracer, or null to trace nothing
+     */
+    public void setTracer(ITracer tracer) {
+        this.tracer = (tracer != null) ? tracer : ITracer.None;
+    }
+
+    /**
+     * @return The recorder that captures slow operations, or null if they are not captured
+     */
+    public SlowRequestRecorder getSlowRequestRecorder() {
+        return slowRequestRecorder;
+    }
+
+    /**
+     * Captures the operations of the communicators using the pipeline that exceed the recorder's threshold;
+     * operations already started are captured by the recorder they started with
+     * @param slowRequestRecorder the recorder, or null to capture nothing
+     */
+    public void setSlowRequestRecorder(SlowRequestRecorder slowRequestRecorder) {
+        this.slowRequestRecorder = slowRequestRecorder;
+    }
+
+    /**
+     * Stops accepting requests; requests already queued are completed, except those still waiting for a transport
+     * slot, which fail.
+     */
+    @Override
+    public void close() {
+        build.shutdown();
+        transport.shutdown();
+        verify.shutdown();
+    }
+
+    <R> CompletableFuture<R> submit(RequestContext context, Callable<String> buildStep, Step<String, String> transportStep,
+            Step<String, R> verifyStep, Function<Throwable, R> onError) {
+        CompletableFuture<String> built;
+        try {
+            built = CompletableFuture.supplyAsync(() -> run(buildStep), build);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.completedFuture(onError.apply(ex));
+        }
+        CompletableFuture<String> sent = built.thenCompose(xml -> schedule(context, () -> transportStep.apply(xml)));
+        CompletableFuture<R> parsed = sent.thenApplyAsync(response -> run(() -> verifyStep.apply(response)), verify);
+        return parsed.exceptionally(ex -> onError.apply(unwrap(ex)));
+    }
+
+    /**
+     * Hands a transport step to the FairScheduler, and runs it on the transport stage once the scheduler grants it a
+     * slot; the calling thread waits while queueCapacity requests are waiting to be sent
+     */
+    private CompletableFuture<String> schedule(RequestContext context, Callable<String> step) {
+        try {
+            transportQueue.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ex);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        long start = context.startPhase(RequestPhase.QUEUE);
+        scheduler.acquire(context.getTenant(), context.getRequestClass(), () -> {
+            try {
+                transport.execute(() -> {
+                    transportQueue.release();
+                    context.endPhase(RequestPhase.QUEUE, start);
+                    try {
+                        result.complete(step.call());
+                    } catch (Throwable ex) {
+                        result.completeExceptionally(ex);
+                    } finally {
+                        scheduler.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                transportQueue.release();
+                scheduler.release();
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    private static <T> T run(Callable<T> step) {
+        try {
+            return step.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        while ((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        return ex;
+    }
+
+    private static class Stage extends ThreadPoolExecutor {
+        Stage(String name, int threads, int queueCapacity) {
+            this(name, threads, new ArrayBlockingQueue<>(queueCapacity));
+        }
+
+        Stage(String name, int threads, BlockingQueue<Runnable> queue) {
+            super(threads, threads, 60, TimeUnit.SECONDS, queue, newThreadFactory(name),
+                    (task, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("request pipeline is closed");
+                        }
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(ex);
+                        }
+                    });
+            allowCoreThreadTimeOut(true);
+        }
+
+        private static ThreadFactory newThreadFactory(String name) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return r -> {
+                Thread t = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package net.emandates.merchant.library;
+
+/**
+ * The management interface of a RequestPipeline, see JmxRegistration
+ */
+public interface RequestPipelineMXBean {
+    int getBuildQueueDepth();
+
+    int getTransportQueueDepth();
+
+    int getVerifyQueueDepth();
+
+    int getActiveTransports();
+
+    int getTransportThreads();
+}
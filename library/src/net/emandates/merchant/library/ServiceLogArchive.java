@@ -0,0 +1,657 @@
+package net.emandates.merchant.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Stores service logs in a few large files instead of a file per message. Messages are appended to the current
+ * segment file (NNNNNN.seg) as length-prefixed records: the length of the message (int), the time it was logged
+ * (long, milliseconds since the epoch) and the message as UTF-8. When a segment reaches the segment size a new one is
+ * started. For every record an entry is appended to the segment's index file (NNNNNN.idx) with the record's offset,
+ * length and time, and the message type, transactionID, messageID and errorCode of the message.
+ *
+ * A compressed archive writes block-compressed segments (NNNNNN.sgz, see ServiceLogSegment) instead: records are
+ * collected in blocks of 64 kB, which are compressed with Deflater when full, when the segment is finished and when
+ * the archive is closed. Flushing does not end a block: the records of the unfinished block are appended as they are
+ * to the segment's tail file (NNNNNN.tail), which is deleted when the block has been written, and compressed into a
+ * block when the archive is opened again after a crash. Offsets in the index are offsets in the uncompressed
+ * contents, so a message is found by inflating only the block it is in. An archive can hold segments of both kinds;
+ * the segment size is the uncompressed size of a segment.
+ *
+ * Messages can be found by transactionID, messageID or time. Only the index of the current segment is kept in memory;
+ * when a segment is finished, a sorted lookup file (NNNNNN.key, see ServiceLogIndex) is written next to its index, and
+ * the messages of finished segments are found by binary search in the memory-mapped lookup and index files. Messages
+ * are read from memory-mapped segments. Opening an archive loads the index of the last segment and checks the lookup
+ * files of the others; a segment whose index is incomplete, e.g. after a crash, is indexed again from its records,
+ * and a partly written last record is cut off.
+ *
+ * To write the service logs to an archive, pass it to ServiceLogWriter.setArchive.
+ */
+public class ServiceLogArchive implements AutoCloseable {
+    /**
+     * The index entry of a message in the archive
+     */
+    public static class Entry {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long timestamp;
+        private final String messageType;
+        private final String transactionID;
+        private final String messageID;
+        private final String errorCode;
+
+        Entry(int segment, long offset, int length, long timestamp, String messageType, String transactionID, String messageID,
+                String errorCode) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.timestamp = timestamp;
+            this.messageType = messageType;
+            this.transactionID = transactionID;
+            this.messageID = messageID;
+            this.errorCode = errorCode;
+        }
+
+        /**
+         * @return Number of the segment holding the message
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return Offset of the record in the segment
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return Length of the message in bytes
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return Time the message was logged, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return The name of the message's root element, e.g. AcquirerTrxReq
+         */
+        public String getMessageType() {
+            return messageType;
+        }
+
+        /**
+         * @return The transactionID of the message, or null
+         */
+        public String getTransactionID() {
+            return transactionID;
+        }
+
+        /**
+         * @return The MsgId of the message's pain message, or null
+         */
+        public String getMessageID() {
+            return messageID;
+        }
+
+        /**
+         * @return The errorCode of an error response, or null
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+    }
+
+    static final int RecordHeaderLength = 12;
+    private static final long DefaultSegmentSize = 64L * 1024 * 1024;
+    private static final int BlockSize = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean compressed;
+    private final TreeMap<Integer, ServiceLogIndex> finished = new TreeMap<>();
+    private final List<Entry> current = new ArrayList<>();
+    private final Map<String, List<Entry>> byTransactionID = new HashMap<>();
+    private final Map<String, List<Entry>> byMessageID = new HashMap<>();
+    private final Map<Integer, ServiceLogSegment> readers = new ConcurrentHashMap<>();
+    private final Block block = new Block(BlockSize + 16 * 1024);
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private Deflater deflater;
+    private byte[] deflated = new byte[BlockSize];
+    private int segment;
+    private long position;
+    private DataOutputStream out;
+    private DataOutputStream indexOut;
+    private DataOutputStream tailOut;
+    private int tailLength;
+    private ServiceLogSegment currentReader;
+    private boolean closed;
+
+    /**
+     * Opens an uncompressed archive with segments of 64 MB
+     * @param directory the directory of the archive, created if it does not exist
+     * @throws IOException if the indexes cannot be read
+     */
+    public ServiceLogArchive(Path directory) throws IOException {
+        this(directory, DefaultSegmentSize, false);
+    }
+
+    /**
+     * Opens an uncompressed archive
+     * @param directory the directory of the archive, created if it does not exist
+     * @param segmentSize size in bytes at which a new segment is started; at most 2 GB
+     * @throws IOException if the indexes cannot be read
+     */
+    public ServiceLogArchive(Path directory, long segmentSize) throws IOException {
+        this(directory, segmentSize, false);
+    }
+
+    /**
+     * @param directory the directory of the archive, created if it does not exist
+     * @param segmentSize uncompressed size in bytes at which a new segment is started; at most 2 GB
+     * @param compressed whether new segments are block-compressed
+     * @throws IOException if the indexes cannot be read
+     */
+    public ServiceLogArchive(Path directory, long segmentSize, boolean compressed) throws IOException {
+        if (segmentSize < 1 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentSize must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compressed = compressed;
+        Files.createDirectories(directory);
+
+        List<Integer> numbers = segmentNumbers(directory);
+        boolean lastCompressed = compressed;
+        for (int number : numbers) {
+            boolean last = number == numbers.get(numbers.size() - 1);
+            ServiceLogIndex index = last ? null : ServiceLogIndex.Open(directory, number);
+            if (index != null) {
+                finished.put(number, index);
+                continue;
+            }
+
+            lastCompressed = isCompressed(directory, number);
+            Path file = segmentFile(directory, number, lastCompressed);
+            if (lastCompressed) {
+                recoverTail(number, file);
+            }
+            ServiceLogSegment reader = ServiceLogSegment.Open(file, number, lastCompressed);
+            List<Entry> entries = readIndex(directory, number);
+            if (end(entries) != reader.getSize() || reader.getValidLength() != Files.size(file)) {
+                entries = reindex(reader, file);
+            }
+            if (!last) {
+                finished.put(number, ServiceLogIndex.Write(directory, number));
+                continue;
+            }
+            for (Entry entry : entries) {
+                add(entry);
+            }
+            position = reader.getSize();
+        }
+        segment = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1);
+        if (!numbers.isEmpty() && lastCompressed != compressed) {
+            roll();
+        }
+    }
+
+    /**
+     * @return The directory of the archive
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Whether new segments are block-compressed
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Appends a message to the current segment; the message is on disk after the next flush()
+     * @param timestamp time the message was logged, in milliseconds since the epoch
+     * @param xml the message
+     * @return the index entry of the message
+     * @throws IOException if the message cannot be written
+     */
+    public Entry append(long timestamp, String xml) throws IOException {
+        return append(timestamp, MessageInfo.Scan(xml));
+    }
+
+    /**
+     * Appends a logged message to the current segment; the message is only read for the index values the logger did
+     * not know. The message is on disk after the next flush()
+     * @param timestamp time the message was logged, in milliseconds since the epoch
+     * @param message the message
+     * @return the index entry of the message
+     * @throws IOException if the message cannot be written
+     */
+    public synchronized Entry append(long timestamp, MessageInfo message) throws IOException {
+        if (closed) {
+            throw new IOException("archive is closed");
+        }
+        MessageInfo info = message.complete();
+        byte[] bytes = info.getPayload();
+        if (position > 0 && position + RecordHeaderLength + bytes.length > segmentSize) {
+            roll();
+        }
+        if (out == null) {
+            open();
+        }
+
+        Entry entry = new Entry(segment, position, bytes.length, timestamp, info.getMessageType(), info.getTransactionID(),
+                info.getMessageID(), info.getErrorCode());
+        DataOutputStream records = compressed ? blockOut : out;
+        records.writeInt(bytes.length);
+        records.writeLong(timestamp);
+        records.write(bytes);
+        position += RecordHeaderLength + bytes.length;
+        writeIndexEntry(indexOut, entry);
+        if (compressed && block.size() >= BlockSize) {
+            writeBlock();
+        }
+
+        add(entry);
+        return entry;
+    }
+
+    /**
+     * Writes the appended messages and their index entries to the disk; in a compressed archive, the records of the
+     * unfinished block are written to the tail file, and the block is not ended
+     * @throws IOException if they cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+            if (compressed && block.size() > tailLength) {
+                if (tailOut == null) {
+                    tailOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tailFile(directory, segment),
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), 8192));
+                    tailOut.writeLong(position - block.size());
+                    tailLength = 0;
+                }
+                tailOut.write(block.array(), tailLength, block.size() - tailLength);
+                tailOut.flush();
+                tailLength = block.size();
+            }
+            indexOut.flush();
+        }
+    }
+
+    /**
+     * @param transactionID a transactionID
+     * @return The entries of the messages with the transactionID, in the order they were logged
+     * @throws IOException if the index of a finished segment cannot be read
+     */
+    public synchronized List<Entry> findByTransactionID(String transactionID) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        for (ServiceLogIndex index : finished.values()) {
+            index.findByTransactionID(transactionID, result);
+        }
+        result.addAll(byTransactionID.getOrDefault(transactionID, Collections.emptyList()));
+        return result;
+    }
+
+    /**
+     * @param messageID a MsgId
+     * @return The entries of the messages with the MsgId, in the order they were logged
+     * @throws IOException if the index of a finished segment cannot be read
+     */
+    public synchronized List<Entry> findByMessageID(String messageID) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        for (ServiceLogIndex index : finished.values()) {
+            index.findByMessageID(messageID, result);
+        }
+        result.addAll(byMessageID.getOrDefault(messageID, Collections.emptyList()));
+        return result;
+    }
+
+    /**
+     * @param from start of the period, in milliseconds since the epoch (inclusive)
+     * @param to end of the period, in milliseconds since the epoch (exclusive)
+     * @return The entries of the messages logged in the period, in the order they were logged
+     * @throws IOException if the index of a finished segment cannot be read
+     */
+    public synchronized List<Entry> findByTime(long from, long to) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        for (ServiceLogIndex index : finished.values()) {
+            index.findByTime(from, to, result);
+        }
+        for (Entry entry : current) {
+            if (entry.timestamp >= from && entry.timestamp < to) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a message; segments that are no longer written are memory-mapped once and then read without locking. The
+     * current segment is mapped again only to read a message appended after it was last mapped, and a message of the
+     * unfinished block of a compressed segment is read from memory
+     * @param entry the index entry of the message
+     * @return the message
+     * @throws IOException if the segment cannot be read
+     */
+    public String read(Entry entry) throws IOException {
+        ServiceLogSegment reader;
+        synchronized (this) {
+            if (entry.segment == segment) {
+                long blockStart = position - block.size();
+                if (compressed && entry.offset >= blockStart) {
+                    return new String(block.array(), (int) (entry.offset - blockStart) + RecordHeaderLength, entry.length,
+                            StandardCharsets.UTF_8);
+                }
+                if (currentReader == null || entry.offset >= currentReader.getSize()) {
+                    if (out != null) {
+                        out.flush();
+                    }
+                    currentReader = ServiceLogSegment.Open(segmentFile(directory, segment, compressed), segment, compressed);
+                }
+                reader = currentReader;
+            } else {
+                reader = readers.get(entry.segment);
+                if (reader == null) {
+                    boolean z = isCompressed(directory, entry.segment);
+                    reader = ServiceLogSegment.Open(segmentFile(directory, entry.segment, z), entry.segment, z);
+                    readers.put(entry.segment, reader);
+                }
+            }
+        }
+        return new String(reader.read(entry.offset), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flushes and closes the current segment
+     * @throws IOException if it cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegment();
+        readers.clear();
+        currentReader = null;
+    }
+
+    /**
+     * @return The numbers of the segments in a directory, in ascending order
+     */
+    static List<Integer> segmentNumbers(Path directory) throws IOException {
+        TreeSet<Integer> numbers = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{seg,sgz}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(name.substring(0, name.length() - 4)));
+                } catch (NumberFormatException ex) {
+                    // not a segment
+                }
+            }
+        }
+        return new ArrayList<>(numbers);
+    }
+
+    static boolean isCompressed(Path directory, int number) {
+        return Files.exists(segmentFile(directory, number, true));
+    }
+
+    static Path segmentFile(Path directory, int number, boolean compressed) {
+        return directory.resolve(String.format(compressed ? "%06d.sgz" : "%06d.seg", number));
+    }
+
+    static Path indexFile(Path directory, int number) {
+        return directory.resolve(String.format("%06d.idx", number));
+    }
+
+    static Path tailFile(Path directory, int number) {
+        return directory.resolve(String.format("%06d.tail", number));
+    }
+
+    /**
+     * Reads the index of a segment; a partly written last entry is ignored
+     */
+    static List<Entry> readIndex(Path directory, int number) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Path file = indexFile(directory, number);
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                entries.add(readIndexEntry(in, number));
+            }
+        } catch (EOFException ex) {
+            // end of the index, or a partly written last entry
+        }
+        return entries;
+    }
+
+    /**
+     * Indexes a segment from its records, without writing anything
+     */
+    static List<Entry> scan(ServiceLogSegment reader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        reader.scan((offset, timestamp, message) -> {
+            MessageInfo info = MessageInfo.Scan(new String(message, StandardCharsets.UTF_8));
+            entries.add(new Entry(reader.getNumber(), offset, message.length, timestamp, info.getMessageType(),
+                    info.getTransactionID(), info.getMessageID(), info.getErrorCode()));
+        });
+        return entries;
+    }
+
+    /**
+     * @return The offset after the last record of the entries
+     */
+    static long end(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        Entry last = entries.get(entries.size() - 1);
+        return last.offset + RecordHeaderLength + last.length;
+    }
+
+    /**
+     * Finishes the current segment, writing its lookup file, and starts the next one
+     */
+    private void roll() throws IOException {
+        closeSegment();
+        finished.put(segment, ServiceLogIndex.Write(directory, segment));
+        current.clear();
+        byTransactionID.clear();
+        byMessageID.clear();
+        currentReader = null;
+        segment++;
+        position = 0;
+    }
+
+    private void open() throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segmentFile(directory, segment, compressed),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 65536));
+        indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 8192));
+    }
+
+    private void closeSegment() throws IOException {
+        if (out != null) {
+            writeBlock();
+            out.close();
+            indexOut.close();
+            out = null;
+        }
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * Compresses the records collected since the last block and writes them as a block, after which the tail file is
+     * no longer needed
+     */
+    private void writeBlock() throws IOException {
+        if (!compressed || block.size() == 0) {
+            return;
+        }
+        writeBlock(out, block.array(), 0, block.size());
+        block.reset();
+        if (tailOut != null) {
+            out.flush();
+            tailOut.close();
+            tailOut = null;
+            tailLength = 0;
+            Files.delete(tailFile(directory, segment));
+        }
+    }
+
+    private void writeBlock(DataOutputStream target, byte[] records, int offset, int length) throws IOException {
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        deflater.reset();
+        deflater.setInput(records, offset, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == deflated.length) {
+                deflated = Arrays.copyOf(deflated, deflated.length * 2);
+            }
+            compressedLength += deflater.deflate(deflated, compressedLength, deflated.length - compressedLength);
+        }
+        target.writeInt(compressedLength);
+        target.writeInt(length);
+        target.write(deflated, 0, compressedLength);
+    }
+
+    /**
+     * Writes the complete records of a segment's tail file, left by a crash, as a block of the segment, unless the
+     * block was written before the crash; the tail file is deleted
+     */
+    private void recoverTail(int number, Path file) throws IOException {
+        Path tail = tailFile(directory, number);
+        if (!Files.exists(tail)) {
+            return;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(tail));
+        if (content.remaining() >= 8) {
+            long start = content.getLong();
+            int length = 0;
+            while (content.remaining() - length >= RecordHeaderLength) {
+                int recordLength = content.getInt(content.position() + length);
+                if (recordLength < 0 || content.remaining() - length - RecordHeaderLength < recordLength) {
+                    break;
+                }
+                length += RecordHeaderLength + recordLength;
+            }
+            ServiceLogSegment reader = ServiceLogSegment.Open(file, number, true);
+            if (length > 0 && start == reader.getSize()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(reader.getValidLength());
+                }
+                try (DataOutputStream target = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.APPEND)))) {
+                    writeBlock(target, content.array(), content.position(), length);
+                }
+            }
+        }
+        Files.delete(tail);
+    }
+
+    private void add(Entry entry) {
+        current.add(entry);
+        if (entry.transactionID != null) {
+            byTransactionID.computeIfAbsent(entry.transactionID, k -> new ArrayList<>(2)).add(entry);
+        }
+        if (entry.messageID != null) {
+            byMessageID.computeIfAbsent(entry.messageID, k -> new ArrayList<>(2)).add(entry);
+        }
+    }
+
+    /**
+     * Indexes a segment from its records and cuts off a partly written last record or block
+     */
+    private List<Entry> reindex(ServiceLogSegment reader, Path file) throws IOException {
+        List<Entry> entries = scan(reader);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(reader.getValidLength());
+        }
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                indexFile(directory, reader.getNumber()))))) {
+            for (Entry entry : entries) {
+                writeIndexEntry(index, entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The records of the unfinished block of a compressed segment
+     */
+    private static class Block extends ByteArrayOutputStream {
+        Block(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static void writeIndexEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.offset);
+        out.writeInt(entry.length);
+        out.writeLong(entry.timestamp);
+        out.writeUTF(nonNull(entry.messageType));
+        out.writeUTF(nonNull(entry.transactionID));
+        out.writeUTF(nonNull(entry.messageID));
+        out.writeUTF(nonNull(entry.errorCode));
+    }
+
+    static Entry readIndexEntry(DataInputStream in, int number) throws IOException {
+        return new Entry(number, in.readLong(), in.readInt(), in.readLong(), nullIfEmpty(in.readUTF()), nullIfEmpty(in.readUTF()),
+                nullIfEmpty(in.readUTF()), nullIfEmpty(in.readUTF()));
+    }
+
+    private static String nonNull(String value) {
+        return (value != null) ? value : "";
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
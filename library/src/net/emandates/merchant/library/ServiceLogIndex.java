@@ -0,0 +1,234 @@
+package net.emandates.merchant.library;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the messages of a segment of a ServiceLogArchive that is no longer written, without keeping its index in
+ * memory. The segment's lookup file (NNNNNN.key) has a header (the lengths of the segment and index files it was
+ * written for, the time of the first and last message and the number of keys) followed by a fixed-width record for
+ * every transactionID and messageID in the index: a 64-bit hash of the key and the position of its index entry,
+ * sorted by hash and then by position. A lookup binary-searches the memory-mapped lookup file and reads the index
+ * entries it points to from the memory-mapped index file, skipping entries of which only the hash matches.
+ *
+ * A lookup file whose lengths do not match the files of its segment is stale, and is written again. Instances can be
+ * used by any number of threads.
+ */
+final class ServiceLogIndex {
+    private static final int HeaderLength = 36;
+    private static final int KeyLength = 16;
+    private static final char TransactionKey = 'T';
+    private static final char MessageKey = 'M';
+
+    private final int number;
+    private final ByteBuffer keys;
+    private final ByteBuffer index;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final int count;
+
+    private ServiceLogIndex(int number, ByteBuffer keys, ByteBuffer index) {
+        this.number = number;
+        this.keys = keys;
+        this.index = index;
+        this.firstTimestamp = keys.getLong(16);
+        this.lastTimestamp = keys.getLong(24);
+        this.count = keys.getInt(32);
+    }
+
+    /**
+     * Maps the lookup file of a segment
+     * @return the lookup file, or null if it does not exist or is stale
+     */
+    static ServiceLogIndex Open(Path directory, int number) throws IOException {
+        Path file = keyFile(directory, number);
+        if (!Files.exists(file) || Files.size(file) < HeaderLength) {
+            return null;
+        }
+        ByteBuffer keys = map(file);
+        Path segment = ServiceLogArchive.segmentFile(directory, number, ServiceLogArchive.isCompressed(directory, number));
+        Path indexFile = ServiceLogArchive.indexFile(directory, number);
+        if (keys.getLong(0) != size(segment) || keys.getLong(8) != size(indexFile)
+                || keys.capacity() != HeaderLength + (long) keys.getInt(32) * KeyLength) {
+            return null;
+        }
+        return new ServiceLogIndex(number, keys, map(indexFile));
+    }
+
+    /**
+     * Writes the lookup file of a segment from its index, which must be complete, and maps it
+     */
+    static ServiceLogIndex Write(Path directory, int number) throws IOException {
+        Path segment = ServiceLogArchive.segmentFile(directory, number, ServiceLogArchive.isCompressed(directory, number));
+        Path indexFile = ServiceLogArchive.indexFile(directory, number);
+        ByteBuffer index = map(indexFile);
+        List<long[]> records = new ArrayList<>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        DataInputStream in = new DataInputStream(new BufferInput(index));
+        try {
+            while (index.hasRemaining()) {
+                long position = index.position();
+                ServiceLogArchive.Entry entry = ServiceLogArchive.readIndexEntry(in, number);
+                first = Math.min(first, entry.getTimestamp());
+                last = Math.max(last, entry.getTimestamp());
+                if (entry.getTransactionID() != null) {
+                    records.add(new long[] { hash(TransactionKey, entry.getTransactionID()), position });
+                }
+                if (entry.getMessageID() != null) {
+                    records.add(new long[] { hash(MessageKey, entry.getMessageID()), position });
+                }
+            }
+        } catch (EOFException ex) {
+            // a partly written last entry, which is not looked up
+        }
+        records.sort(Comparator.<long[]>comparingLong(r -> r[0]).thenComparingLong(r -> r[1]));
+
+        Path file = keyFile(directory, number);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 65536))) {
+            out.writeLong(size(segment));
+            out.writeLong(size(indexFile));
+            out.writeLong(first);
+            out.writeLong(last);
+            out.writeInt(records.size());
+            for (long[] record : records) {
+                out.writeLong(record[0]);
+                out.writeLong(record[1]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return Open(directory, number);
+    }
+
+    static Path keyFile(Path directory, int number) {
+        return directory.resolve(String.format("%06d.key", number));
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    /**
+     * Adds the entries of the messages with a transactionID to the result, in the order they were logged
+     */
+    void findByTransactionID(String transactionID, List<ServiceLogArchive.Entry> result) throws IOException {
+        find(TransactionKey, transactionID, result);
+    }
+
+    /**
+     * Adds the entries of the messages with a MsgId to the result, in the order they were logged
+     */
+    void findByMessageID(String messageID, List<ServiceLogArchive.Entry> result) throws IOException {
+        find(MessageKey, messageID, result);
+    }
+
+    /**
+     * Adds the entries of the messages logged in a period to the result, reading the index only if the period
+     * overlaps the times of the segment
+     */
+    void findByTime(long from, long to, List<ServiceLogArchive.Entry> result) throws IOException {
+        if (lastTimestamp < from || firstTimestamp >= to) {
+            return;
+        }
+        ByteBuffer entries = index.duplicate();
+        DataInputStream in = new DataInputStream(new BufferInput(entries));
+        try {
+            while (entries.hasRemaining()) {
+                ServiceLogArchive.Entry entry = ServiceLogArchive.readIndexEntry(in, number);
+                if (entry.getTimestamp() >= from && entry.getTimestamp() < to) {
+                    result.add(entry);
+                }
+            }
+        } catch (EOFException ex) {
+            // a partly written last entry
+        }
+    }
+
+    private void find(char kind, String key, List<ServiceLogArchive.Entry> result) throws IOException {
+        long hash = hash(kind, key);
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys.getLong(HeaderLength + middle * KeyLength) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < count && keys.getLong(HeaderLength + i * KeyLength) == hash; i++) {
+            ByteBuffer entries = index.duplicate();
+            entries.position((int) keys.getLong(HeaderLength + i * KeyLength + 8));
+            ServiceLogArchive.Entry entry = ServiceLogArchive.readIndexEntry(new DataInputStream(new BufferInput(entries)), number);
+            if (key.equals((kind == TransactionKey) ? entry.getTransactionID() : entry.getMessageID())) {
+                result.add(entry);
+            }
+        }
+    }
+
+    // FNV-1a over the kind and the characters of the key
+    private static long hash(char kind, String key) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ kind) * 0x100000001b3L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long size(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads a byte buffer from its position, for DataInputStream
+     */
+    private static class BufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
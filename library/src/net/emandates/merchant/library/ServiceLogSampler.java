@@ -0,0 +1,162 @@
+package net.emandates.merchant.library;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which operations have their raw XML messages written to the service logs, see
+ * ServiceLogWriter.setSampler. The request and response of an operation are logged together: a percentage of the
+ * operations is logged, and every operation that fails, receives an error response or is about one of the traced
+ * transactionIDs or MsgIds is logged, whatever the percentage.
+ *
+ * When the writer's queue fills up or requests get slow, the sampler throttles: once a second it halves the percentage
+ * it logs while either is over its threshold, down to 1/64 of the configured percentage, and doubles it again while
+ * both are under it.
+ */
+public class ServiceLogSampler implements ServiceLogSamplerMXBean {
+    private static final long AdjustIntervalNanos = 1000000000L;
+    private static final int MaxThrottle = 64;
+
+    private final Set<String> traced = ConcurrentHashMap.newKeySet();
+    private volatile double percentage;
+    private volatile double queueThreshold = 0.5;
+    private volatile long latencyThresholdMillis;
+    private volatile int throttle = 1;
+    private volatile long latencyNanos;
+    private volatile long adjustedNanos = System.nanoTime();
+
+    /**
+     * @param percentage percentage of the operations whose messages are logged, from 0 to 100
+     */
+    public ServiceLogSampler(double percentage) {
+        setPercentage(percentage);
+    }
+
+    /**
+     * @param percentage percentage of the operations whose messages are logged, from 0 to 100
+     */
+    public void setPercentage(double percentage) {
+        this.percentage = Math.max(0, Math.min(100, percentage));
+    }
+
+    /**
+     * @return Percentage of the operations whose messages are logged when the sampler does not throttle
+     */
+    public double getPercentage() {
+        return percentage;
+    }
+
+    /**
+     * @return Percentage of the operations whose messages are logged now
+     */
+    public double getEffectivePercentage() {
+        return percentage / throttle;
+    }
+
+    /**
+     * @param queueThreshold fill ratio of the writer's queue, from 0 to 1, above which the sampler throttles; defaults
+     * to 0.5
+     */
+    public void setQueueThreshold(double queueThreshold) {
+        this.queueThreshold = queueThreshold;
+    }
+
+    public double getQueueThreshold() {
+        return queueThreshold;
+    }
+
+    /**
+     * @param latencyThresholdMillis average request latency in milliseconds above which the sampler throttles, or 0 to
+     * ignore the latency; defaults to 0
+     */
+    public void setLatencyThresholdMillis(long latencyThresholdMillis) {
+        this.latencyThresholdMillis = latencyThresholdMillis;
+    }
+
+    public long getLatencyThresholdMillis() {
+        return latencyThresholdMillis;
+    }
+
+    /**
+     * Logs every message about a transaction
+     * @param id a transactionID, or the MsgId of a new mandate, amendment or cancellation
+     */
+    public void trace(String id) {
+        traced.add(id);
+    }
+
+    /**
+     * @param id a transactionID or MsgId passed to trace
+     */
+    public void untrace(String id) {
+        traced.remove(id);
+    }
+
+    /**
+     * @return The traced transactionIDs and MsgIds
+     */
+    public Set<String> getTraced() {
+        return traced;
+    }
+
+    /**
+     * Decides whether the messages of an operation are logged; the decision is made once per operation, except that
+     * an error response or a traced transaction is always logged
+     * @param context the operation
+     * @param message the message about to be logged
+     * @param writer the writer the message would be queued on
+     * @return true if the message is logged
+     */
+    boolean sample(RequestContext context, MessageInfo message, ServiceLogWriter writer) {
+        if (message.getDirection() == MessageInfo.Direction.RESPONSE) {
+            long nanos = System.nanoTime() - context.getStartNanos();
+            latencyNanos += (nanos - latencyNanos) / 8;
+        }
+        adjust(writer);
+
+        if (!traced.isEmpty() && isTraced(context, message)) {
+            return true;
+        }
+        if (message.getMessageType() != null && message.getMessageType().endsWith("ErrorRes")) {
+            return true;
+        }
+        synchronized (context) {
+            if (context.sampled == null) {
+                context.sampled = ThreadLocalRandom.current().nextDouble() * 100 < getEffectivePercentage();
+            }
+            return context.sampled;
+        }
+    }
+
+    private boolean isTraced(RequestContext context, MessageInfo message) {
+        if ((context.getTransactionID() != null && traced.contains(context.getTransactionID()))
+                || (context.getMessageID() != null && traced.contains(context.getMessageID()))) {
+            return true;
+        }
+        // a new mandate's transactionID is only known from its response
+        if (message.getDirection() == MessageInfo.Direction.RESPONSE && context.getTransactionID() == null) {
+            String transactionID = MessageInfo.Scan(message.getContent()).getTransactionID();
+            return transactionID != null && traced.contains(transactionID);
+        }
+        return false;
+    }
+
+    private void adjust(ServiceLogWriter writer) {
+        long now = System.nanoTime();
+        long adjusted = adjustedNanos;
+        if (now - adjusted < AdjustIntervalNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (adjustedNanos != adjusted) {
+                return;
+            }
+            adjustedNanos = now;
+            long latencyThreshold = latencyThresholdMillis;
+            boolean overloaded = writer.getQueueDepth() > writer.getCapacity() * queueThreshold
+                    || (latencyThreshold > 0 && latencyNanos / 1000000 > latencyThreshold);
+            throttle = overloaded ? Math.min(MaxThrottle, throttle * 2) : Math.max(1, throttle / 2);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package net.emandates.merchant.library;
+
+import java.util.Set;
+
+/**
+ * The management interface of a ServiceLogSampler, see JmxRegistration; the percentage and the thresholds are
+ * writable, and transactions can be traced and untraced
+ */
+public interface ServiceLogSamplerMXBean {
+    double getPercentage();
+
+    void setPercentage(double percentage);
+
+    double getEffectivePercentage();
+
+    double getQueueThreshold();
+
+    void setQueueThreshold(double queueThreshold);
+
+    long getLatencyThresholdMillis();
+
+    void setLatencyThresholdMillis(long latencyThresholdMillis);
+
+    Set<String> getTraced();
+
+    void trace(String id);
+
+    void untrace(String id);
+}
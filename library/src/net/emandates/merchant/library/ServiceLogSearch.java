@@ -0,0 +1,273 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches the segments of a ServiceLogArchive, e.g. a copy of it on another machine, without opening the archive for
+ * writing. Segments are searched in parallel on a fork/join pool; each segment is filtered on its index, or on its
+ * records if the index is missing or incomplete. Criteria that are not set match every message.
+ *
+ * Run from the command line:
+ * java -cp merchant.library.jar net.emandates.merchant.library.ServiceLogSearch directory [--transactionID id]
+ * [--type messageType] [--errorCode code] [--from date] [--to date] [--threads n] [--messages]
+ *
+ * Dates are yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss in the local time zone, or an ISO-8601 instant; --to is exclusive. Every
+ * matching message is printed as a line with its time, segment and offset, type, transactionID, messageID and
+ * errorCode; --messages prints the message itself after the line.
+ */
+public class ServiceLogSearch {
+    private final Path directory;
+    private final Map<Integer, ServiceLogSegment> readers = new ConcurrentHashMap<>();
+    private String transactionID;
+    private String messageType;
+    private String errorCode;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param directory the directory of the archive
+     */
+    public ServiceLogSearch(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param transactionID only match messages with this transactionID
+     */
+    public void setTransactionID(String transactionID) {
+        this.transactionID = transactionID;
+    }
+
+    /**
+     * @param messageType only match messages with this root element name, e.g. AcquirerStatusRes
+     */
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    /**
+     * @param errorCode only match error responses with this errorCode
+     */
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @param from only match messages logged at or after this time, in milliseconds since the epoch
+     * @param to only match messages logged before this time, in milliseconds since the epoch
+     */
+    public void setPeriod(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param parallelism number of segments searched at the same time; defaults to the number of available processors
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return The entries of the matching messages, ordered by time
+     * @throws IOException if a segment or index cannot be read
+     */
+    public List<ServiceLogArchive.Entry> search() throws IOException {
+        List<Integer> numbers = ServiceLogArchive.segmentNumbers(directory);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ServiceLogArchive.Entry> result = pool.invoke(new SearchTask(numbers, 0, numbers.size()));
+            result.sort(Comparator.comparingLong(ServiceLogArchive.Entry::getTimestamp));
+            return result;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param entry an entry returned by search()
+     * @return the message
+     * @throws IOException if the segment cannot be read
+     */
+    public String read(ServiceLogArchive.Entry entry) throws IOException {
+        return new String(reader(entry.getSegment()).read(entry.getOffset()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs a search from the command line, see the class description
+     * @param args the directory and the criteria
+     * @throws IOException if a segment or index cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        if (!Files.isDirectory(directory)) {
+            System.err.println(directory + " is not a directory");
+            System.exit(2);
+        }
+
+        ServiceLogSearch search = new ServiceLogSearch(directory);
+        boolean messages = false;
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--transactionID":
+                        search.setTransactionID(args[++i]);
+                        break;
+                    case "--type":
+                        search.setMessageType(args[++i]);
+                        break;
+                    case "--errorCode":
+                        search.setErrorCode(args[++i]);
+                        break;
+                    case "--from":
+                        from = parseTime(args[++i]);
+                        break;
+                    case "--to":
+                        to = parseTime(args[++i]);
+                        break;
+                    case "--threads":
+                        search.setParallelism(Integer.parseInt(args[++i]));
+                        break;
+                    case "--messages":
+                        messages = true;
+                        break;
+                    default:
+                        usage();
+                        System.exit(2);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException ex) {
+            usage();
+            System.exit(2);
+        }
+        search.setPeriod(from, to);
+
+        PrintStream out = System.out;
+        List<ServiceLogArchive.Entry> entries = search.search();
+        for (ServiceLogArchive.Entry entry : entries) {
+            out.println(String.join("\t", Instant.ofEpochMilli(entry.getTimestamp()).toString(),
+                    entry.getSegment() + ":" + entry.getOffset(), text(entry.getMessageType()), text(entry.getTransactionID()),
+                    text(entry.getMessageID()), text(entry.getErrorCode())));
+            if (messages) {
+                out.println(search.read(entry));
+            }
+        }
+        System.err.println(entries.size() + " messages found");
+    }
+
+    private boolean matches(ServiceLogArchive.Entry entry) {
+        return (transactionID == null || transactionID.equals(entry.getTransactionID()))
+                && (messageType == null || messageType.equals(entry.getMessageType()))
+                && (errorCode == null || errorCode.equals(entry.getErrorCode()))
+                && entry.getTimestamp() >= from && entry.getTimestamp() < to;
+    }
+
+    private List<ServiceLogArchive.Entry> search(int number) throws IOException {
+        ServiceLogSegment reader = reader(number);
+        List<ServiceLogArchive.Entry> entries = ServiceLogArchive.readIndex(directory, number);
+        if (ServiceLogArchive.end(entries) < reader.getSize()) {
+            entries = ServiceLogArchive.scan(reader);
+        }
+
+        List<ServiceLogArchive.Entry> result = new ArrayList<>();
+        for (ServiceLogArchive.Entry entry : entries) {
+            if (matches(entry) && entry.getOffset() < reader.getSize()) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private ServiceLogSegment reader(int number) throws IOException {
+        ServiceLogSegment reader = readers.get(number);
+        if (reader == null) {
+            boolean compressed = ServiceLogArchive.isCompressed(directory, number);
+            reader = ServiceLogSegment.Open(ServiceLogArchive.segmentFile(directory, number, compressed), number, compressed);
+            readers.put(number, reader);
+        }
+        return reader;
+    }
+
+    private static long parseTime(String value) {
+        if (value.endsWith("Z")) {
+            return Instant.parse(value).toEpochMilli();
+        }
+        if (value.length() == 10) {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String text(String value) {
+        return (value != null) ? value : "-";
+    }
+
+    private static void usage() {
+        System.err.println("usage: ServiceLogSearch directory [--transactionID id] [--type messageType] [--errorCode code]"
+                + " [--from date] [--to date] [--threads n] [--messages]");
+    }
+
+    /**
+     * Searches a range of segments, splitting it until a task searches a single segment
+     */
+    private class SearchTask extends RecursiveTask<List<ServiceLogArchive.Entry>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Integer> numbers;
+        private final int start;
+        private final int end;
+
+        SearchTask(List<Integer> numbers, int start, int end) {
+            this.numbers = numbers;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<ServiceLogArchive.Entry> compute() {
+            if (end - start == 0) {
+                return new ArrayList<>();
+            }
+            if (end - start == 1) {
+                try {
+                    return search(numbers.get(start));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            int middle = (start + end) >>> 1;
+            SearchTask left = new SearchTask(numbers, start, middle);
+            left.fork();
+            List<ServiceLogArchive.Entry> result = new SearchTask(numbers, middle, end).compute();
+            result.addAll(left.join());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a segment of a ServiceLogArchive from a memory-mapped file. Record offsets are offsets in the uncompressed
+ * contents of the segment. A compressed segment is a sequence of blocks, each a header (compressed length, length,
+ * both int) followed by a whole number of records compressed with Deflater; a block is inflated when a record in it is
+ * read, and the last blocks read are kept.
+ *
+ * The segment is read up to its last complete record or block; anything after it was partly written and is ignored.
+ * Instances can be used by any number of threads.
+ */
+final class ServiceLogSegment {
+    /**
+     * Receives the records of a segment
+     */
+    interface RecordVisitor {
+        void visit(long offset, long timestamp, byte[] message) throws IOException;
+    }
+
+    static final int BlockHeaderLength = 8;
+    private static final int CachedBlocks = 16;
+
+    private final int number;
+    private final MappedByteBuffer buffer;
+    private final boolean compressed;
+    private final long size;
+    private final long validLength;
+    private final long[] blockStart;
+    private final int[] blockPosition;
+    private final int[] blockLength;
+    private final Map<Integer, byte[]> blocks = new LinkedHashMap<Integer, byte[]>(CachedBlocks, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CachedBlocks;
+        }
+    };
+
+    private ServiceLogSegment(int number, MappedByteBuffer buffer, boolean compressed) {
+        this.number = number;
+        this.buffer = buffer;
+        this.compressed = compressed;
+
+        int limit = buffer.limit();
+        int position = 0;
+        long logical = 0;
+        if (compressed) {
+            long[] starts = new long[16];
+            int[] positions = new int[16];
+            int[] lengths = new int[16];
+            int count = 0;
+            while (position + BlockHeaderLength <= limit) {
+                int compressedLength = buffer.getInt(position);
+                int length = buffer.getInt(position + 4);
+                if (compressedLength < 0 || length < 0 || position + BlockHeaderLength + (long) compressedLength > limit) {
+                    break;
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    positions = Arrays.copyOf(positions, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                starts[count] = logical;
+                positions[count] = position;
+                lengths[count] = length;
+                count++;
+                logical += length;
+                position += BlockHeaderLength + compressedLength;
+            }
+            blockStart = Arrays.copyOf(starts, count);
+            blockPosition = Arrays.copyOf(positions, count);
+            blockLength = Arrays.copyOf(lengths, count);
+        } else {
+            while (position + ServiceLogArchive.RecordHeaderLength <= limit) {
+                int length = buffer.getInt(position);
+                if (length < 0 || position + ServiceLogArchive.RecordHeaderLength + (long) length > limit) {
+                    break;
+                }
+                position += ServiceLogArchive.RecordHeaderLength + length;
+            }
+            logical = position;
+            blockStart = null;
+            blockPosition = null;
+            blockLength = null;
+        }
+        this.size = logical;
+        this.validLength = position;
+    }
+
+    /**
+     * Maps a segment file
+     * @param file the segment file
+     * @param number the number of the segment
+     * @param compressed whether the segment is block-compressed
+     */
+    static ServiceLogSegment Open(Path file, int number, boolean compressed) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            return new ServiceLogSegment(number, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), compressed);
+        }
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return Length of the uncompressed contents up to the last complete record
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Length of the file up to the last complete record or block
+     */
+    long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * @param offset offset of a record
+     * @return the message of the record
+     */
+    byte[] read(long offset) throws IOException {
+        if (offset < 0 || offset >= size) {
+            throw new IOException("no record at offset " + offset + " of segment " + number);
+        }
+        if (!compressed) {
+            byte[] message = new byte[buffer.getInt((int) offset)];
+            buffer.duplicate().position((int) offset + ServiceLogArchive.RecordHeaderLength).get(message);
+            return message;
+        }
+
+        int index = Arrays.binarySearch(blockStart, offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        byte[] block = block(index);
+        ByteBuffer records = ByteBuffer.wrap(block);
+        int position = (int) (offset - blockStart[index]);
+        return Arrays.copyOfRange(block, position + ServiceLogArchive.RecordHeaderLength,
+                position + ServiceLogArchive.RecordHeaderLength + records.getInt(position));
+    }
+
+    /**
+     * Passes every record of the segment to the visitor, in order
+     */
+    void scan(RecordVisitor visitor) throws IOException {
+        if (!compressed) {
+            scan(buffer.duplicate().limit((int) size), 0, visitor);
+            return;
+        }
+        for (int i = 0; i < blockStart.length; i++) {
+            scan(ByteBuffer.wrap(inflate(i)), blockStart[i], visitor);
+        }
+    }
+
+    private static void scan(ByteBuffer records, long start, RecordVisitor visitor) throws IOException {
+        while (records.remaining() >= ServiceLogArchive.RecordHeaderLength) {
+            long offset = start + records.position();
+            byte[] message = new byte[records.getInt()];
+            long timestamp = records.getLong();
+            records.get(message);
+            visitor.visit(offset, timestamp, message);
+        }
+    }
+
+    private byte[] block(int index) throws IOException {
+        synchronized (blocks) {
+            byte[] block = blocks.get(index);
+            if (block != null) {
+                return block;
+            }
+        }
+        byte[] block = inflate(index);
+        synchronized (blocks) {
+            blocks.put(index, block);
+        }
+        return block;
+    }
+
+    private byte[] inflate(int index) throws IOException {
+        int position = blockPosition[index];
+        ByteBuffer input = buffer.duplicate().position(position + BlockHeaderLength).limit(position + BlockHeaderLength
+                + buffer.getInt(position));
+        byte[] block = new byte[blockLength[index]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < block.length && !inflater.finished()) {
+                int n = inflater.inflate(block, length, block.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != block.length) {
+                throw new IOException("block " + index + " of segment " + number + " is corrupt");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("block " + index + " of segment " + number + " is corrupt", ex);
+        } finally {
+            inflater.end();
+        }
+        return block;
+    }
+}
@@ -0,0 +1,441 @@
+package net.emandates.merchant.library;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Writes the service logs (the raw XML messages, see Configuration.setServiceLogsEnabled) on a background thread, so
+ * that request threads never touch the disk. Messages are put in a bounded queue; the writer thread takes them in
+ * batches and writes a file per message, named after the Configuration's service logs pattern at the time the message
+ * was logged and its MessageInfo type, or appends it to a ServiceLogArchive (see setArchive). What happens when the queue is full depends on
+ * the OverflowPolicy.
+ *
+ * One writer is shared by all communicators in the JVM (see getDefault()). It is flushed and closed by a shutdown
+ * hook; messages logged after it is closed are written on the calling thread.
+ */
+public class ServiceLogWriter implements AutoCloseable, ServiceLogWriterMXBean {
+    /**
+     * What a request thread does when the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the writer has made room; no message is lost
+         */
+        BLOCK,
+
+        /**
+         * Drop the message
+         */
+        DROP,
+
+        /**
+         * Once the queue is three quarters full, keep one message in sampleRate and drop the others; drop all
+         * messages while the queue is full
+         */
+        SAMPLE
+    }
+
+    private static final int BatchSize = 256;
+    private static final Entry Shutdown = new Entry(null, null, 0);
+    private static volatile ServiceLogWriter defaultInstance;
+
+    private final BlockingQueue<Entry> queue;
+    private final int capacity;
+    private final Thread thread;
+    private final Set<File> directories = new HashSet<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+    private final Object flushLock = new Object();
+    private volatile OverflowPolicy overflowPolicy;
+    private volatile ServiceLogArchive archive;
+    private volatile MessageRedactor redactor;
+    private volatile ServiceLogSampler sampler;
+    private volatile int sampleRate = 10;
+    private volatile boolean closed;
+    private volatile long written;
+    private volatile long latencyNanos;
+
+    /**
+     * @param capacity number of messages the queue can hold
+     * @param overflowPolicy what a request thread does when the queue is full
+     */
+    public ServiceLogWriter(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        thread = new Thread(this::run, "emandates-service-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the writer used by the communicators, creating one with a queue of 4096 messages and the BLOCK policy on
+     * first use
+     * @return the writer
+     */
+    public static ServiceLogWriter getDefault() {
+        ServiceLogWriter writer = defaultInstance;
+        if (writer == null) {
+            synchronized (ServiceLogWriter.class) {
+                writer = defaultInstance;
+                if (writer == null) {
+                    writer = new ServiceLogWriter(4096, OverflowPolicy.BLOCK);
+                    Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "emandates-service-log-shutdown"));
+                    defaultInstance = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * @return The writer used by the communicators, or null if none has been created yet
+     */
+    static ServiceLogWriter peekDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * Replaces the writer used by the communicators; the previous writer is flushed and closed
+     * @param writer the new writer
+     */
+    public static void setDefault(ServiceLogWriter writer) {
+        ServiceLogWriter previous;
+        synchronized (ServiceLogWriter.class) {
+            previous = defaultInstance;
+            defaultInstance = writer;
+        }
+        if (previous != null && previous != writer) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @param overflowPolicy what a request thread does when the queue is full
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return What a request thread does when the queue is full
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @param sampleRate one in how many messages is kept by the SAMPLE policy when the queue is filling up; defaults
+     * to 10
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * @return One in how many messages is kept by the SAMPLE policy when the queue is filling up
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Appends the service logs to an archive instead of writing a file per message; the archive is flushed after
+     * every batch, which does not end the block of a compressed archive. The writer does not close the archive.
+     * @param archive the archive, or null to write a file per message
+     */
+    public void setArchive(ServiceLogArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * @return The archive the service logs are appended to, or null
+     */
+    public ServiceLogArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * Masks personal data in the messages before they are written; the masking is done on the writer thread
+     * @param redactor the redactor, or null to write the messages as they were logged
+     */
+    public void setRedactor(MessageRedactor redactor) {
+        this.redactor = redactor;
+    }
+
+    /**
+     * @return The redactor that masks personal data in the messages, or null
+     */
+    public MessageRedactor getRedactor() {
+        return redactor;
+    }
+
+    /**
+     * Logs only a sample of the operations' messages, see ServiceLogSampler; unsampled messages are not queued
+     * @param sampler the sampler, or null to log every message
+     */
+    public void setSampler(ServiceLogSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * @return The sampler that decides which operations are logged, or null
+     */
+    public ServiceLogSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * @return Number of messages waiting to be written
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of messages the queue can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of messages written
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return Number of messages dropped by the DROP and SAMPLE policies, or because they could not be written
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return Moving average of the time in milliseconds from logging a message to having written it
+     */
+    public double getLatencyMillis() {
+        return latencyNanos / 1e6;
+    }
+
+    /**
+     * Queues a message, or writes it at once if the writer is closed
+     * @param config the configuration the message was logged with
+     * @param message the XML message
+     */
+    void write(Configuration config, MessageInfo message) {
+        Entry entry = new Entry(config, message, System.currentTimeMillis());
+        if (closed) {
+            writeClosed(entry);
+            return;
+        }
+
+        OverflowPolicy policy = overflowPolicy;
+        if (policy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(entry);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        } else {
+            boolean skip = policy == OverflowPolicy.SAMPLE && queue.size() >= capacity * 3 / 4
+                    && sampled.incrementAndGet() % sampleRate != 0;
+            if (skip || !queue.offer(entry)) {
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+
+        // close() may have drained the queue for the last time before the entry was added; if the entry is still
+        // there, the writer thread will not write it
+        if (closed && queue.remove(entry)) {
+            writeClosed(entry);
+            return;
+        }
+        accepted.incrementAndGet();
+    }
+
+    private void writeClosed(Entry entry) {
+        synchronized (this) {
+            writeEntry(entry);
+            flushArchive(entry.config);
+        }
+    }
+
+    /**
+     * Waits until every message queued before the call has been written
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        long target = accepted.get();
+        synchronized (flushLock) {
+            while (written < target && thread.isAlive()) {
+                flushLock.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Writes the queued messages and stops the writer thread; messages logged later are written on the calling thread
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(Shutdown);
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(BatchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            queue.drainTo(batch, BatchSize - 1);
+
+            boolean shutdown = false;
+            for (Entry entry : batch) {
+                if (entry == Shutdown) {
+                    shutdown = true;
+                    continue;
+                }
+                writeEntry(entry);
+                long nanos = (System.currentTimeMillis() - entry.timestamp) * 1000000;
+                latencyNanos += (nanos - latencyNanos) / 8;
+            }
+            if (!batch.isEmpty()) {
+                flushArchive(batch.get(0).config);
+            }
+            synchronized (flushLock) {
+                written += batch.size() - (shutdown ? 1 : 0);
+                flushLock.notifyAll();
+            }
+            batch.clear();
+
+            if (shutdown) {
+                // messages queued by threads that had not yet seen the writer closed
+                while (queue.drainTo(batch) > 0) {
+                    batch.forEach(this::writeEntry);
+                    flushArchive(batch.get(0).config);
+                    batch.clear();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a message; a message that cannot be written, even because of a bug, is logged and counted as dropped so
+     * that the writer thread keeps running
+     */
+    private void writeEntry(Entry entry) {
+        try {
+            MessageRedactor masking = redactor;
+            MessageInfo message = (masking != null) ? masking.redact(entry.message) : entry.message;
+            ServiceLogArchive target = archive;
+            if (target == null) {
+                writeFile(entry.config, message, entry.timestamp);
+            } else {
+                target.append(entry.timestamp, message);
+            }
+        } catch (IOException | RuntimeException ex) {
+            dropped.incrementAndGet();
+            logError(entry.config, ex);
+        }
+    }
+
+    private void flushArchive(Configuration config) {
+        ServiceLogArchive target = archive;
+        if (target != null) {
+            try {
+                target.flush();
+            } catch (IOException | RuntimeException ex) {
+                logError(config, ex);
+            }
+        }
+    }
+
+    private void writeFile(Configuration config, MessageInfo message, long timestamp) throws IOException {
+        String messageType = message.getMessageType();
+        String fileName = config.getServiceLogsPattern();
+
+        Calendar c = GregorianCalendar.getInstance();
+        c.setTimeInMillis(timestamp);
+
+        fileName = fileName.replace("%Y", String.valueOf(c.get(GregorianCalendar.YEAR)));
+        fileName = fileName.replace("%M", String.format("%02d", c.get(GregorianCalendar.MONTH) + 1)); // January is 0
+        fileName = fileName.replace("%D", String.format("%02d", c.get(GregorianCalendar.DAY_OF_MONTH)));
+        fileName = fileName.replace("%h", String.format("%02d", c.get(GregorianCalendar.HOUR_OF_DAY)));
+        fileName = fileName.replace("%m", String.format("%02d", c.get(GregorianCalendar.MINUTE)));
+        fileName = fileName.replace("%s", String.format("%02d", c.get(GregorianCalendar.SECOND)));
+        fileName = fileName.replace("%f", String.format("%03d", c.get(GregorianCalendar.MILLISECOND)));
+        fileName = fileName.replace("%a", (messageType != null) ? messageType : "unknown");
+
+        File f = new File(config.getServiceLogsLocation() + File.separator + fileName);
+        makeDirectories(f.getParentFile());
+
+        try (OutputStream output = new FileOutputStream(f)) {
+            output.write(message.getPayload());
+        }
+    }
+
+    private static void logError(Configuration config, Exception ex) {
+        if (config == null || config.isLogsEnabled()) {
+            java.util.logging.Logger.getLogger(Logger.class.getName()).log(Level.INFO, "service log not written", ex);
+        }
+    }
+
+    /**
+     * Creates a directory once; most messages go to a directory that was created for an earlier message
+     */
+    private void makeDirectories(File directory) {
+        synchronized (directories) {
+            if (directories.contains(directory)) {
+                return;
+            }
+            if (directories.size() > 1024) {
+                directories.clear();
+            }
+            directory.mkdirs();
+            directories.add(directory);
+        }
+    }
+
+    private static class Entry {
+        private final Configuration config;
+        private final MessageInfo message;
+        private final long timestamp;
+
+        Entry(Configuration config, MessageInfo message, long timestamp) {
+            this.config = config;
+            this.message = message;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.emandates.merchant.library;
+
+/**
+ * The management interface of a ServiceLogWriter, see JmxRegistration; OverflowPolicy and SampleRate are writable
+ */
+public interface ServiceLogWriterMXBean {
+    ServiceLogWriter.OverflowPolicy getOverflowPolicy();
+
+    void setOverflowPolicy(ServiceLogWriter.OverflowPolicy overflowPolicy);
+
+    int getSampleRate();
+
+    void setSampleRate(int sampleRate);
+
+    int getQueueDepth();
+
+    int getCapacity();
+
+    long getWritten();
+
+    long getDropped();
+
+    double getLatencyMillis();
+}
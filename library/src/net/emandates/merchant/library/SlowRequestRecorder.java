@@ -0,0 +1,315 @@
+package net.emandates.merchant.library;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the details of the last operations that took longer than a threshold in a ring of fixed size, see
+ * RequestPipeline.setSlowRequestRecorder: the time spent in each RequestPhase, the endpoint, HTTP status and message
+ * sizes, the errorCode and, if enabled, the request and response messages. Operations below the threshold cost a
+ * comparison; the messages of an operation are only kept until it completes, and are masked by the recorder's
+ * MessageRedactor when they are captured.
+ */
+public class SlowRequestRecorder implements SlowRequestRecorderMXBean {
+    /**
+     * The details of a slow operation
+     */
+    public static final class Capture {
+        private final long time;
+        private final String operation;
+        private final String tenant;
+        private final RequestClass requestClass;
+        private final String transactionID;
+        private final String messageID;
+        private final long totalNanos;
+        private final long[] phaseNanos;
+        private final String endpoint;
+        private final int httpStatus;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final String errorCode;
+        private final String request;
+        private final String response;
+
+        Capture(long time, String operation, String tenant, RequestClass requestClass, String transactionID,
+                String messageID, long totalNanos, long[] phaseNanos, String endpoint, int httpStatus, long requestBytes,
+                long responseBytes, String errorCode, String request, String response) {
+            this.time = time;
+            this.operation = operation;
+            this.tenant = tenant;
+            this.requestClass = requestClass;
+            this.transactionID = transactionID;
+            this.messageID = messageID;
+            this.totalNanos = totalNanos;
+            this.phaseNanos = phaseNanos.clone();
+            this.endpoint = endpoint;
+            this.httpStatus = httpStatus;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.errorCode = errorCode;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * @return The time the operation completed, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public RequestClass getRequestClass() {
+            return requestClass;
+        }
+
+        public String getTransactionID() {
+            return transactionID;
+        }
+
+        public String getMessageID() {
+            return messageID;
+        }
+
+        /**
+         * @return Time from calling the operation until it completed, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @param phase a phase
+         * @return Time spent in the phase, in nanoseconds, or 0 if the operation did not reach it
+         */
+        public long getPhaseNanos(RequestPhase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+
+        /**
+         * @return The URL the request was sent to, or null if it was not sent
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return The HTTP status of the response, or 0 if no response was received
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        /**
+         * @return Size of the request as sent, in bytes, or 0 if it was not sent
+         */
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        /**
+         * @return Size of the response as received, in bytes, or 0 if no response was received
+         */
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * @return The errorCode of the ErrorResponse if the operation failed (empty for an exception without one), or
+         * null if it succeeded
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        /**
+         * @return The request message, or null if messages are not captured or it was not built
+         */
+        public String getRequest() {
+            return request;
+        }
+
+        /**
+         * @return The response message, or null if messages are not captured or none was received
+         */
+        public String getResponse() {
+            return response;
+        }
+
+        Capture redacted(MessageRedactor redactor) {
+            return new Capture(time, operation, tenant, requestClass, transactionID, messageID, totalNanos, phaseNanos,
+                    endpoint, httpStatus, requestBytes, responseBytes, errorCode,
+                    (request != null) ? redactor.redact(request) : null, (response != null) ? redactor.redact(response) : null);
+        }
+
+        /**
+         * @return A line with the details and the phases in milliseconds, followed by the messages if captured
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(Instant.ofEpochMilli(time)).append(' ').append(operation).append(' ')
+                    .append(String.format("%.3f ms", totalNanos / 1e6))
+                    .append(" tenant=").append(tenant).append(" class=").append(requestClass);
+            if (transactionID != null) {
+                sb.append(" transactionID=").append(transactionID);
+            }
+            if (messageID != null) {
+                sb.append(" messageID=").append(messageID);
+            }
+            if (endpoint != null) {
+                sb.append(" endpoint=").append(endpoint).append(" status=").append(httpStatus)
+                        .append(" requestBytes=").append(requestBytes).append(" responseBytes=").append(responseBytes);
+            }
+            if (errorCode != null) {
+                sb.append(" errorCode=").append(errorCode);
+            }
+            for (RequestPhase phase : RequestPhase.values()) {
+                if (phaseNanos[phase.ordinal()] > 0) {
+                    sb.append(' ').append(phase.name()).append('=')
+                            .append(String.format("%.3f", phaseNanos[phase.ordinal()] / 1e6));
+                }
+            }
+            if (request != null) {
+                sb.append(System.lineSeparator()).append(request);
+            }
+            if (response != null) {
+                sb.append(System.lineSeparator()).append(response);
+            }
+            return sb.toString();
+        }
+    }
+
+    private final Capture[] ring;
+    private volatile long thresholdNanos;
+    private volatile boolean captureMessages;
+    private volatile MessageRedactor redactor = new MessageRedactor();
+    private int next;
+    private long recorded;
+
+    /**
+     * @param thresholdMillis operations taking at least this long are captured
+     * @param capacity number of captures kept; older captures are overwritten
+     */
+    public SlowRequestRecorder(long thresholdMillis, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        ring = new Capture[capacity];
+        setThresholdMillis(thresholdMillis);
+    }
+
+    /**
+     * @param thresholdMillis operations taking at least this long are captured
+     */
+    @Override
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+    }
+
+    @Override
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * @param captureMessages whether the request and response messages are captured as well, masked by the redactor.
+     * Defaults to false
+     */
+    @Override
+    public void setCaptureMessages(boolean captureMessages) {
+        this.captureMessages = captureMessages;
+    }
+
+    @Override
+    public boolean isCaptureMessages() {
+        return captureMessages;
+    }
+
+    /**
+     * @param redactor the redactor that masks personal data in the captured messages, e.g. that of the
+     * ServiceLogWriter, or null to keep them as sent and received. Defaults to a MessageRedactor of the default paths
+     */
+    public void setRedactor(MessageRedactor redactor) {
+        this.redactor = redactor;
+    }
+
+    /**
+     * @return The redactor that masks personal data in the captured messages, or null
+     */
+    public MessageRedactor getRedactor() {
+        return redactor;
+    }
+
+    /**
+     * @return Number of operations captured since the recorder was created or cleared, including overwritten ones
+     */
+    @Override
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * @return The captures in the ring, oldest first
+     */
+    public synchronized List<Capture> getCaptures() {
+        List<Capture> result = new ArrayList<>(ring.length);
+        for (int i = 0; i < ring.length; i++) {
+            Capture capture = ring[(next + i) % ring.length];
+            if (capture != null) {
+                result.add(capture);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return The captures in the ring, oldest first, one per line as formatted by Capture.toString
+     */
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Capture capture : getCaptures()) {
+            sb.append(capture).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes all captures
+     */
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        next = 0;
+        recorded = 0;
+    }
+
+    boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    void record(Capture capture) {
+        MessageRedactor masking = redactor;
+        if (masking != null && (capture.request != null || capture.response != null)) {
+            capture = capture.redacted(masking);
+        }
+        synchronized (this) {
+            ring[next] = capture;
+            next = (next + 1) % ring.length;
+            recorded++;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package net.emandates.merchant.library;
+
+/**
+ * The management interface of a SlowRequestRecorder, see JmxRegistration; the threshold and message capture are
+ * writable, and dump returns the captures
+ */
+public interface SlowRequestRecorderMXBean {
+    long getThresholdMillis();
+
+    void setThresholdMillis(long thresholdMillis);
+
+    boolean isCaptureMessages();
+
+    void setCaptureMessages(boolean captureMessages);
+
+    long getRecorded();
+
+    String dump();
+
+    void clear();
+}
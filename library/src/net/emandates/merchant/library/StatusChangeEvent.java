@@ -0,0 +1,64 @@
+package net.emandates.merchant.library;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+/**
+ * Describes a status transition of a tracked transaction, as emitted by a StatusMonitor
+ */
+public class StatusChangeEvent {
+    private final String transactionID;
+    private final String previousStatus;
+    private final String status;
+    private final XMLGregorianCalendar statusDateTimestamp;
+    private final StatusResponse.AcceptanceReport acceptanceReport;
+
+    StatusChangeEvent(String transactionID, String previousStatus, StatusResponse statusResponse) {
+        this.transactionID = transactionID;
+        this.previousStatus = previousStatus;
+        this.status = statusResponse.getStatus();
+        this.statusDateTimestamp = statusResponse.getStatusDateTimestamp();
+        this.acceptanceReport = statusResponse.getAcceptanceReport();
+    }
+
+    /**
+     * @return The transaction ID
+     */
+    public String getTransactionID() {
+        return transactionID;
+    }
+
+    /**
+     * @return The last status known before this transition, or null when this is the first observed status
+     */
+    public String getPreviousStatus() {
+        return previousStatus;
+    }
+
+    /**
+     * @return The new status. Possible values: Open, Pending, Success, Failure, Expired, Cancelled
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Date when the status was created, or null if no such date available
+     */
+    public XMLGregorianCalendar getStatusDateTimestamp() {
+        return statusDateTimestamp;
+    }
+
+    /**
+     * @return The acceptance report when the new status is Success, otherwise null
+     */
+    public StatusResponse.AcceptanceReport getAcceptanceReport() {
+        return acceptanceReport;
+    }
+
+    /**
+     * @return true if the new status is final (Success, Failure, Expired or Cancelled)
+     */
+    public boolean isFinal() {
+        return StatusMonitor.isFinalStatus(status);
+    }
+}
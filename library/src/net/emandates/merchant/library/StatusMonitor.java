@@ -0,0 +1,415 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.datatype.Duration;
+import javax.xml.datatype.XMLGregorianCalendar;
+import net.emandates.merchant.library.store.ITransactionStore;
+import net.emandates.merchant.library.store.InMemoryTransactionStore;
+import net.emandates.merchant.library.store.TrackedTransaction;
+
+/**
+ * Keeps track of the last known status of transactions and emits a StatusChangeEvent for every status transition.
+ * Events are delivered to registered IStatusListener callbacks and to the subscribers of a Flow.Publisher. The
+ * thread that observed the transition (a pipeline thread or the thread calling getStatus) never waits for a
+ * subscriber: an event that does not fit in a subscriber's buffer is dropped for that subscriber and counted, see
+ * getDroppedEvents. Tracked transactions are kept in an ITransactionStore; they are removed from it once they reach a
+ * final status. With a persistent store, a restarted monitor resumes polling where the previous one left off; a
+ * PendingTransactionStore holds millions of transactions outside of the Java heap.
+ * Polling sends the status requests asynchronously through the request pipeline, with at most getPollConcurrency
+ * requests in flight.
+ */
+public class StatusMonitor implements AutoCloseable, StatusMonitorMXBean {
+    private static final int PollBatch = 256;
+    private static final int LockStripes = 64;
+
+    private final CoreCommunicator communicator;
+    private final CopyOnWriteArrayList<IStatusListener> listeners = new CopyOnWriteArrayList<>();
+    private final SubmissionPublisher<StatusChangeEvent> publisher = new SubmissionPublisher<>();
+    private volatile ITransactionStore store = new InMemoryTransactionStore();
+    private final Object[] locks = new Object[LockStripes];
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile long pollInterval;
+    private volatile int pollConcurrency = BulkExecutor.defaultConcurrency();
+    private ScheduledExecutorService scheduler;
+
+    StatusMonitor(CoreCommunicator communicator) {
+        this.communicator = communicator;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param status a status value as returned by StatusResponse.getStatus()
+     * @return true if the status is Success, Failure, Expired or Cancelled
+     */
+    public static boolean isFinalStatus(String status) {
+        return StatusResponse.Success.equalsIgnoreCase(status)
+                || StatusResponse.Failure.equalsIgnoreCase(status)
+                || StatusResponse.Expired.equalsIgnoreCase(status)
+                || StatusResponse.Cancelled.equalsIgnoreCase(status);
+    }
+
+    /**
+     * @return The store holding the tracked transactions
+     */
+    public ITransactionStore getStore() {
+        return store;
+    }
+
+    /**
+     * Sets the store holding the tracked transactions; transactions already present in it are tracked from now on.
+     * The previous store is not closed.
+     * @param store the store to use
+     */
+    public void setStore(ITransactionStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Starts tracking a transaction; the first status observed for it is emitted as a transition from null.
+     * @param transactionID The transaction ID to track
+     */
+    public void track(String transactionID) {
+        try {
+            synchronized (lockFor(transactionID)) {
+                if (store.Get(transactionID) == null) {
+                    store.Save(new TrackedTransaction(transactionID, System.currentTimeMillis()));
+                }
+            }
+        } catch (IOException ex) {
+            log("could not track transaction " + transactionID + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Starts tracking a transaction of which the current status is already known.
+     * @param transactionID The transaction ID to track
+     * @param status The last known status
+     */
+    public void track(String transactionID, String status) {
+        save(new TrackedTransaction(transactionID, System.currentTimeMillis()).withStatus(status));
+    }
+
+    /**
+     * Starts tracking the transaction created by a new mandate request; nothing is tracked if the response is an error.
+     * @param request the request that was sent
+     * @param response the response received for it
+     */
+    public void track(NewMandateRequest request, NewMandateResponse response) {
+        if (!response.getIsError()) {
+            track(response.getTransactionID(), response.getTransactionCreateDateTimestamp(), request.getEntranceCode(),
+                    request.geteMandateID(), request.getMessageID(), request.getDebtorBankID(), request.getExpirationPeriod());
+        }
+    }
+
+    /**
+     * Starts tracking the transaction created by an amendment request; nothing is tracked if the response is an error.
+     * @param request the request that was sent
+     * @param response the response received for it
+     */
+    public void track(AmendmentRequest request, AmendmentResponse response) {
+        if (!response.getIsError()) {
+            track(response.getTransactionID(), response.getTransactionCreateDateTimestamp(), request.getEntranceCode(),
+                    request.geteMandateID(), request.getMessageID(), request.getDebtorBankID(), request.getExpirationPeriod());
+        }
+    }
+
+    /**
+     * Starts tracking the transaction created by a cancellation request; nothing is tracked if the response is an error.
+     * @param request the request that was sent
+     * @param response the response received for it
+     */
+    public void track(CancellationRequest request, CancellationResponse response) {
+        if (!response.getIsError()) {
+            track(response.getTransactionID(), response.getTransactionCreateDateTimestamp(), request.getEntranceCode(),
+                    request.geteMandateID(), request.getMessageID(), request.getDebtorBankID(), request.getExpirationPeriod());
+        }
+    }
+
+    /**
+     * Stops tracking a transaction
+     * @param transactionID The transaction ID
+     */
+    public void untrack(String transactionID) {
+        try {
+            synchronized (lockFor(transactionID)) {
+                store.Remove(transactionID);
+            }
+        } catch (IOException ex) {
+            log("could not untrack transaction " + transactionID + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The IDs of the transactions that are currently tracked
+     */
+    public Set<String> getTrackedTransactions() {
+        Set<String> result = new HashSet<>();
+        try {
+            for (TrackedTransaction transaction : store.GetAll()) {
+                result.add(transaction.getTransactionID());
+            }
+        } catch (IOException ex) {
+            log("could not read tracked transactions: " + ex.getMessage());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * @return Number of transactions that are currently tracked
+     */
+    public int getTrackedCount() {
+        try {
+            return store.Count();
+        } catch (IOException ex) {
+            log("could not read tracked transactions: " + ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * @return Number of tracked transactions of which the next poll time has passed, i.e. the polling backlog
+     * @throws IOException if the store cannot be read
+     */
+    public int getDueCount() throws IOException {
+        return store.CountDue(System.currentTimeMillis());
+    }
+
+    /**
+     * @return Time between two status requests for the same transaction, or 0 if polling has not been started
+     */
+    public long getPollIntervalMillis() {
+        return pollInterval;
+    }
+
+    /**
+     * @return Maximum number of status requests in flight while polling
+     */
+    @Override
+    public int getPollConcurrency() {
+        return pollConcurrency;
+    }
+
+    /**
+     * @param pollConcurrency maximum number of status requests in flight while polling; defaults to one per available
+     * processor
+     */
+    @Override
+    public void setPollConcurrency(int pollConcurrency) {
+        if (pollConcurrency < 1) {
+            throw new IllegalArgumentException("pollConcurrency must be at least 1");
+        }
+        this.pollConcurrency = pollConcurrency;
+    }
+
+    /**
+     * @return Number of events not delivered to a subscriber of the publisher because its buffer was full
+     */
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @param listener callback to invoke for every status transition
+     */
+    public void addListener(IStatusListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener callback that should no longer be invoked
+     */
+    public void removeListener(IStatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return A publisher of status transitions; each subscriber receives events as it requests them
+     */
+    public Flow.Publisher<StatusChangeEvent> getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Sends a status request for every tracked transaction. Transitions are emitted as the responses arrive.
+     */
+    public void pollAll() {
+        poll(getTrackedTransactions().iterator());
+    }
+
+    /**
+     * Sends a status request for every tracked transaction of which the next poll time has passed, and moves its
+     * next poll time one polling period ahead. The due transactions are read from the store in batches, and the
+     * method returns when the responses of all of them have arrived.
+     */
+    @Override
+    public void pollDue() {
+        long now = System.currentTimeMillis();
+        long nextPollTime = now + Math.max(pollInterval, 1);
+        while (!Thread.currentThread().isInterrupted()) {
+            List<TrackedTransaction> due;
+            try {
+                due = store.TakeDue(now, nextPollTime, PollBatch);
+            } catch (IOException ex) {
+                log("could not read due transactions: " + ex.getMessage());
+                return;
+            }
+
+            List<String> transactionIDs = new ArrayList<>(due.size());
+            for (TrackedTransaction transaction : due) {
+                transactionIDs.add(transaction.getTransactionID());
+            }
+            poll(transactionIDs.iterator());
+            if (due.size() < PollBatch) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Polls the due transactions periodically on a background thread, until close() is called.
+     * @param period the time between two status requests for the same transaction
+     * @param unit the time unit of the period
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        pollInterval = unit.toMillis(period);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "emandates-status-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollDue, 0, period, unit);
+    }
+
+    /**
+     * Stops polling and completes the publisher's subscriptions. The store is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        publisher.close();
+    }
+
+    void onStatusResponse(StatusResponse statusResponse) {
+        if (statusResponse.getIsError() || statusResponse.getStatus() == null) {
+            return;
+        }
+
+        String transactionID = statusResponse.getTransactionID();
+        String status = statusResponse.getStatus();
+        StatusChangeEvent event;
+        try {
+            synchronized (lockFor(transactionID)) {
+                TrackedTransaction transaction = store.Get(transactionID);
+                if (transaction == null || status.equalsIgnoreCase(transaction.getLastStatus())) {
+                    return;
+                }
+
+                event = new StatusChangeEvent(transactionID, transaction.getLastStatus(), statusResponse);
+                if (event.isFinal()) {
+                    store.Remove(transactionID);
+                } else {
+                    store.Save(transaction.withStatus(status));
+                }
+            }
+        } catch (IOException ex) {
+            log("could not update tracked transaction " + transactionID + ": " + ex.getMessage());
+            return;
+        }
+
+        for (IStatusListener listener : listeners) {
+            try {
+                listener.StatusChanged(event);
+            } catch (RuntimeException ex) {
+                log("status listener failed: " + ex.getMessage());
+            }
+        }
+        if (!publisher.isClosed()) {
+            try {
+                publisher.offer(event, (subscriber, dropped) -> {
+                    droppedEvents.incrementAndGet();
+                    return false;
+                });
+            } catch (IllegalStateException ex) {
+                // closed concurrently; subscribers have already been completed
+            }
+        }
+    }
+
+    private void poll(Iterator<String> transactionIDs) {
+        Iterator<StatusRequest> requests = new Iterator<StatusRequest>() {
+            @Override
+            public boolean hasNext() {
+                return transactionIDs.hasNext();
+            }
+
+            @Override
+            public StatusRequest next() {
+                return new StatusRequest(transactionIDs.next());
+            }
+        };
+        try (BulkExecutor<StatusRequest, StatusResponse> executor = BulkExecutor.async(requests,
+                r -> communicator.getStatusAsync(r, RequestClass.POLLING), StatusRequest::getTransactionID, pollConcurrency,
+                communicator.getPipeline().getTracer())) {
+            while (executor.hasNext()) {
+                try {
+                    executor.next();
+                } catch (CompletionException ex) {
+                    if (ex.getCause() instanceof InterruptedException) {
+                        return;
+                    }
+                    log("status request failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private Object lockFor(String transactionID) {
+        return locks[(transactionID.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private void track(String transactionID, XMLGregorianCalendar created, String entranceCode, String eMandateID, String messageID,
+            String debtorBankID, Duration expirationPeriod) {
+        long creationTime = (created != null) ? created.toGregorianCalendar().getTimeInMillis() : System.currentTimeMillis();
+        long expiryTime = (expirationPeriod != null) ? creationTime + expirationPeriod.getTimeInMillis(new Date(creationTime)) : 0;
+        save(new TrackedTransaction(transactionID, entranceCode, eMandateID, messageID, debtorBankID, creationTime, expiryTime,
+                null, creationTime));
+    }
+
+    private void save(TrackedTransaction transaction) {
+        try {
+            synchronized (lockFor(transaction.getTransactionID())) {
+                store.Save(transaction);
+            }
+        } catch (IOException ex) {
+            log("could not save tracked transaction " + transaction.getTransactionID() + ": " + ex.getMessage());
+        }
+    }
+
+    private void log(String message) {
+        communicator.logger.Log(communicator.getConfiguration(), LogLevel.WARNING, message);
+    }
+}
@@ -0,0 +1,22 @@
+package net.emandates.merchant.library;
+
+import java.io.IOException;
+
+/**
+ * The management interface of a StatusMonitor, see JmxRegistration
+ */
+public interface StatusMonitorMXBean {
+    int getTrackedCount();
+
+    int getDueCount() throws IOException;
+
+    long getPollIntervalMillis();
+
+    int getPollConcurrency();
+
+    void setPollConcurrency(int pollConcurrency);
+
+    long getDroppedEvents();
+
+    void pollDue();
+}
@@ -7,11 +7,15 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.xml.bind.JAXBContext;
@@ -35,6 +39,8 @@ import org.w3c.dom.Node;
 
 
 class Utils {
+    private static final ConcurrentHashMap<List<Class<?>>, JAXBContext> contexts = new ConcurrentHashMap<>();
+
     public static XMLGregorianCalendar UtcNow() throws DatatypeConfigurationException {
         GregorianCalendar currentDateTimestamp = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
         currentDateTimestamp.setTimeInMillis(System.currentTimeMillis());
@@ -44,7 +50,7 @@ class Utils {
     
     public static String serialize(Object o, Class... classes) throws PropertyException, JAXBException {
         StringWriter sw = new StringWriter();
-        JAXBContext context = JAXBContext.newInstance(classes);
+        JAXBContext context = getContext(classes);
 
         Marshaller m = context.createMarshaller();
         m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
@@ -72,7 +78,7 @@ class Utils {
     }
     
     public static <T> T deserialize(String xml, Class<T> type) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(type);
+        JAXBContext context = getContext(type);
         Unmarshaller u = context.createUnmarshaller();
         
         Object o = u.unmarshal(new StringReader(xml));
@@ -80,7 +86,7 @@ class Utils {
     }
     
     public static <T> T deserialize(Node node, Class<T> type) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(type);
+        JAXBContext context = getContext(type);
         Unmarshaller u = context.createUnmarshaller();
         JAXBElement el = (JAXBElement) u.unmarshal(node);
         
@@ -88,6 +94,23 @@ class Utils {
         return type.cast(o);
     }
     
+    /**
+     * JAXBContext instances are thread-safe and expensive to create, so one is kept per set of classes and shared by
+     * all communicators
+     */
+    static JAXBContext getContext(Class<?>... classes) throws JAXBException {
+        List<Class<?>> key = Arrays.asList(classes);
+        JAXBContext context = contexts.get(key);
+        if (context == null) {
+            context = JAXBContext.newInstance(classes);
+            JAXBContext existing = contexts.putIfAbsent(key, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
     public static String sha1Hex(final byte[] data) throws NoSuchAlgorithmException {
         MessageDigest sha1 = MessageDigest.getInstance("SHA1");
         sha1.update(data);
@@ -115,4 +138,48 @@ class Utils {
         
         return builder.toString();
     }
+
+    /**
+     * Writes one CSV line; values containing a comma, quote or line break are quoted and null values are left empty
+     */
+    public static void writeCsvLine(Writer out, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\"").replace('\n', ' '));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write(System.lineSeparator());
+    }
+
+    /**
+     * Returns the number of bytes of a string encoded as UTF-8, without encoding it
+     */
+    static long utf8Length(CharSequence s) {
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
 }
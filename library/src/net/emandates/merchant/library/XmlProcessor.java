@@ -2,14 +2,13 @@ package net.emandates.merchant.library;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
-import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.PublicKey;
 import java.security.UnrecoverableEntryException;
@@ -55,6 +54,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -64,6 +64,10 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 class XmlProcessor {
+    /**
+     * The compiled schema set; a Schema is immutable and thread-safe, so it is shared by all communicators
+     */
+    private static volatile Schema schema;
 
     protected ILogger logger;
 
@@ -75,24 +79,22 @@ class XmlProcessor {
             throws CommunicatorException, KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException,
             UnrecoverableEntryException, InvalidAlgorithmParameterException, ParserConfigurationException, MarshalException,
             SAXException, XMLSignatureException, TransformerException {
-        logger.Log(config, "adding signature...");
-        KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
-        InputStream is = config.getKeyStore();
-        if(is == null){
-            logger.Log(config, "key store can not be found/loaded");
+        logger.Log(config, LogLevel.DEBUG, "adding signature...");
+        KeyMaterial keys = config.getKeyMaterial();
+        if(keys == null){
+            logger.Log(config, LogLevel.ERROR, "key store can not be found/loaded");
             throw new CommunicatorException("KeyStore was not found/loaded");
         }
-        is.reset();
-        ks.load(is, config.getKeyStorePassword().toCharArray());
-        logger.Log(config, "loaded key store");
-        KeyStore.PrivateKeyEntry keyEntry = (KeyStore.PrivateKeyEntry) ks.getEntry(config.getSigningCertificateAlias(),
-                new KeyStore.PasswordProtection(config.getSigningCertificatePassword().toCharArray()));
-        if(keyEntry == null){
-            logger.Log(config, "key entry '" + config.getSigningCertificateAlias() + "' can not be found");
-            throw new CommunicatorException("KeyEntry '" + config.getSigningCertificateAlias() + "' was not found in the KeyStore");
+        logger.Log(config, LogLevel.DEBUG, "loaded key store");
+        PrivateKey signingKey;
+        try {
+            signingKey = keys.getSigningKey();
+        } catch (CommunicatorException ex) {
+            logger.Log(config, LogLevel.ERROR, "key entry '%s' can not be found", config.getSigningCertificateAlias());
+            throw ex;
         }
-        logger.Log(config, "found key entry");
-        X509Certificate cert = (X509Certificate) keyEntry.getCertificate();
+        logger.Log(config, LogLevel.DEBUG, "found key entry");
+        X509Certificate cert = keys.getSigningCertificate();
 
         XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM");
 
@@ -122,9 +124,9 @@ class XmlProcessor {
         dbf.setNamespaceAware(true);
         Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "");
 
-        DOMSignContext dsc = new DOMSignContext(keyEntry.getPrivateKey(), doc.getDocumentElement());
+        DOMSignContext dsc = new DOMSignContext(signingKey, doc.getDocumentElement());
 
-        logger.Log(config, "signing xml");
+        logger.Log(config, LogLevel.DEBUG, "signing xml");
         XMLSignature signature = fac.newXMLSignature(si, ki);
         signature.sign(dsc);
 
@@ -138,21 +140,12 @@ class XmlProcessor {
     }
 
     public boolean VerifySchema(final Configuration config, String xml) throws SAXException, ParserConfigurationException, IOException {
-        logger.Log(config, "verifying schema...");
+        logger.Log(config, LogLevel.DEBUG, "verifying schema...");
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         dbf.setValidating(false);
         dbf.setNamespaceAware(true);
 
-        logger.Log(config, "building schema set");
-        SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        dbf.setSchema(sf.newSchema(new Source[]{
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/idx/xmldsig-core-schema.xsd")),
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/idx/idx.merchant-acquirer.1.0.xsd")),
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain009/pain.009.001.04.xsd")),
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain010/pain.010.001.04.xsd")),
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain011/pain.011.001.04.xsd")),
-            new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain012/pain.012.001.04.xsd"))
-        }));
+        dbf.setSchema(getSchema(config));
 
         DocumentBuilder db = dbf.newDocumentBuilder();
         db.setErrorHandler(new ErrorHandler() {
@@ -162,25 +155,48 @@ class XmlProcessor {
 
             @Override
             public void error(SAXParseException exception) throws SAXException {
-                logger.Log(config, "schema error: " + exception.getMessage());
+                logger.Log(config, LogLevel.WARNING, "schema error: %s", exception.getMessage());
                 throw new SAXException(exception);
             }
 
             @Override
             public void fatalError(SAXParseException exception) throws SAXException {
-                logger.Log(config, "schema error: " + exception.getMessage());
+                logger.Log(config, LogLevel.WARNING, "schema error: %s", exception.getMessage());
                 throw new SAXException(exception);
             }
         });
 
         db.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
 
-        logger.Log(config, "schema is valid");
+        logger.Log(config, LogLevel.DEBUG, "schema is valid");
         return true;
     }
 
+    private Schema getSchema(Configuration config) throws SAXException {
+        Schema result = schema;
+        if (result == null) {
+            synchronized (XmlProcessor.class) {
+                result = schema;
+                if (result == null) {
+                    logger.Log(config, LogLevel.DEBUG, "building schema set");
+                    SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+                    result = sf.newSchema(new Source[]{
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/idx/xmldsig-core-schema.xsd")),
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/idx/idx.merchant-acquirer.1.0.xsd")),
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain009/pain.009.001.04.xsd")),
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain010/pain.010.001.04.xsd")),
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain011/pain.011.001.04.xsd")),
+                        new StreamSource(XmlProcessor.class.getResourceAsStream("/schemas/pain012/pain.012.001.04.xsd"))
+                    });
+                    schema = result;
+                }
+            }
+        }
+        return result;
+    }
+
     public boolean VerifySignature(Configuration config, String xml) throws ParserConfigurationException, SAXException, IOException, MarshalException, XMLSignatureException, ClassNotFoundException, InstantiationException, IllegalAccessException, TransformerException {
-        logger.Log(config, "verifying signature...");
+        logger.Log(config, LogLevel.DEBUG, "verifying signature...");
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         dbf.setNamespaceAware(true);
 
@@ -190,22 +206,22 @@ class XmlProcessor {
         if (signatures.getLength() == 2) {
             Element mandate = (Element) (doc.getElementsByTagNameNS("urn:iso:std:iso:20022:tech:xsd:pain.012.001.04", "Document").item(0));
             if (CheckMandateSignature(config, mandate)) {
-                logger.Log(config, "eMandate signature is valid");
+                logger.Log(config, LogLevel.DEBUG, "eMandate signature is valid");
                 Element signature = (Element) (signatures.item(signatures.getLength() - 1));
                 boolean b = CheckIdxSignature(config, doc, signature);
-                logger.Log(config, "idx signature is valid: " + b);
+                logger.Log(config, LogLevel.DEBUG, "idx signature is valid: %s", b);
                 return b;
             } else {
-                logger.Log(config, "eMandate signature is not valid");
+                logger.Log(config, LogLevel.WARNING, "eMandate signature is not valid");
                 return false;
             }
         } else if (signatures.getLength() == 1) {
             Element signature = (Element) (signatures.item(signatures.getLength() - 1));
             boolean b = CheckIdxSignature(config, doc, signature);
-            logger.Log(config, "idx signature is valid: " + b);
+            logger.Log(config, LogLevel.DEBUG, "idx signature is valid: %s", b);
             return b;
         } else {
-            logger.Log(config, "signatures in document: " + signatures.getLength());
+            logger.Log(config, LogLevel.WARNING, "signatures in document: %s", signatures.getLength());
             return false;
         }
     }
@@ -249,18 +265,18 @@ class XmlProcessor {
         boolean b = sig.validate(valContext);
 
         if (b == false) {
-            logger.Log(config, "Signature failed core validation");
+            logger.Log(config, LogLevel.WARNING, "Signature failed core validation");
             boolean sv = sig.getSignatureValue().validate(valContext);
-            logger.Log(config, "signature validation status: " + sv);
+            logger.Log(config, LogLevel.WARNING, "signature validation status: %s", sv);
             // check the validation status of each Reference
             Iterator i = sig.getSignedInfo().getReferences().iterator();
             for (int j = 0; i.hasNext(); j++) {
                 boolean refValid
                         = ((Reference) i.next()).validate(valContext);
-                logger.Log(config, "ref[" + j + "] validity status: " + refValid);
+                logger.Log(config, LogLevel.WARNING, "ref[%s] validity status: %s", j, refValid);
             }
         } else {
-            logger.Log(config, "Signature passed core validation");
+            logger.Log(config, LogLevel.DEBUG, "Signature passed core validation");
         }
 
         return b;
@@ -287,15 +303,15 @@ class XmlProcessor {
         {
             if(CheckIdxSignature(config, config.getAcquirerCertificateAlias(), doc, signature, fac))
             {
-            	logger.Log(config, "Using acquirer certificate alias");
+            	logger.Log(config, LogLevel.DEBUG, "Using acquirer certificate alias");
                 return true;
             }
-            logger.Log(config, "Using acquirer alternate certificate alias");
+            logger.Log(config, LogLevel.DEBUG, "Using acquirer alternate certificate alias");
             return CheckIdxSignature(config, config.getAcquirerAlternateCertificateAlias(), doc, signature, fac);
         }
         catch(NullPointerException npe)
         {
-            logger.Log(config,"Failed to use acquirer cetificate. Trying to use acquirer alternate certificate", npe);
+            logger.Log(config, LogLevel.WARNING, "Failed to use acquirer cetificate. Trying to use acquirer alternate certificate", npe);
             return CheckIdxSignature(config, config.getAcquirerAlternateCertificateAlias(), doc, signature, fac);
         }
     }
@@ -304,7 +320,7 @@ class XmlProcessor {
     {
         if(acquirerCertificateAlias == null || acquirerCertificateAlias.isEmpty())
         {
-            logger.Log(config,"When checking idx signature, acquirer certificate was null or empty!");
+            logger.Log(config, LogLevel.WARNING, "When checking idx signature, acquirer certificate was null or empty!");
             return false;
         }
         DOMValidateContext valContext = new DOMValidateContext(new idxKeySelector(config, acquirerCertificateAlias), doc);
@@ -333,14 +349,16 @@ class XmlProcessor {
             final X509Certificate cert = (X509Certificate) data.getContent().get(0);
             final PublicKey pk = cert.getPublicKey();
 
-            logger.Log(config, "checking eMandate signature with certificate:");
-            try {
-                logger.Log(config, "  fingerprint: " + Utils.sha1Hex(cert.getEncoded()));
-            } catch (CertificateEncodingException | NoSuchAlgorithmException ex) {
-                logger.Log(config, "  (cannot get fingerprint): " + ex.getMessage());
+            if (logger.IsEnabled(config, LogLevel.DEBUG)) {
+                logger.Log(config, LogLevel.DEBUG, "checking eMandate signature with certificate:");
+                try {
+                    logger.Log(config, LogLevel.DEBUG, "  fingerprint: %s", Utils.sha1Hex(cert.getEncoded()));
+                } catch (CertificateEncodingException | NoSuchAlgorithmException ex) {
+                    logger.Log(config, LogLevel.DEBUG, "  (cannot get fingerprint): %s", ex.getMessage());
+                }
+                logger.Log(config, LogLevel.DEBUG, "  subject    : %s", cert.getSubjectDN().getName());
+                logger.Log(config, LogLevel.DEBUG, "  issuer     : %s", cert.getIssuerDN().getName());
             }
-            logger.Log(config, "  subject    : " + cert.getSubjectDN().getName());
-            logger.Log(config, "  issuer     : " + cert.getIssuerDN().getName());
 
             return new KeySelectorResult() {
                 @Override
@@ -371,17 +389,15 @@ class XmlProcessor {
                 KeyName kn = (KeyName) ki;
                 String thumbprint = kn.getName();
 
-                KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
-                InputStream is = config.getKeyStore();
-                is.reset();
-                ks.load(is, config.getKeyStorePassword().toCharArray());
-                X509Certificate cert = (X509Certificate) ks.getCertificate(acquirerCertificateAlias);
+                X509Certificate cert = config.getAcquirerCertificate(acquirerCertificateAlias);
                 final PublicKey pk = cert.getPublicKey();
 
-                logger.Log(config, "checking iDx signature with certificate:");
-                logger.Log(config, "  fingerprint: " + thumbprint);
-                logger.Log(config, "  subject    : " + cert.getSubjectDN().getName());
-                logger.Log(config, "  issuer     : " + cert.getIssuerDN().getName());
+                if (logger.IsEnabled(config, LogLevel.DEBUG)) {
+                    logger.Log(config, LogLevel.DEBUG, "checking iDx signature with certificate:");
+                    logger.Log(config, LogLevel.DEBUG, "  fingerprint: %s", thumbprint);
+                    logger.Log(config, LogLevel.DEBUG, "  subject    : %s", cert.getSubjectDN().getName());
+                    logger.Log(config, LogLevel.DEBUG, "  issuer     : %s", cert.getIssuerDN().getName());
+                }
 
                 return new KeySelectorResult() {
                     @Override
@@ -0,0 +1,293 @@
+package net.emandates.merchant.library.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * ITransactionStore that keeps the tracked transactions in memory and records every change in an append-only log
+ * file, which is replayed when the store is opened. Each record is prefixed with its length and a CRC32 checksum;
+ * a record that was only partially written before a crash is discarded on replay. When the log holds more than
+ * twice as many records as there are live transactions, it is compacted: the live transactions are written to a
+ * new file which then atomically replaces the log.
+ */
+public class FileTransactionStore implements ITransactionStore {
+    private static final byte OpSave = 1;
+    private static final byte OpRemove = 2;
+    private static final int MaxRecordLength = 64 * 1024;
+    private static final int MinCompactionRecords = 1024;
+
+    private final Path path;
+    private final Path compactionPath;
+    private final boolean sync;
+    private final ConcurrentHashMap<String, TrackedTransaction> transactions = new ConcurrentHashMap<>();
+    private FileChannel channel;
+    private long records;
+
+    /**
+     * Opens (or creates) a store without forcing every change to disk
+     * @param path location of the log file
+     * @throws IOException
+     */
+    public FileTransactionStore(String path) throws IOException {
+        this(Paths.get(path), false);
+    }
+
+    /**
+     * Opens (or creates) a store
+     * @param path location of the log file
+     * @param sync when true, every change is forced to the storage device before Save or Remove returns
+     * @throws IOException
+     */
+    public FileTransactionStore(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.compactionPath = path.resolveSibling(path.getFileName() + ".compact");
+        this.sync = sync;
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.deleteIfExists(compactionPath);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    @Override
+    public synchronized void Save(TrackedTransaction transaction) throws IOException {
+        ensureOpen();
+        append(encode(transaction));
+        transactions.put(transaction.getTransactionID(), transaction);
+        compactIfNeeded();
+    }
+
+    @Override
+    public TrackedTransaction Get(String transactionID) {
+        return transactions.get(transactionID);
+    }
+
+    @Override
+    public synchronized void Remove(String transactionID) throws IOException {
+        ensureOpen();
+        if (!transactions.containsKey(transactionID)) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OpRemove);
+        out.writeUTF(transactionID);
+        append(bytes.toByteArray());
+        transactions.remove(transactionID);
+        compactIfNeeded();
+    }
+
+    @Override
+    public Collection<TrackedTransaction> GetAll() {
+        return Collections.unmodifiableCollection(new ArrayList<>(transactions.values()));
+    }
+
+    @Override
+    public List<TrackedTransaction> GetDue(long now, int max) {
+        return InMemoryTransactionStore.dueOf(transactions.values(), now, max);
+    }
+
+    /**
+     * Moves the next poll time of the due transactions under the lock that Save and Remove take, so that a concurrent
+     * change is neither overwritten nor undone
+     */
+    @Override
+    public synchronized List<TrackedTransaction> TakeDue(long now, long nextPollTime, int max) throws IOException {
+        ensureOpen();
+        List<TrackedTransaction> taken = new ArrayList<>();
+        for (TrackedTransaction transaction : InMemoryTransactionStore.dueOf(transactions.values(), now, max)) {
+            TrackedTransaction rescheduled = transaction.withNextPollTime(nextPollTime);
+            append(encode(rescheduled));
+            transactions.put(rescheduled.getTransactionID(), rescheduled);
+            taken.add(rescheduled);
+        }
+        compactIfNeeded();
+        return taken;
+    }
+
+    @Override
+    public int CountDue(long now) {
+        return (int) transactions.values().stream().filter(t -> t.getNextPollTime() <= now).count();
+    }
+
+    @Override
+    public int Count() {
+        return transactions.size();
+    }
+
+    /**
+     * Rewrites the log so that it only contains the live transactions
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        try (FileChannel out = FileChannel.open(compactionPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (TrackedTransaction transaction : transactions.values()) {
+                write(out, encode(transaction));
+            }
+            out.force(true);
+        }
+
+        // the old log stays open until the new one has replaced it, so that a failed rename leaves the store usable
+        Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        FileChannel compacted = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        compacted.position(compacted.size());
+        FileChannel previous = channel;
+        channel = compacted;
+        records = transactions.size();
+        previous.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void replay() throws IOException {
+        long valid = 0;
+        try (InputStream is = Files.newInputStream(path);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(is))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MaxRecordLength) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                apply(payload);
+                valid += 8 + length;
+                records++;
+            }
+        } catch (EOFException ex) {
+            // end of log, possibly in the middle of a record that was not completely written
+        }
+
+        if (valid < channel.size()) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        if (op == OpSave) {
+            TrackedTransaction transaction = new TrackedTransaction(in.readUTF(), readString(in), readString(in), readString(in),
+                    readString(in), in.readLong(), in.readLong(), readString(in), in.readLong());
+            transactions.put(transaction.getTransactionID(), transaction);
+        } else if (op == OpRemove) {
+            transactions.remove(in.readUTF());
+        } else {
+            throw new IOException("unknown record type " + op);
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        write(channel, payload);
+        if (sync) {
+            channel.force(false);
+        }
+        records++;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (records > MinCompactionRecords && records > 2L * transactions.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Forces the rename of the compacted log to disk; not supported on every platform
+     */
+    private void syncDirectory() {
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // directories cannot be opened or forced on this platform
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("transaction store is closed");
+        }
+    }
+
+    private static void write(FileChannel out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static byte[] encode(TrackedTransaction transaction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OpSave);
+        out.writeUTF(transaction.getTransactionID());
+        writeString(out, transaction.getEntranceCode());
+        writeString(out, transaction.geteMandateID());
+        writeString(out, transaction.getMessageID());
+        writeString(out, transaction.getDebtorBankID());
+        out.writeLong(transaction.getCreationTime());
+        out.writeLong(transaction.getExpiryTime());
+        writeString(out, transaction.getLastStatus());
+        out.writeLong(transaction.getNextPollTime());
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
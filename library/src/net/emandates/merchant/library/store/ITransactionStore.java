@@ -0,0 +1,56 @@
+package net.emandates.merchant.library.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+public interface ITransactionStore extends AutoCloseable {
+    void Save(TrackedTransaction transaction) throws IOException;
+    TrackedTransaction Get(String transactionID) throws IOException;
+    void Remove(String transactionID) throws IOException;
+    Collection<TrackedTransaction> GetAll() throws IOException;
+    List<TrackedTransaction> GetDue(long now, int max) throws IOException;
+
+    /**
+     * Takes the due transactions, earliest first, and moves their next poll time so that they are not due again
+     * before then. This default reads and then saves each transaction, so it can undo a Save or Remove made in
+     * between; stores that can be used concurrently override it with an atomic version.
+     * @param now the current time
+     * @param nextPollTime the next poll time of the returned transactions
+     * @param max the maximum number of transactions to return
+     * @return the due transactions, with the new next poll time
+     * @throws IOException
+     */
+    default List<TrackedTransaction> TakeDue(long now, long nextPollTime, int max) throws IOException {
+        List<TrackedTransaction> due = GetDue(now, max);
+        List<TrackedTransaction> taken = new ArrayList<>(due.size());
+        for (TrackedTransaction transaction : due) {
+            TrackedTransaction rescheduled = transaction.withNextPollTime(nextPollTime);
+            Save(rescheduled);
+            taken.add(rescheduled);
+        }
+        return taken;
+    }
+
+    /**
+     * @param now the current time
+     * @return the number of transactions of which the next poll time has passed
+     * @throws IOException
+     */
+    default int CountDue(long now) throws IOException {
+        return GetDue(now, Integer.MAX_VALUE).size();
+    }
+
+    /**
+     * @return the number of transactions in the store
+     * @throws IOException
+     */
+    default int Count() throws IOException {
+        return GetAll().size();
+    }
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,86 @@
+package net.emandates.merchant.library.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * ITransactionStore that keeps the tracked transactions in memory only; nothing survives a restart.
+ */
+public class InMemoryTransactionStore implements ITransactionStore {
+    private final ConcurrentHashMap<String, TrackedTransaction> transactions = new ConcurrentHashMap<>();
+
+    @Override
+    public void Save(TrackedTransaction transaction) {
+        transactions.put(transaction.getTransactionID(), transaction);
+    }
+
+    @Override
+    public TrackedTransaction Get(String transactionID) {
+        return transactions.get(transactionID);
+    }
+
+    @Override
+    public void Remove(String transactionID) {
+        transactions.remove(transactionID);
+    }
+
+    @Override
+    public Collection<TrackedTransaction> GetAll() {
+        return Collections.unmodifiableCollection(new ArrayList<>(transactions.values()));
+    }
+
+    @Override
+    public List<TrackedTransaction> GetDue(long now, int max) {
+        return dueOf(transactions.values(), now, max);
+    }
+
+    /**
+     * Moves the next poll time of each due transaction in a single atomic update of its entry, so that a concurrent
+     * Save or Remove is neither overwritten nor undone
+     */
+    @Override
+    public List<TrackedTransaction> TakeDue(long now, long nextPollTime, int max) {
+        List<TrackedTransaction> taken = new ArrayList<>();
+        for (TrackedTransaction transaction : dueOf(transactions.values(), now, max)) {
+            TrackedTransaction[] rescheduled = new TrackedTransaction[1];
+            transactions.computeIfPresent(transaction.getTransactionID(), (id, current) -> {
+                if (current.getNextPollTime() > now) {
+                    return current;
+                }
+                rescheduled[0] = current.withNextPollTime(nextPollTime);
+                return rescheduled[0];
+            });
+            if (rescheduled[0] != null) {
+                taken.add(rescheduled[0]);
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    public int CountDue(long now) {
+        return (int) transactions.values().stream().filter(t -> t.getNextPollTime() <= now).count();
+    }
+
+    @Override
+    public int Count() {
+        return transactions.size();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static List<TrackedTransaction> dueOf(Collection<TrackedTransaction> transactions, long now, int max) {
+        return transactions.stream()
+                .filter(t -> t.getNextPollTime() <= now)
+                .sorted(Comparator.comparingLong(TrackedTransaction::getNextPollTime))
+                .limit(max)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,115 @@
+package net.emandates.merchant.library.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ITransactionStore that keeps the tracked transactions in a PendingTransactionTable, outside of the Java heap, for
+ * merchants following millions of transactions at once. Only the transaction ID, the last known status, the expiry
+ * time and the next poll time are kept: the other fields of a TrackedTransaction returned by Get are null or 0.
+ * Transaction IDs must have 16 digits. TakeDue and CountDue use the ordering of the table and do not scan it; nothing
+ * survives a restart.
+ */
+public class PendingTransactionStore implements ITransactionStore {
+    private final PendingTransactionTable table;
+
+    /**
+     * @param capacity the maximum number of transactions the store can hold
+     */
+    public PendingTransactionStore(int capacity) {
+        this.table = new PendingTransactionTable(capacity);
+    }
+
+    @Override
+    public void Save(TrackedTransaction transaction) throws IOException {
+        boolean saved;
+        try {
+            saved = table.put(transaction.getTransactionID(), transaction.getLastStatus(), transaction.getNextPollTime(),
+                    transaction.getExpiryTime());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        if (!saved) {
+            throw new IOException("transaction store is full (" + table.capacity() + " transactions)");
+        }
+    }
+
+    @Override
+    public TrackedTransaction Get(String transactionID) {
+        try {
+            return get(transactionID);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void Remove(String transactionID) {
+        try {
+            table.remove(transactionID);
+        } catch (IllegalArgumentException ex) {
+            // cannot have been saved
+        }
+    }
+
+    @Override
+    public Collection<TrackedTransaction> GetAll() {
+        List<TrackedTransaction> result = new ArrayList<>();
+        for (long id : table.getTransactionIDs()) {
+            TrackedTransaction transaction = get(PendingTransactionTable.decodeTransactionID(id));
+            if (transaction != null) {
+                result.add(transaction);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the due transactions without changing their next poll time; unlike TakeDue, this scans the table
+     */
+    @Override
+    public List<TrackedTransaction> GetDue(long now, int max) {
+        return InMemoryTransactionStore.dueOf(GetAll(), now, max);
+    }
+
+    @Override
+    public List<TrackedTransaction> TakeDue(long now, long nextPollTime, int max) {
+        long[] ids = new long[max];
+        int count = table.takeDue(now, nextPollTime, ids);
+        List<TrackedTransaction> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TrackedTransaction transaction = get(PendingTransactionTable.decodeTransactionID(ids[i]));
+            if (transaction != null) {
+                result.add(transaction);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int CountDue(long now) {
+        return table.countDue(now);
+    }
+
+    @Override
+    public int Count() {
+        return table.size();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private TrackedTransaction get(String transactionID) {
+        synchronized (table) {
+            if (!table.contains(transactionID)) {
+                return null;
+            }
+            return new TrackedTransaction(transactionID, null, null, null, null, 0, table.getExpiryTime(transactionID),
+                    table.getStatus(transactionID), table.getNextPollTime(transactionID));
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package net.emandates.merchant.library.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import net.emandates.merchant.library.StatusResponse;
+
+/**
+ * Fixed-capacity table of pending transactions, kept outside of the Java heap so that millions of entries add
+ * neither heap usage nor garbage collection work. Every entry is a fixed-width record of 32 bytes in a direct buffer:
+ * the 16-digit transaction ID encoded as a long, the next poll time, the expiry time and a status code. Entries are
+ * found through an open-addressing hash index and ordered by next poll time in a binary heap, both also held in direct
+ * buffers, so takeDue returns the next due batch without scanning the table.
+ */
+public class PendingTransactionTable {
+    private static final int SlotSize = 32;
+    private static final int IdOffset = 0;
+    private static final int NextPollOffset = 8;
+    private static final int ExpiryOffset = 16;
+    private static final int HeapPositionOffset = 24;
+    private static final int StatusOffset = 28;
+
+    private static final String[] Statuses = {
+        null, StatusResponse.Open, StatusResponse.Pending, StatusResponse.Success, StatusResponse.Failure,
+        StatusResponse.Expired, StatusResponse.Cancelled
+    };
+
+    private final int capacity;
+    private final int mask;
+    private final ByteBuffer slots;
+    private final IntBuffer index;
+    private final IntBuffer heap;
+    private final IntBuffer freeSlots;
+    private int size;
+    private int freeCount;
+
+    /**
+     * @param capacity the maximum number of pending transactions the table can hold
+     */
+    public PendingTransactionTable(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 25)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^25");
+        }
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.mask = tableSize - 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * SlotSize).order(ByteOrder.nativeOrder());
+        this.index = allocateInts(tableSize);
+        this.heap = allocateInts(capacity);
+        this.freeSlots = allocateInts(capacity);
+        for (int i = capacity - 1; i >= 0; i--) {
+            freeSlots.put(freeCount++, i);
+        }
+    }
+
+    /**
+     * Encodes a transaction ID into the long used as key by this table
+     * @param transactionID a transaction ID of 16 digits
+     * @return the numeric value of the transaction ID
+     */
+    public static long encodeTransactionID(String transactionID) {
+        if (transactionID == null || transactionID.length() != 16) {
+            throw new IllegalArgumentException("transaction ID must have 16 digits: " + transactionID);
+        }
+        long value = 0;
+        for (int i = 0; i < 16; i++) {
+            char c = transactionID.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("transaction ID must have 16 digits: " + transactionID);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * @param encoded a value returned by encodeTransactionID
+     * @return the transaction ID of 16 digits
+     */
+    public static String decodeTransactionID(long encoded) {
+        char[] digits = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            digits[i] = (char) ('0' + (encoded % 10));
+            encoded /= 10;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * @return the maximum number of pending transactions the table can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of pending transactions in the table
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds a transaction, or updates it if it is already present
+     * @param transactionID a transaction ID of 16 digits
+     * @param status the last known status, or null if unknown
+     * @param nextPollTime time at which the status should be requested next
+     * @param expiryTime time after which the transaction expires, or 0 if unknown
+     * @return false if the transaction is new and the table is full
+     */
+    public synchronized boolean put(String transactionID, String status, long nextPollTime, long expiryTime) {
+        long id = encodeTransactionID(transactionID);
+        int position = find(id);
+        int slot;
+        if (position >= 0) {
+            slot = index.get(position) - 1;
+        } else {
+            if (freeCount == 0) {
+                return false;
+            }
+            slot = freeSlots.get(--freeCount);
+            index.put(~position, slot + 1);
+            slots.putLong(offset(slot) + IdOffset, id);
+            slots.putLong(offset(slot) + NextPollOffset, Long.MAX_VALUE);
+            slots.putInt(offset(slot) + HeapPositionOffset, size);
+            heap.put(size, slot);
+            size++;
+        }
+        slots.putLong(offset(slot) + ExpiryOffset, expiryTime);
+        slots.put(offset(slot) + StatusOffset, statusCode(status));
+        reschedule(slot, nextPollTime);
+        return true;
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @return true if the transaction was present
+     */
+    public synchronized boolean remove(String transactionID) {
+        int position = find(encodeTransactionID(transactionID));
+        if (position < 0) {
+            return false;
+        }
+        int slot = index.get(position) - 1;
+        deleteIndexEntry(position);
+
+        int heapPosition = slots.getInt(offset(slot) + HeapPositionOffset);
+        size--;
+        if (heapPosition != size) {
+            moveInHeap(heap.get(size), heapPosition);
+            siftDown(heapPosition);
+            siftUp(heapPosition);
+        }
+        freeSlots.put(freeCount++, slot);
+        return true;
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @return true if the transaction is present
+     */
+    public synchronized boolean contains(String transactionID) {
+        return find(encodeTransactionID(transactionID)) >= 0;
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @return the last known status, or null if unknown or if the transaction is not present
+     */
+    public synchronized String getStatus(String transactionID) {
+        int slot = slotOf(transactionID);
+        return slot < 0 ? null : Statuses[slots.get(offset(slot) + StatusOffset)];
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @return the next poll time, or -1 if the transaction is not present
+     */
+    public synchronized long getNextPollTime(String transactionID) {
+        int slot = slotOf(transactionID);
+        return slot < 0 ? -1 : slots.getLong(offset(slot) + NextPollOffset);
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @return the expiry time, or -1 if the transaction is not present
+     */
+    public synchronized long getExpiryTime(String transactionID) {
+        int slot = slotOf(transactionID);
+        return slot < 0 ? -1 : slots.getLong(offset(slot) + ExpiryOffset);
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @param status the new status
+     * @return false if the transaction is not present
+     */
+    public synchronized boolean setStatus(String transactionID, String status) {
+        int slot = slotOf(transactionID);
+        if (slot < 0) {
+            return false;
+        }
+        slots.put(offset(slot) + StatusOffset, statusCode(status));
+        return true;
+    }
+
+    /**
+     * @param transactionID a transaction ID of 16 digits
+     * @param nextPollTime the new next poll time
+     * @return false if the transaction is not present
+     */
+    public synchronized boolean setNextPollTime(String transactionID, long nextPollTime) {
+        int slot = slotOf(transactionID);
+        if (slot < 0) {
+            return false;
+        }
+        reschedule(slot, nextPollTime);
+        return true;
+    }
+
+    /**
+     * @return the earliest next poll time in the table, or Long.MAX_VALUE when the table is empty
+     */
+    public synchronized long peekNextPollTime() {
+        return size == 0 ? Long.MAX_VALUE : slots.getLong(offset(heap.get(0)) + NextPollOffset);
+    }
+
+    /**
+     * Takes the transactions of which the next poll time has passed, earliest first, and moves their next poll time
+     * to the given time so that they are not returned again before then.
+     * @param now the current time
+     * @param rescheduleAt the next poll time for the returned transactions
+     * @param ids receives the encoded IDs of the due transactions; its length is the maximum batch size
+     * @return the number of IDs written to the array
+     */
+    public synchronized int takeDue(long now, long rescheduleAt, long[] ids) {
+        int count = 0;
+        while (count < ids.length && size > 0) {
+            int slot = heap.get(0);
+            if (slots.getLong(offset(slot) + NextPollOffset) > now) {
+                break;
+            }
+            ids[count++] = slots.getLong(offset(slot) + IdOffset);
+            reschedule(slot, rescheduleAt);
+        }
+        return count;
+    }
+
+    /**
+     * @param now the current time
+     * @return the number of transactions of which the next poll time has passed
+     */
+    public synchronized int countDue(long now) {
+        // only the subtrees below due entries are visited; the stack never holds more than the depth of the heap
+        int[] stack = new int[64];
+        int top = 0;
+        int count = 0;
+        if (size > 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int heapPosition = stack[--top];
+            if (keyAt(heapPosition) > now) {
+                continue;
+            }
+            count++;
+            int child = 2 * heapPosition + 1;
+            if (child < size) {
+                stack[top++] = child;
+            }
+            if (child + 1 < size) {
+                stack[top++] = child + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the encoded IDs of all transactions in the table, in no particular order
+     */
+    public synchronized long[] getTransactionIDs() {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = slots.getLong(offset(heap.get(i)) + IdOffset);
+        }
+        return ids;
+    }
+
+    private static IntBuffer allocateInts(int count) {
+        return ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private static byte statusCode(String status) {
+        for (byte i = 1; i < Statuses.length; i++) {
+            if (Statuses[i].equalsIgnoreCase(status)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static int offset(int slot) {
+        return slot * SlotSize;
+    }
+
+    private int home(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int slotOf(String transactionID) {
+        int position = find(encodeTransactionID(transactionID));
+        return position < 0 ? -1 : index.get(position) - 1;
+    }
+
+    /**
+     * @return the index position holding the ID, or the bitwise complement of the free position where it would go
+     */
+    private int find(long id) {
+        int position = home(id);
+        while (true) {
+            int entry = index.get(position);
+            if (entry == 0) {
+                return ~position;
+            }
+            if (slots.getLong(offset(entry - 1) + IdOffset) == id) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+    }
+
+    private void deleteIndexEntry(int position) {
+        int hole = position;
+        int next = position;
+        while (true) {
+            next = (next + 1) & mask;
+            int entry = index.get(next);
+            if (entry == 0) {
+                break;
+            }
+            int wanted = home(slots.getLong(offset(entry - 1) + IdOffset));
+            boolean staysPut = (hole <= next) ? (hole < wanted && wanted <= next) : (hole < wanted || wanted <= next);
+            if (!staysPut) {
+                index.put(hole, entry);
+                hole = next;
+            }
+        }
+        index.put(hole, 0);
+    }
+
+    private void reschedule(int slot, long nextPollTime) {
+        long previous = slots.getLong(offset(slot) + NextPollOffset);
+        slots.putLong(offset(slot) + NextPollOffset, nextPollTime);
+        int heapPosition = slots.getInt(offset(slot) + HeapPositionOffset);
+        if (nextPollTime < previous) {
+            siftUp(heapPosition);
+        } else {
+            siftDown(heapPosition);
+        }
+    }
+
+    private long keyAt(int heapPosition) {
+        return slots.getLong(offset(heap.get(heapPosition)) + NextPollOffset);
+    }
+
+    private void moveInHeap(int slot, int heapPosition) {
+        heap.put(heapPosition, slot);
+        slots.putInt(offset(slot) + HeapPositionOffset, heapPosition);
+    }
+
+    private void siftUp(int heapPosition) {
+        int slot = heap.get(heapPosition);
+        long key = slots.getLong(offset(slot) + NextPollOffset);
+        while (heapPosition > 0) {
+            int parent = (heapPosition - 1) >>> 1;
+            if (keyAt(parent) <= key) {
+                break;
+            }
+            moveInHeap(heap.get(parent), heapPosition);
+            heapPosition = parent;
+        }
+        moveInHeap(slot, heapPosition);
+    }
+
+    private void siftDown(int heapPosition) {
+        int slot = heap.get(heapPosition);
+        long key = slots.getLong(offset(slot) + NextPollOffset);
+        while (true) {
+            int child = 2 * heapPosition + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keyAt(child + 1) < keyAt(child)) {
+                child++;
+            }
+            if (keyAt(child) >= key) {
+                break;
+            }
+            moveInHeap(heap.get(child), heapPosition);
+            heapPosition = child;
+        }
+        moveInHeap(slot, heapPosition);
+    }
+}
@@ -0,0 +1,132 @@
+package net.emandates.merchant.library.store;
+
+/**
+ * Describes a transaction of which the status is being followed. Instances are immutable; use withStatus and
+ * withNextPollTime to derive an updated copy. All times are in milliseconds since the epoch, 0 meaning unknown.
+ */
+public class TrackedTransaction {
+    private final String transactionID;
+    private final String entranceCode;
+    private final String eMandateID;
+    private final String messageID;
+    private final String debtorBankID;
+    private final long creationTime;
+    private final long expiryTime;
+    private final String lastStatus;
+    private final long nextPollTime;
+
+    /**
+     * Constructor that highlights all fields for this object
+     * @param transactionID The transaction ID returned by the acquirer
+     * @param entranceCode The entrance code sent in the transaction request
+     * @param eMandateID ID that identifies the mandate and is issued by the creditor
+     * @param messageID Message ID of the pain message
+     * @param debtorBankID BIC of the Debtor Bank
+     * @param creationTime Time at which the transaction was created
+     * @param expiryTime Time after which the debtor can no longer authorise the transaction
+     * @param lastStatus The last known status, or null if no status has been received yet
+     * @param nextPollTime Time at which the status should be requested next
+     */
+    public TrackedTransaction(String transactionID, String entranceCode, String eMandateID, String messageID, String debtorBankID,
+            long creationTime, long expiryTime, String lastStatus, long nextPollTime) {
+        this.transactionID = transactionID;
+        this.entranceCode = entranceCode;
+        this.eMandateID = eMandateID;
+        this.messageID = messageID;
+        this.debtorBankID = debtorBankID;
+        this.creationTime = creationTime;
+        this.expiryTime = expiryTime;
+        this.lastStatus = lastStatus;
+        this.nextPollTime = nextPollTime;
+    }
+
+    /**
+     * Constructor for a transaction of which only the ID is known
+     * @param transactionID The transaction ID returned by the acquirer
+     * @param creationTime Time at which the transaction was created
+     */
+    public TrackedTransaction(String transactionID, long creationTime) {
+        this(transactionID, null, null, null, null, creationTime, 0, null, creationTime);
+    }
+
+    /**
+     * @param status the new last known status
+     * @return a copy of this transaction with the given status
+     */
+    public TrackedTransaction withStatus(String status) {
+        return new TrackedTransaction(transactionID, entranceCode, eMandateID, messageID, debtorBankID, creationTime, expiryTime,
+                status, nextPollTime);
+    }
+
+    /**
+     * @param nextPollTime the time at which the status should be requested next
+     * @return a copy of this transaction with the given next poll time
+     */
+    public TrackedTransaction withNextPollTime(long nextPollTime) {
+        return new TrackedTransaction(transactionID, entranceCode, eMandateID, messageID, debtorBankID, creationTime, expiryTime,
+                lastStatus, nextPollTime);
+    }
+
+    /**
+     * @return The transaction ID
+     */
+    public String getTransactionID() {
+        return transactionID;
+    }
+
+    /**
+     * @return The entrance code, or null if unknown
+     */
+    public String getEntranceCode() {
+        return entranceCode;
+    }
+
+    /**
+     * @return The eMandate ID, or null if unknown
+     */
+    public String geteMandateID() {
+        return eMandateID;
+    }
+
+    /**
+     * @return The message ID, or null if unknown
+     */
+    public String getMessageID() {
+        return messageID;
+    }
+
+    /**
+     * @return BIC of the Debtor Bank, or null if unknown
+     */
+    public String getDebtorBankID() {
+        return debtorBankID;
+    }
+
+    /**
+     * @return Time at which the transaction was created
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return Time after which the debtor can no longer authorise the transaction, or 0 if unknown
+     */
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    /**
+     * @return The last known status, or null if no status has been received yet
+     */
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    /**
+     * @return Time at which the status should be requested next
+     */
+    public long getNextPollTime() {
+        return nextPollTime;
+    }
+}
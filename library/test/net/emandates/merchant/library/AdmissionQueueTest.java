@@ -0,0 +1,120 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdmissionQueueTest {
+    private static RequestContext context(RequestClass requestClass) throws Exception {
+        return new RequestContext("status", Configuration.builder().build(), requestClass, null, null, IMetrics.None,
+                ITracer.None, null);
+    }
+
+    @Test
+    void admitsBeforeTheSizeIsKnown() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(2, 100, AdmissionQueue.Policy.REJECT_NEWEST);
+        RequestContext first = context(RequestClass.INTERACTIVE);
+        queue.admit(first);
+        assertEquals(1, queue.getOutstanding());
+        assertEquals(0, queue.getOutstandingBytes());
+
+        // alone, a request fits whatever its size
+        queue.reserve(first, 150);
+        assertEquals(150, queue.getOutstandingBytes());
+
+        // maxBytes is used up, so nothing else is admitted
+        AdmissionException ex = assertThrows(AdmissionException.class, () -> queue.admit(context(RequestClass.INTERACTIVE)));
+        assertEquals(AdmissionQueue.ErrorCodeQueueFull, ex.getErrorCode());
+
+        queue.release(first);
+        assertEquals(0, queue.getOutstanding());
+        assertEquals(0, queue.getOutstandingBytes());
+    }
+
+    @Test
+    void rejectsARequestThatIsTooLargeOnceBuilt() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(2, 100, AdmissionQueue.Policy.REJECT_NEWEST);
+        RequestContext first = context(RequestClass.INTERACTIVE);
+        RequestContext second = context(RequestClass.INTERACTIVE);
+        queue.admit(first);
+        queue.admit(second);
+        queue.reserve(first, 60);
+
+        assertThrows(AdmissionException.class, () -> queue.reserve(second, 60));
+        assertEquals(2, queue.getOutstanding());
+        queue.release(second);
+        assertEquals(1, queue.getOutstanding());
+        assertEquals(60, queue.getOutstandingBytes());
+    }
+
+    @Test
+    void dropsAnUnsentRequestOfLowerPriority() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(1, 100, AdmissionQueue.Policy.DROP_LOWEST_PRIORITY);
+        RequestContext bulk = context(RequestClass.BULK);
+        queue.admit(bulk);
+        queue.reserve(bulk, 10);
+
+        RequestContext interactive = context(RequestClass.INTERACTIVE);
+        queue.admit(interactive);
+        assertTrue(bulk.dropped);
+        assertEquals(1, queue.getOutstanding());
+        assertEquals(0, queue.getOutstandingBytes());
+        AdmissionException ex = assertThrows(AdmissionException.class, () -> queue.startSending(bulk));
+        assertEquals(AdmissionQueue.ErrorCodeDropped, ex.getErrorCode());
+    }
+
+    @Test
+    void makesRoomForBytesOnlyByDroppingBuiltRequests() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(10, 100, AdmissionQueue.Policy.DROP_LOWEST_PRIORITY);
+        RequestContext unbuilt = context(RequestClass.BULK);
+        RequestContext built = context(RequestClass.BULK);
+        RequestContext interactive = context(RequestClass.INTERACTIVE);
+        queue.admit(unbuilt);
+        queue.admit(built);
+        queue.reserve(built, 50);
+        queue.admit(interactive);
+        queue.reserve(interactive, 40);
+
+        RequestContext next = context(RequestClass.INTERACTIVE);
+        queue.admit(next);
+        queue.reserve(next, 30);
+        assertTrue(built.dropped);
+        assertFalse(unbuilt.dropped);
+        assertEquals(3, queue.getOutstanding());
+        assertEquals(70, queue.getOutstandingBytes());
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    void rejectsWithoutDroppingWhenDroppingWouldNotMakeEnoughRoom() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue(10, 100, AdmissionQueue.Policy.DROP_LOWEST_PRIORITY);
+        RequestContext unbuilt = context(RequestClass.BULK);
+        RequestContext built = context(RequestClass.BULK);
+        RequestContext interactive = context(RequestClass.INTERACTIVE);
+        queue.admit(unbuilt);
+        queue.admit(built);
+        queue.reserve(built, 10);
+        queue.admit(interactive);
+        queue.reserve(interactive, 80);
+
+        RequestContext next = context(RequestClass.INTERACTIVE);
+        queue.admit(next);
+        AdmissionException ex = assertThrows(AdmissionException.class, () -> queue.reserve(next, 30));
+        assertEquals(AdmissionQueue.ErrorCodeQueueFull, ex.getErrorCode());
+        assertFalse(built.dropped);
+        assertFalse(unbuilt.dropped);
+        assertEquals(0, queue.getDropped());
+        assertEquals(90, queue.getOutstandingBytes());
+    }
+
+    @Test
+    void countsUtf8Bytes() {
+        assertEquals(3, Utils.utf8Length("abc"));
+        assertEquals(2, Utils.utf8Length("é"));
+        assertEquals(3, Utils.utf8Length("€"));
+        assertEquals(4, Utils.utf8Length("😀"));
+    }
+}
@@ -0,0 +1,69 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchImporterTest {
+    @TempDir
+    Path dir;
+
+    // records of an unknown type fail without sending anything, which is all a resume needs
+    private Path input(int records) throws Exception {
+        StringBuilder content = new StringBuilder("type,messageID\n");
+        for (int i = 0; i < records; i++) {
+            content.append("none,M").append(i).append('\n');
+        }
+        return Files.write(dir.resolve("input.csv"), content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private BatchImporter importer() throws Exception {
+        BatchImporter importer = new BatchImporter(new CoreCommunicator(Configuration.builder().build()));
+        importer.setConcurrency(2);
+        return importer;
+    }
+
+    @Test
+    void resumesFromTheRecordsLoggedByAnInterruptedRun() throws Exception {
+        Path input = input(6);
+        Path output = dir.resolve("output.csv");
+        Path checkpoint = dir.resolve("checkpoint");
+        // an interrupted run completed records 0, 1 and 3, and was writing record 5 when it stopped
+        Files.write(checkpoint, "watermark=1\ncompleted=\n1\n3\n5".getBytes(StandardCharsets.UTF_8));
+
+        BatchImporter.Summary summary = importer().run(input, BatchImporter.Format.CSV, output, checkpoint);
+        assertEquals(3, summary.getSkipped());
+        assertEquals(3, summary.getSubmitted());
+        assertEquals(3, summary.getFailed());
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertTrue(lines.stream().skip(1).allMatch(l -> l.matches("[245],none,M[245],true,.*")), lines.toString());
+        assertEquals("watermark=6\ncompleted=\n", new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+
+        summary = importer().run(input, BatchImporter.Format.CSV, output, checkpoint);
+        assertEquals(6, summary.getSkipped());
+        assertEquals(0, summary.getSubmitted());
+    }
+
+    @Test
+    void compactsTheCheckpointAfterARun() throws Exception {
+        Path input = input(3);
+        Path output = dir.resolve("output.csv");
+        Path checkpoint = dir.resolve("checkpoint");
+
+        importer().run(input, BatchImporter.Format.CSV, output, checkpoint);
+        assertEquals("watermark=3\ncompleted=\n", new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+
+        Files.write(input, "type,messageID\nnone,M0\nnone,M1\nnone,M2\nnone,M3\n".getBytes(StandardCharsets.UTF_8));
+        BatchImporter.Summary summary = importer().run(input, BatchImporter.Format.CSV, output, checkpoint);
+        assertEquals(3, summary.getSkipped());
+        assertEquals(1, summary.getSubmitted());
+    }
+}
@@ -0,0 +1,40 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class BatchRecordReaderTest {
+    private static String readFailure(String json, int validRecords) {
+        BatchRecordReader reader = BatchRecordReader.json(new StringReader(json));
+        for (int i = 0; i < validRecords; i++) {
+            reader.next();
+        }
+        return assertThrows(UncheckedIOException.class, reader::hasNext).getCause().getMessage();
+    }
+
+    @Test
+    void readsEscapes() {
+        BatchRecordReader reader = BatchRecordReader.json(new StringReader(
+                "{\"a\": \"x\\u00e9\\u00C9\\n\\\"\", \"b\": null, \"c\": 12}\n{\"a\": \"\"}"));
+        Map<String, String> record = reader.next();
+        assertEquals("x\u00e9\u00c9\n\"", record.get("a"));
+        assertEquals(null, record.get("b"));
+        assertEquals("12", record.get("c"));
+        assertEquals(null, reader.next().get("a"));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void rejectsAnEscapeWithoutFourHexDigits() {
+        assertEquals("invalid \\u escape in record 1", readFailure("[{\"a\": \"1\"}, {\"a\": \"\\u12G4\"}]", 1));
+        assertEquals("invalid \\u escape in record 0", readFailure("{\"a\": \"\\u12\"}", 0));
+        assertEquals("invalid \\u escape in record 0", readFailure("{\"a\": \"\\u1", 0));
+        assertEquals("unterminated string in record 0", readFailure("{\"a\": \"\\", 0));
+    }
+}
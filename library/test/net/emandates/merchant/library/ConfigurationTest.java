@@ -0,0 +1,90 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import org.junit.jupiter.api.Test;
+
+class ConfigurationTest {
+    private static Configuration mutable() throws Exception {
+        Configuration config = Configuration.builder().build().clone();
+        config.seteMandateContractId("012345678");
+        config.seteMandateContractSubId(1);
+        config.setMerchantReturnUrl("https://merchant.example/return");
+        config.setSigningCertificateAlias("signer");
+        config.setSigningCertificatePassword("secret");
+        config.setAcquirerCertificateAlias("acquirer");
+        config.setAcquirerAlternateCertificateAlias("acquirer2");
+        config.setAcquirerUrl_DirectoryReq("https://acquirer.example/directory");
+        config.setAcquirerUrl_TransactionReq("https://acquirer.example/transaction");
+        config.setAcquirerUrl_StatusReq("https://acquirer.example/status");
+        config.setLogsEnabled(true);
+        config.setServiceLogsEnabled(true);
+        config.setServiceLogsLocation("logs");
+        config.setServiceLogsPattern("%a.xml");
+        config.setTls12Enabled(true);
+        return config;
+    }
+
+    /**
+     * Compares the values of all public getters
+     */
+    private static void assertSameValues(Configuration expected, Configuration actual) throws Exception {
+        for (Method method : Configuration.class.getMethods()) {
+            String name = method.getName();
+            if (method.getParameterCount() == 0 && method.getDeclaringClass() == Configuration.class
+                    && (name.startsWith("get") || name.startsWith("is")) && !name.equals("isImmutable")) {
+                assertEquals(method.invoke(expected), method.invoke(actual), name);
+            }
+        }
+    }
+
+    @Test
+    void snapshotKeepsTheValuesItWasCreatedWith() throws Exception {
+        Configuration config = mutable();
+        Configuration snapshot = config.snapshot();
+        assertTrue(snapshot.isImmutable());
+        assertSame(snapshot, snapshot.snapshot());
+        assertSameValues(config, snapshot);
+
+        config.seteMandateContractId("999999999");
+        assertEquals("012345678", snapshot.geteMandateContractId());
+
+        Configuration copy = snapshot.clone();
+        assertFalse(copy.isImmutable());
+        assertSameValues(snapshot, copy);
+        assertSameValues(snapshot, snapshot.toBuilder().build());
+    }
+
+    @Test
+    void snapshotHoldsItsValuesInFinalFields() throws Exception {
+        for (Field field : ConfigurationSnapshot.class.getDeclaredFields()) {
+            assertTrue(Modifier.isFinal(field.getModifiers()), field.getName());
+        }
+        Configuration snapshot = mutable().snapshot();
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.seteMandateContractId("999999999"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.setLoggerFactory(null));
+        assertEquals("012345678", snapshot.geteMandateContractId());
+    }
+
+    @Test
+    void tenantConfigurationTakesTheTenantsContract() throws Exception {
+        Configuration shared = mutable().snapshot();
+        Configuration tenant = Configuration.builder().build().clone();
+        tenant.seteMandateContractId("000000002");
+        tenant.setMerchantReturnUrl("https://tenant.example/return");
+
+        Configuration config = shared.forTenant(tenant, null);
+        assertTrue(config.isImmutable());
+        assertEquals("000000002", config.geteMandateContractId());
+        assertEquals("https://tenant.example/return", config.getMerchantReturnUrl());
+        assertEquals(shared.getAcquirerUrl_StatusReq(), config.getAcquirerUrl_StatusReq());
+        assertEquals("000000002/0", config.getTenant());
+    }
+}
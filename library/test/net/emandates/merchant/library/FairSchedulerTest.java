@@ -0,0 +1,55 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FairSchedulerTest {
+    @Test
+    void runsQueuedTasksInFairOrderRatherThanArrivalOrder() {
+        FairScheduler scheduler = new FairScheduler();
+        scheduler.setMaxConcurrent(1);
+        List<String> started = new ArrayList<>();
+
+        scheduler.acquire("tenant", RequestClass.BULK, () -> started.add("first"));
+        for (int i = 0; i < 8; i++) {
+            String name = "bulk" + i;
+            scheduler.acquire("tenant", RequestClass.BULK, () -> started.add(name));
+        }
+        scheduler.acquire("tenant", RequestClass.INTERACTIVE, () -> started.add("interactive"));
+        assertEquals(List.of("first"), started);
+        assertEquals(9, scheduler.getQueueLength());
+
+        // every task returns its slot at once, which starts the next one
+        while (scheduler.getQueueLength() > 0) {
+            scheduler.release();
+        }
+        assertEquals(10, started.size());
+        assertEquals("interactive", started.get(1));
+        assertEquals("bulk0", started.get(2));
+        assertEquals(1, scheduler.getInFlight());
+
+        scheduler.release();
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(8, scheduler.getWaitStatistics("tenant", RequestClass.BULK).getWaited());
+        assertEquals(1, scheduler.getWaitStatistics("tenant", RequestClass.INTERACTIVE).getWaited());
+    }
+
+    @Test
+    void raisingTheLimitStartsWaitingTasks() throws Exception {
+        FairScheduler scheduler = new FairScheduler();
+        scheduler.setMaxConcurrent(1);
+        scheduler.acquire("tenant", RequestClass.POLLING);
+        List<String> started = new ArrayList<>();
+        scheduler.acquire("tenant", RequestClass.POLLING, () -> started.add("a"));
+        scheduler.acquire("tenant", RequestClass.POLLING, () -> started.add("b"));
+        assertTrue(started.isEmpty());
+
+        scheduler.setMaxConcurrent(3);
+        assertEquals(List.of("a", "b"), started);
+        assertEquals(3, scheduler.getInFlight());
+    }
+}
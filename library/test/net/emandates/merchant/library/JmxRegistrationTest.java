@@ -0,0 +1,81 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.management.Attribute;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class JmxRegistrationTest {
+    private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+    private final RequestPipeline pipeline = new RequestPipeline(1, 2, 16);
+    private final ServiceLogWriter writer = new ServiceLogWriter(16, ServiceLogWriter.OverflowPolicy.BLOCK);
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+        writer.close();
+    }
+
+    private static ObjectName name(String type) throws Exception {
+        return new ObjectName(JmxRegistration.Domain + ":type=" + type + ",name=" + ObjectName.quote("test"));
+    }
+
+    @Test
+    void registersAndUnregistersTheBeans() throws Exception {
+        pipeline.setAdmissionQueue(new AdmissionQueue(10, 1000, AdmissionQueue.Policy.REJECT_NEWEST));
+        writer.setSampler(new ServiceLogSampler(100));
+        try (JmxRegistration registration = new JmxRegistration(server, "test")) {
+            registration.register(pipeline).register(writer);
+            for (String type : new String[] { "RequestPipeline", "FairScheduler", "AdmissionQueue", "ServiceLogWriter",
+                    "ServiceLogSampler" }) {
+                assertTrue(server.isRegistered(name(type)), type);
+            }
+            assertEquals(2, server.getAttribute(name("RequestPipeline"), "TransportThreads"));
+            assertThrows(InstanceAlreadyExistsException.class, () -> registration.register(writer));
+
+            registration.close();
+            assertEquals(0, server.queryNames(new ObjectName(JmxRegistration.Domain + ":*"), null).size());
+        }
+    }
+
+    @Test
+    void writesTheAttributesThroughTheServer() throws Exception {
+        AdmissionQueue admission = new AdmissionQueue(10, 1000, AdmissionQueue.Policy.REJECT_NEWEST);
+        pipeline.setAdmissionQueue(admission);
+        ServiceLogSampler sampler = new ServiceLogSampler(100);
+        writer.setSampler(sampler);
+        try (JmxRegistration registration = new JmxRegistration(server, "test")) {
+            registration.register(pipeline).register(writer);
+
+            server.setAttribute(name("FairScheduler"), new Attribute("MaxConcurrent", 1));
+            assertEquals(1, pipeline.getScheduler().getMaxConcurrent());
+
+            server.invoke(name("AdmissionQueue"), "setLimits", new Object[] { 5, 500L },
+                    new String[] { int.class.getName(), long.class.getName() });
+            assertEquals(5, admission.getMaxRequests());
+            assertEquals(500L, server.getAttribute(name("AdmissionQueue"), "MaxBytes"));
+            // enums are open types of their name
+            server.setAttribute(name("AdmissionQueue"), new Attribute("Policy", "DROP_LOWEST_PRIORITY"));
+            assertEquals(AdmissionQueue.Policy.DROP_LOWEST_PRIORITY, admission.getPolicy());
+
+            server.setAttribute(name("ServiceLogWriter"), new Attribute("OverflowPolicy", "SAMPLE"));
+            server.setAttribute(name("ServiceLogWriter"), new Attribute("SampleRate", 0));
+            assertEquals(ServiceLogWriter.OverflowPolicy.SAMPLE, writer.getOverflowPolicy());
+            assertEquals(1, writer.getSampleRate());
+
+            server.setAttribute(name("ServiceLogSampler"), new Attribute("QueueThreshold", 0.25));
+            server.setAttribute(name("ServiceLogSampler"), new Attribute("LatencyThresholdMillis", 200L));
+            assertEquals(0.25, sampler.getQueueThreshold());
+            assertEquals(200, sampler.getLatencyThresholdMillis());
+        }
+        assertFalse(server.isRegistered(name("ServiceLogSampler")));
+    }
+}
@@ -0,0 +1,82 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class MessageRedactorTest {
+    private final MessageRedactor redactor = new MessageRedactor(Arrays.asList("IBAN", "Nm", "Dbtr/Id"), "***");
+
+    @Test
+    void masksTheDefaultPathsOfAMessage() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:pain.009.001.04\">\n"
+                + "  <MndtInitnReq>\n"
+                + "    <GrpHdr><MsgId>M0001</MsgId><CreDtTm>2026-01-01T00:00:00Z</CreDtTm></GrpHdr>\n"
+                + "    <Mndt>\n"
+                + "      <MndtReqId>REQ1</MndtReqId>\n"
+                + "      <Cdtr><Nm>Creditor B.V.</Nm></Cdtr>\n"
+                + "      <Dbtr><Nm>J. Jansen</Nm><Id><PrvtId><Othr><Id>123456789</Id></Othr></PrvtId></Id></Dbtr>\n"
+                + "      <DbtrAcct><Id><IBAN>NL44RABO0123456789</IBAN></Id></DbtrAcct>\n"
+                + "      <DbtrAgt><FinInstnId><BICFI>RABONL2U</BICFI></FinInstnId></DbtrAgt>\n"
+                + "    </Mndt>\n"
+                + "  </MndtInitnReq>\n"
+                + "</Document>";
+        String expected = xml.replace("Creditor B.V.", "***").replace("J. Jansen", "***").replace("123456789</Id>", "***</Id>")
+                .replace("NL44RABO0123456789", "***");
+        assertEquals(expected, new MessageRedactor().redact(xml));
+    }
+
+    @Test
+    void ignoresNamespacePrefixes() {
+        assertEquals("<p:Dbtr xmlns:p=\"urn:x\"><p:Nm>***</p:Nm></p:Dbtr>",
+                redactor.redact("<p:Dbtr xmlns:p=\"urn:x\"><p:Nm>Jansen</p:Nm></p:Dbtr>"));
+    }
+
+    @Test
+    void matchesAPathOnlyAsTheInnermostElements() {
+        assertEquals("<Dbtr><Id>***</Id></Dbtr><Cdtr><Id>C1</Id></Cdtr><Dbtr><Acct><Id>A1</Id></Acct></Dbtr>",
+                redactor.redact("<Dbtr><Id>D1</Id></Dbtr><Cdtr><Id>C1</Id></Cdtr><Dbtr><Acct><Id>A1</Id></Acct></Dbtr>"));
+        // names must match exactly
+        assertEquals("<UltmtDbtr><Id>U1</Id></UltmtDbtr><NmX>x</NmX>",
+                redactor.redact("<UltmtDbtr><Id>U1</Id></UltmtDbtr><NmX>x</NmX>"));
+    }
+
+    @Test
+    void masksNestedElementsOnceAndStopsAtTheEndOfTheMaskedElement() {
+        assertEquals("<Dbtr><Id><Othr><Id>***</Id><Nm>***</Nm></Othr></Id><Ctry>NL</Ctry></Dbtr>",
+                redactor.redact("<Dbtr><Id><Othr><Id>1</Id><Nm>Jansen</Nm></Othr></Id><Ctry>NL</Ctry></Dbtr>"));
+    }
+
+    @Test
+    void masksCDataButCopiesComments() {
+        assertEquals("<Nm>***<!-- name -->***</Nm><Note><![CDATA[<Nm>kept</Nm>]]></Note>",
+                redactor.redact("<Nm>J.<!-- name --><![CDATA[Jansen]]></Nm><Note><![CDATA[<Nm>kept</Nm>]]></Note>"));
+        assertEquals("<!-- <Nm>kept</Nm> --><Nm>***</Nm>", redactor.redact("<!-- <Nm>kept</Nm> --><Nm>x</Nm>"));
+    }
+
+    @Test
+    void handlesSelfClosingTagsAndQuotedBrackets() {
+        assertEquals("<Nm/><Nm a=\"1\" /><Ctry>NL</Ctry>", redactor.redact("<Nm/><Nm a=\"1\" /><Ctry>NL</Ctry>"));
+        assertEquals("<Nm title=\"a > b\" alt='/>'>***</Nm><Ctry>NL</Ctry>",
+                redactor.redact("<Nm title=\"a > b\" alt='/>'>Jansen</Nm><Ctry>NL</Ctry>"));
+    }
+
+    @Test
+    void keepsWhitespaceInMaskedElements() {
+        assertEquals("<Nm>\n  <First>***</First>\n</Nm>", redactor.redact("<Nm>\n  <First>J.</First>\n</Nm>"));
+    }
+
+    @Test
+    void copiesAMalformedTail() {
+        assertEquals("<Nm>***</Nm><Ctry", redactor.redact("<Nm>Jansen</Nm><Ctry"));
+        assertEquals("<Nm>***", redactor.redact("<Nm>Jansen"));
+        assertEquals("<Nm>***<!-- open", redactor.redact("<Nm>Jansen<!-- open"));
+        // an unterminated CDATA section in a masked element is masked up to the end
+        assertEquals("<Nm>******", redactor.redact("<Nm>Jansen<![CDATA[J."));
+        assertEquals("<Nm a=\"x>", redactor.redact("<Nm a=\"x>"));
+        assertEquals("<Ctry>NL</", redactor.redact("<Ctry>NL</"));
+        assertEquals("text<", redactor.redact("text<"));
+    }
+}
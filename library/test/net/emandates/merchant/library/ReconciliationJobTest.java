@@ -0,0 +1,38 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReconciliationJobTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void resumesFromTheStatusesLoggedByAnInterruptedRun() throws Exception {
+        Path checkpoint = dir.resolve("checkpoint.csv");
+        // an interrupted run logged a final status for both transactions, and was writing a third line when it stopped
+        String lines = String.join(System.lineSeparator(), "transactionID,status,issuer,statusDateTimestamp",
+                "0000000000000001,Open,BANKNL2U,", "0000000000000002,Pending,,", "0000000000000001,Success,BANKNL2U,",
+                "0000000000000002,Expired,,", "0000000000000003,Succ");
+        Files.write(checkpoint, lines.getBytes(StandardCharsets.UTF_8));
+
+        ReconciliationJob job = new ReconciliationJob(new CoreCommunicator(Configuration.builder().build()));
+        ReconciliationJob.Summary summary = job.run(Arrays.asList("0000000000000001", "0000000000000002"),
+                dir.resolve("report.csv"), dir.resolve("summary.csv"), checkpoint);
+        assertEquals(2, summary.getCached());
+        assertEquals(0, summary.getPolled());
+        assertEquals(1L, summary.getCounts().get("Success").get("BANKNL2U"));
+        assertEquals(1L, summary.getCounts().get("Expired").get(""));
+
+        List<String> compacted = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+        assertEquals(3, compacted.size());
+        assertEquals("transactionID,status,issuer,statusDateTimestamp", compacted.get(0));
+    }
+}
@@ -0,0 +1,155 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ServiceLogArchiveTest {
+    @TempDir
+    Path dir;
+
+    private static String message(int i) {
+        return "<AcquirerStatusRes><Transaction><transactionID>T" + (i % 10) + "</transactionID></Transaction>"
+                + "<GrpHdr><MsgId>M" + i + "</MsgId></GrpHdr></AcquirerStatusRes>";
+    }
+
+    private static void append(ServiceLogArchive archive, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            archive.append(1000 + i, message(i));
+        }
+    }
+
+    private static void assertFindsAll(ServiceLogArchive archive, int count) throws Exception {
+        List<ServiceLogArchive.Entry> entries = archive.findByTransactionID("T3");
+        assertEquals((count + 6) / 10, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(message(3 + 10 * i), archive.read(entries.get(i)));
+        }
+        for (int i : new int[] { 0, count / 2, count - 1 }) {
+            List<ServiceLogArchive.Entry> found = archive.findByMessageID("M" + i);
+            assertEquals(1, found.size());
+            assertEquals(1000 + i, found.get(0).getTimestamp());
+            assertEquals(message(i), archive.read(found.get(0)));
+        }
+        assertTrue(archive.findByMessageID("M" + count).isEmpty());
+        assertEquals(count, archive.findByTime(0, Long.MAX_VALUE).size());
+        assertEquals(20, archive.findByTime(1010, 1030).size());
+    }
+
+    @Test
+    void findsMessagesInFinishedAndCurrentSegments() throws Exception {
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000)) {
+            append(archive, 0, 200);
+            assertTrue(ServiceLogArchive.segmentNumbers(dir).size() > 5);
+            assertTrue(Files.exists(ServiceLogIndex.keyFile(dir, 1)));
+            assertFindsAll(archive, 200);
+        }
+    }
+
+    @Test
+    void reopensAndAppends() throws Exception {
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000, true)) {
+            append(archive, 0, 150);
+        }
+        // lookup files missing, e.g. of an archive written before they existed, are written again
+        Files.delete(ServiceLogIndex.keyFile(dir, 2));
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000, true)) {
+            assertFindsAll(archive, 150);
+            append(archive, 150, 300);
+            assertFindsAll(archive, 300);
+        }
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000, false)) {
+            append(archive, 300, 320);
+            assertFindsAll(archive, 320);
+        }
+    }
+
+    @Test
+    void reindexesAfterATornWrite() throws Exception {
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 1 << 20)) {
+            append(archive, 0, 50);
+        }
+        // the last record was partly written, and the index is missing its last entries
+        Path segment = ServiceLogArchive.segmentFile(dir, 1, false);
+        Files.write(segment, new byte[] { 0, 0, 1, 0, 0, 0 }, StandardOpenOption.APPEND);
+        Path index = ServiceLogArchive.indexFile(dir, 1);
+        byte[] bytes = Files.readAllBytes(index);
+        Files.write(index, Arrays.copyOf(bytes, bytes.length - 30));
+
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 1 << 20)) {
+            assertFindsAll(archive, 50);
+            append(archive, 50, 60);
+            assertFindsAll(archive, 60);
+        }
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 1 << 20)) {
+            assertFindsAll(archive, 60);
+        }
+    }
+
+    @Test
+    void reindexesAFinishedSegmentWithAStaleLookupFile() throws Exception {
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000)) {
+            append(archive, 0, 100);
+        }
+        Path index = ServiceLogArchive.indexFile(dir, 1);
+        byte[] bytes = Files.readAllBytes(index);
+        Files.write(index, Arrays.copyOf(bytes, bytes.length / 2));
+
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 2000)) {
+            assertFindsAll(archive, 100);
+        }
+    }
+
+    @Test
+    void flushDoesNotEndACompressedBlock() throws Exception {
+        Path segment = ServiceLogArchive.segmentFile(dir, 1, true);
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 1 << 20, true)) {
+            for (int i = 0; i < 30; i++) {
+                append(archive, i, i + 1);
+                archive.flush();
+                assertEquals(message(i), archive.read(archive.findByMessageID("M" + i).get(0)));
+            }
+            assertEquals(0, Files.size(segment));
+            assertTrue(Files.exists(ServiceLogArchive.tailFile(dir, 1)));
+        }
+        assertFalse(Files.exists(ServiceLogArchive.tailFile(dir, 1)));
+        assertTrue(ServiceLogSegment.Open(segment, 1, true).getSize() > 0);
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir, 1 << 20, true)) {
+            assertFindsAll(archive, 30);
+        }
+    }
+
+    @Test
+    void recoversTheUnfinishedBlockAfterACrash() throws Exception {
+        Path copy = Files.createDirectory(dir.resolve("copy"));
+        try (ServiceLogArchive archive = new ServiceLogArchive(dir.resolve("archive"), 1 << 20, true)) {
+            append(archive, 0, 1000);
+            archive.flush();
+            append(archive, 1000, 1010);
+            // a copy of the files is what a crash leaves behind
+            try (Stream<Path> files = Files.list(dir.resolve("archive"))) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, copy.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        assertTrue(Files.exists(ServiceLogArchive.tailFile(copy, 1)));
+
+        try (ServiceLogArchive archive = new ServiceLogArchive(copy, 1 << 20, true)) {
+            assertFalse(Files.exists(ServiceLogArchive.tailFile(copy, 1)));
+            assertFindsAll(archive, 1000);
+            append(archive, 1000, 1100);
+            assertFindsAll(archive, 1100);
+        }
+    }
+}
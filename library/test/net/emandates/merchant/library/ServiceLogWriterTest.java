@@ -0,0 +1,153 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ServiceLogWriterTest {
+    @TempDir
+    Path dir;
+
+    private Configuration config;
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Holds the writer thread in the first message until released, and fails on messages named Fail
+     */
+    private class GatedRedactor extends MessageRedactor {
+        @Override
+        MessageInfo redact(MessageInfo message) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (message.getMessageType().startsWith("Fail")) {
+                throw new IllegalStateException("cannot redact " + message.getMessageType());
+            }
+            return message;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = Configuration.builder().serviceLogsLocation(dir.toString()).serviceLogsPattern("%a.xml").build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    private ServiceLogWriter writer(int capacity, ServiceLogWriter.OverflowPolicy policy) throws Exception {
+        ServiceLogWriter writer = new ServiceLogWriter(capacity, policy);
+        writer.setRedactor(new GatedRedactor());
+        // the writer thread takes the first message and waits in the redactor, so the next ones stay queued
+        write(writer, "First");
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        return writer;
+    }
+
+    private void write(ServiceLogWriter writer, String name) {
+        writer.write(config, MessageInfo.Scan("<" + name + "/>"));
+    }
+
+    private long files() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void blockWaitsForRoom() throws Exception {
+        ServiceLogWriter writer = writer(2, ServiceLogWriter.OverflowPolicy.BLOCK);
+        write(writer, "M0");
+        write(writer, "M1");
+        Thread blocked = new Thread(() -> write(writer, "M2"));
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive());
+
+        release.countDown();
+        blocked.join();
+        writer.flush();
+        assertEquals(4, writer.getWritten());
+        assertEquals(0, writer.getDropped());
+        writer.close();
+    }
+
+    @Test
+    void dropDropsWhatDoesNotFit() throws Exception {
+        ServiceLogWriter writer = writer(4, ServiceLogWriter.OverflowPolicy.DROP);
+        for (int i = 0; i < 7; i++) {
+            write(writer, "M" + i);
+        }
+        assertEquals(3, writer.getDropped());
+        assertEquals(4, writer.getQueueDepth());
+
+        release.countDown();
+        writer.close();
+        assertEquals(5, writer.getWritten());
+        assertTrue(Files.exists(dir.resolve("M3.xml")));
+        assertFalse(Files.exists(dir.resolve("M4.xml")));
+    }
+
+    @Test
+    void sampleKeepsOneInSampleRateOnceTheQueueFillsUp() throws Exception {
+        ServiceLogWriter writer = writer(8, ServiceLogWriter.OverflowPolicy.SAMPLE);
+        writer.setSampleRate(2);
+        // six messages fill three quarters of the queue; of the next six every second one is kept until it is full
+        for (int i = 0; i < 12; i++) {
+            write(writer, "M" + i);
+        }
+        assertEquals(8, writer.getQueueDepth());
+        assertEquals(4, writer.getDropped());
+
+        release.countDown();
+        writer.close();
+        assertEquals(9, writer.getWritten());
+        assertTrue(Files.exists(dir.resolve("M7.xml")));
+        assertFalse(Files.exists(dir.resolve("M6.xml")));
+    }
+
+    @Test
+    void closeWritesTheQueuedMessages() throws Exception {
+        ServiceLogWriter writer = writer(16, ServiceLogWriter.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 10; i++) {
+            write(writer, "M" + i);
+        }
+        release.countDown();
+        writer.close();
+        assertEquals(11, writer.getWritten());
+        assertEquals(11, files());
+
+        // written on the calling thread
+        write(writer, "Late");
+        assertTrue(Files.exists(dir.resolve("Late.xml")));
+    }
+
+    @Test
+    void keepsWritingAfterAMessageFails() throws Exception {
+        ServiceLogWriter writer = writer(16, ServiceLogWriter.OverflowPolicy.BLOCK);
+        write(writer, "Fail");
+        write(writer, "M0");
+        release.countDown();
+        writer.flush();
+        assertEquals(1, writer.getDropped());
+        assertTrue(Files.exists(dir.resolve("M0.xml")));
+        assertFalse(Files.exists(dir.resolve("Fail.xml")));
+        writer.close();
+    }
+}
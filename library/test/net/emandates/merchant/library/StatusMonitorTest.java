@@ -0,0 +1,94 @@
+package net.emandates.merchant.library;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+
+class StatusMonitorTest {
+    private static StatusMonitor monitor() throws Exception {
+        return new StatusMonitor(new CoreCommunicator(Configuration.builder().build()));
+    }
+
+    private static StatusResponse response(String transactionID, String status) {
+        return StatusResponse.Parse("<AcquirerStatusRes xmlns=\"http://www.betaalvereniging.nl/iDx/messages/Merchant-Acquirer/1.0.0\">"
+                + "<Transaction><transactionID>" + transactionID + "</transactionID><status>" + status + "</status></Transaction>"
+                + "</AcquirerStatusRes>");
+    }
+
+    @Test
+    void emitsEveryTransitionOnceAndForgetsFinalTransactions() throws Exception {
+        StatusMonitor monitor = monitor();
+        List<String> transitions = new ArrayList<>();
+        monitor.addListener(e -> transitions.add(e.getPreviousStatus() + ">" + e.getStatus()));
+        monitor.track("0000000000000001");
+        monitor.track("0000000000000002", StatusResponse.Pending);
+
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Open));
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Open));
+        monitor.onStatusResponse(response("0000000000000002", StatusResponse.Pending));
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Pending));
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Expired));
+        // no longer tracked
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Open));
+        monitor.onStatusResponse(response("0000000000000003", StatusResponse.Open));
+
+        assertEquals(List.of("null>Open", "Open>Pending", "Pending>Expired"), transitions);
+        assertEquals(1, monitor.getTrackedCount());
+        assertNull(monitor.getStore().Get("0000000000000001"));
+
+        monitor.untrack("0000000000000002");
+        assertEquals(0, monitor.getTrackedCount());
+    }
+
+    @Test
+    void aFailingListenerDoesNotStopTheOthers() throws Exception {
+        StatusMonitor monitor = monitor();
+        List<StatusChangeEvent> events = new ArrayList<>();
+        monitor.addListener(e -> {
+            throw new IllegalStateException("listener failed");
+        });
+        monitor.addListener(events::add);
+        monitor.track("0000000000000001");
+
+        monitor.onStatusResponse(response("0000000000000001", StatusResponse.Open));
+        assertEquals(1, events.size());
+        assertEquals(StatusResponse.Open, monitor.getStore().Get("0000000000000001").getLastStatus());
+    }
+
+    @Test
+    void countsEventsThatDoNotFitInASubscribersBuffer() throws Exception {
+        StatusMonitor monitor = monitor();
+        // a subscriber that never requests anything
+        monitor.getPublisher().subscribe(new Flow.Subscriber<StatusChangeEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(StatusChangeEvent item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        int events = Flow.defaultBufferSize() + 100;
+        for (int i = 0; i < events; i++) {
+            String transactionID = String.format("%016d", i);
+            monitor.track(transactionID);
+            monitor.onStatusResponse(response(transactionID, StatusResponse.Open));
+        }
+        assertTrue(monitor.getDroppedEvents() >= 100);
+        assertTrue(monitor.getDroppedEvents() <= events);
+        monitor.close();
+    }
+}
@@ -0,0 +1,146 @@
+package net.emandates.merchant.library.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import net.emandates.merchant.library.StatusResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileTransactionStoreTest {
+    @TempDir
+    Path dir;
+
+    private static TrackedTransaction transaction(int i, String status) {
+        return new TrackedTransaction(String.format("%016d", i), "entrance" + i, "mandate" + i, null, "BANKNL2U", 1000 + i,
+                5000 + i, status, 2000 + i);
+    }
+
+    private static void assertStored(ITransactionStore store, TrackedTransaction expected) throws Exception {
+        TrackedTransaction actual = store.Get(expected.getTransactionID());
+        assertEquals(expected.getEntranceCode(), actual.getEntranceCode());
+        assertEquals(expected.geteMandateID(), actual.geteMandateID());
+        assertNull(actual.getMessageID());
+        assertEquals(expected.getDebtorBankID(), actual.getDebtorBankID());
+        assertEquals(expected.getCreationTime(), actual.getCreationTime());
+        assertEquals(expected.getExpiryTime(), actual.getExpiryTime());
+        assertEquals(expected.getLastStatus(), actual.getLastStatus());
+        assertEquals(expected.getNextPollTime(), actual.getNextPollTime());
+    }
+
+    @Test
+    void replaysTheLog() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        try (FileTransactionStore store = new FileTransactionStore(log, true)) {
+            for (int i = 0; i < 3; i++) {
+                store.Save(transaction(i, null));
+            }
+            store.Save(transaction(1, StatusResponse.Pending));
+            store.Remove(transaction(2, null).getTransactionID());
+        }
+
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(2, store.Count());
+            assertStored(store, transaction(0, null));
+            assertStored(store, transaction(1, StatusResponse.Pending));
+            assertNull(store.Get(transaction(2, null).getTransactionID()));
+        }
+    }
+
+    @Test
+    void discardsATruncatedLastRecord() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            store.Save(transaction(0, null));
+            store.Save(transaction(1, null));
+        }
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(bytes, bytes.length - 5));
+
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(1, store.Count());
+            assertStored(store, transaction(0, null));
+            // the partial record has been cut off, so this one is appended to a valid log
+            store.Save(transaction(2, null));
+        }
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(2, store.Count());
+            assertStored(store, transaction(2, null));
+        }
+    }
+
+    @Test
+    void discardsACorruptedLastRecord() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            store.Save(transaction(0, null));
+            store.Save(transaction(1, null));
+        }
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(log, bytes);
+
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(1, store.Count());
+            assertStored(store, transaction(0, null));
+        }
+        assertTrue(Files.size(log) < bytes.length);
+    }
+
+    @Test
+    void compactsTheLogAndReopensIt() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        // a compaction that was interrupted before its file replaced the log
+        Path compaction = dir.resolve("transactions.log.compact");
+        Files.write(compaction, new byte[] { 1, 2, 3 });
+
+        long before;
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertFalse(Files.exists(compaction));
+            for (int i = 0; i < 10; i++) {
+                store.Save(transaction(i, null));
+            }
+            for (int i = 0; i < 500; i++) {
+                store.Save(transaction(i % 10, StatusResponse.Open).withNextPollTime(i));
+            }
+            before = Files.size(log);
+            store.compact();
+            assertTrue(Files.size(log) * 40 < before);
+            assertFalse(Files.exists(compaction));
+
+            // the store keeps appending to the compacted log
+            store.Save(transaction(10, StatusResponse.Pending));
+            store.Remove(transaction(0, null).getTransactionID());
+        }
+
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(10, store.Count());
+            assertNull(store.Get(transaction(0, null).getTransactionID()));
+            assertEquals(499, store.Get(transaction(9, null).getTransactionID()).getNextPollTime());
+            assertStored(store, transaction(10, StatusResponse.Pending));
+        }
+    }
+
+    @Test
+    void compactsOnItsOwnOnceMostRecordsAreStale() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            store.Save(transaction(0, StatusResponse.Open));
+            long record = Files.size(log);
+            for (int i = 1; i < 3000; i++) {
+                store.Save(transaction(i % 5, StatusResponse.Open).withNextPollTime(i));
+            }
+            // compacted whenever it held more than 1024 records
+            assertTrue(Files.size(log) <= 1025 * record);
+        }
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertEquals(5, store.Count());
+            assertEquals(2999, store.Get(transaction(4, null).getTransactionID()).getNextPollTime());
+        }
+    }
+}
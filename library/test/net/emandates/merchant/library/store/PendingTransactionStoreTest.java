@@ -0,0 +1,54 @@
+package net.emandates.merchant.library.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.List;
+import net.emandates.merchant.library.StatusResponse;
+import org.junit.jupiter.api.Test;
+
+class PendingTransactionStoreTest {
+    @Test
+    void keepsStatusAndTimes() throws IOException {
+        PendingTransactionStore store = new PendingTransactionStore(10);
+        store.Save(new TrackedTransaction("0000000000000001", "entrance", null, null, null, 5, 900, StatusResponse.Open, 100));
+
+        TrackedTransaction transaction = store.Get("0000000000000001");
+        assertEquals(StatusResponse.Open, transaction.getLastStatus());
+        assertEquals(900, transaction.getExpiryTime());
+        assertEquals(100, transaction.getNextPollTime());
+        assertNull(transaction.getEntranceCode());
+        assertNull(store.Get("0000000000000002"));
+        assertNull(store.Get("not a transaction"));
+
+        store.Remove("0000000000000001");
+        assertEquals(0, store.Count());
+    }
+
+    @Test
+    void takeDueMovesNextPollTime() throws IOException {
+        PendingTransactionStore store = new PendingTransactionStore(10);
+        for (int i = 0; i < 5; i++) {
+            store.Save(new TrackedTransaction(String.format("%016d", i), i * 10L));
+        }
+        assertEquals(3, store.CountDue(20));
+
+        List<TrackedTransaction> due = store.TakeDue(20, 100, 2);
+        assertEquals(2, due.size());
+        assertEquals("0000000000000000", due.get(0).getTransactionID());
+        assertEquals(100, due.get(0).getNextPollTime());
+        assertEquals(1, store.CountDue(20));
+        assertEquals(1, store.GetDue(20, 10).size());
+        assertEquals(5, store.GetAll().size());
+    }
+
+    @Test
+    void saveFailsWhenFullOrInvalid() throws IOException {
+        PendingTransactionStore store = new PendingTransactionStore(1);
+        store.Save(new TrackedTransaction("0000000000000001", 0));
+        assertThrows(IOException.class, () -> store.Save(new TrackedTransaction("0000000000000002", 0)));
+        assertThrows(IOException.class, () -> store.Save(new TrackedTransaction("abc", 0)));
+    }
+}
@@ -0,0 +1,151 @@
+package net.emandates.merchant.library.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import net.emandates.merchant.library.StatusResponse;
+import org.junit.jupiter.api.Test;
+
+class PendingTransactionTableTest {
+    private static String id(long value) {
+        return PendingTransactionTable.decodeTransactionID(value);
+    }
+
+    @Test
+    void encodesTransactionIDs() {
+        assertEquals(1234567890123456L, PendingTransactionTable.encodeTransactionID("1234567890123456"));
+        assertEquals("0000000000000042", PendingTransactionTable.decodeTransactionID(42));
+        assertThrows(IllegalArgumentException.class, () -> PendingTransactionTable.encodeTransactionID("123"));
+        assertThrows(IllegalArgumentException.class, () -> PendingTransactionTable.encodeTransactionID("12345678901234x6"));
+    }
+
+    @Test
+    void putUpdatesAndRejectsWhenFull() {
+        PendingTransactionTable table = new PendingTransactionTable(2);
+        assertTrue(table.put(id(1), null, 100, 500));
+        assertTrue(table.put(id(2), StatusResponse.Open, 200, 0));
+        assertFalse(table.put(id(3), null, 300, 0));
+        assertTrue(table.put(id(1), StatusResponse.Pending, 50, 600));
+
+        assertEquals(2, table.size());
+        assertEquals(StatusResponse.Pending, table.getStatus(id(1)));
+        assertEquals(50, table.getNextPollTime(id(1)));
+        assertEquals(600, table.getExpiryTime(id(1)));
+        assertNull(table.getStatus(id(3)));
+        assertEquals(-1, table.getNextPollTime(id(3)));
+    }
+
+    @Test
+    void removeKeepsProbeChainsIntact() {
+        // a full table of a small capacity has long probe chains, so removals exercise the backward shift
+        Random random = new Random(28);
+        for (int round = 0; round < 50; round++) {
+            PendingTransactionTable table = new PendingTransactionTable(64);
+            List<String> present = new ArrayList<>();
+            while (present.size() < 64) {
+                String transactionID = id(Math.floorMod(random.nextLong(), 10_000_000_000_000_000L));
+                if (!present.contains(transactionID)) {
+                    assertTrue(table.put(transactionID, null, random.nextInt(1000), 0));
+                    present.add(transactionID);
+                }
+            }
+
+            Collections.shuffle(present, random);
+            while (!present.isEmpty()) {
+                String removed = present.remove(present.size() - 1);
+                assertTrue(table.remove(removed));
+                assertFalse(table.remove(removed));
+                assertFalse(table.contains(removed));
+                for (String transactionID : present) {
+                    assertTrue(table.contains(transactionID), transactionID);
+                }
+                assertEquals(present.size(), table.size());
+            }
+        }
+    }
+
+    @Test
+    void removedSlotsAreReused() {
+        PendingTransactionTable table = new PendingTransactionTable(3);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(table.put(id(i), null, i, 0));
+            if (i >= 2) {
+                assertTrue(table.remove(id(i - 2)));
+            }
+        }
+        assertEquals(2, table.size());
+        assertTrue(table.contains(id(998)));
+        assertTrue(table.contains(id(999)));
+    }
+
+    @Test
+    void takeDueReturnsEarliestFirstAndReschedules() {
+        PendingTransactionTable table = new PendingTransactionTable(16);
+        long[] times = {50, 10, 40, 30, 20, 70, 60};
+        for (int i = 0; i < times.length; i++) {
+            table.put(id(i), null, times[i], 0);
+        }
+        assertEquals(10, table.peekNextPollTime());
+
+        long[] batch = new long[3];
+        assertEquals(3, table.takeDue(45, 1000, batch));
+        assertArrayEquals(new long[] {1, 4, 3}, batch);
+        assertEquals(1000, table.getNextPollTime(id(1)));
+
+        assertEquals(1, table.takeDue(45, 1000, batch));
+        assertEquals(2, batch[0]);
+        assertEquals(0, table.takeDue(45, 1000, batch));
+        assertEquals(50, table.peekNextPollTime());
+    }
+
+    @Test
+    void heapStaysOrderedUnderUpdatesAndRemovals() {
+        Random random = new Random(7);
+        PendingTransactionTable table = new PendingTransactionTable(500);
+        Map<String, Long> expected = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            String transactionID = id(random.nextInt(700));
+            int op = random.nextInt(3);
+            if (op == 0 && expected.containsKey(transactionID)) {
+                table.remove(transactionID);
+                expected.remove(transactionID);
+            } else if (op == 1 && expected.containsKey(transactionID)) {
+                long time = random.nextInt(10_000);
+                table.setNextPollTime(transactionID, time);
+                expected.put(transactionID, time);
+            } else if (expected.size() < table.capacity() || expected.containsKey(transactionID)) {
+                long time = random.nextInt(10_000);
+                table.put(transactionID, null, time, 0);
+                expected.put(transactionID, time);
+            }
+        }
+
+        long now = 5_000;
+        long due = expected.values().stream().filter(t -> t <= now).count();
+        assertEquals(due, table.countDue(now));
+        assertEquals(expected.size(), table.getTransactionIDs().length);
+
+        long[] ids = new long[expected.size()];
+        int count = table.takeDue(now, Long.MAX_VALUE, ids);
+        assertEquals(due, count);
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            long time = expected.get(id(ids[i]));
+            assertTrue(time >= previous);
+            previous = time;
+        }
+        assertEquals(0, table.countDue(now));
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).filter(t -> t > now).min().orElse(Long.MAX_VALUE),
+                table.peekNextPollTime());
+    }
+}
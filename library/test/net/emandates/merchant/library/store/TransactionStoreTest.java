@@ -0,0 +1,82 @@
+package net.emandates.merchant.library.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import net.emandates.merchant.library.StatusResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionStoreTest {
+    private static final int Transactions = 2000;
+
+    @TempDir
+    Path dir;
+
+    private static String id(int i) {
+        return String.format("%016d", i);
+    }
+
+    /**
+     * Saves final statuses and removes transactions while another thread keeps taking them, with a next poll time
+     * that leaves them due
+     */
+    private static void raceStatusUpdatesWithTakeDue(ITransactionStore store) throws Exception {
+        for (int i = 0; i < Transactions; i++) {
+            store.Save(new TrackedTransaction(id(i), null, null, null, null, 0, 0, StatusResponse.Open, 0));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread poller = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    store.TakeDue(0, 0, 100);
+                }
+            } catch (Throwable ex) {
+                failure.set(ex);
+            }
+        });
+        poller.start();
+        for (int i = 0; i < Transactions; i++) {
+            if (i % 2 == 0) {
+                store.Remove(id(i));
+            } else {
+                store.Save(new TrackedTransaction(id(i), null, null, null, null, 0, 0, StatusResponse.Success, 0));
+            }
+        }
+        done.set(true);
+        poller.join();
+        assertNull(failure.get());
+        assertTakeDueKeptUpdates(store);
+    }
+
+    private static void assertTakeDueKeptUpdates(ITransactionStore store) throws Exception {
+        assertEquals(Transactions / 2, store.Count());
+        for (int i = 0; i < Transactions; i++) {
+            if (i % 2 == 0) {
+                assertNull(store.Get(id(i)));
+            } else {
+                assertEquals(StatusResponse.Success, store.Get(id(i)).getLastStatus());
+            }
+        }
+    }
+
+    @Test
+    void takeDueKeepsConcurrentUpdatesInMemory() throws Exception {
+        raceStatusUpdatesWithTakeDue(new InMemoryTransactionStore());
+    }
+
+    @Test
+    void takeDueKeepsConcurrentUpdatesInTheLog() throws Exception {
+        Path log = dir.resolve("transactions.log");
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            raceStatusUpdatesWithTakeDue(store);
+        }
+        try (FileTransactionStore store = new FileTransactionStore(log, false)) {
+            assertTakeDueKeptUpdates(store);
+        }
+    }
+}